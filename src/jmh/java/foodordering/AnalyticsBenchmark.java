@@ -0,0 +1,56 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Reports over a month of generated orders. Whole-month queries scan every line; the last-day
+// query reads only the chunks that hold that day. For 100 million lines, give the fork a larger
+// heap: -p lines=100000000 -jvmArgsAppend -Xmx3g
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+    @Param({"1000000", "10000000"})
+    public long lines;
+
+    private OrderAnalytics analytics;
+    private LocalDateTime lastDay;
+
+    @Setup
+    public void setUp() {
+        analytics = BenchmarkData.analytics(lines, 42);
+        lastDay = LocalDateTime.of(2024, 1, 30, 0, 0);
+    }
+
+    @Benchmark
+    public Map<String, Long> revenueByCategory() {
+        return analytics.revenueByCategory(null, null);
+    }
+
+    @Benchmark
+    public Map<String, Long> revenueByCategoryLastDay() {
+        return analytics.revenueByCategory(lastDay, null);
+    }
+
+    @Benchmark
+    public List<ItemSales> topItems() {
+        return analytics.topItems(10, null, null);
+    }
+
+    @Benchmark
+    public PaymentMix paymentMix() {
+        return analytics.paymentMix(null, null);
+    }
+
+    @Benchmark
+    public long[] ordersByHour() {
+        return analytics.ordersByHour(null, null);
+    }
+}
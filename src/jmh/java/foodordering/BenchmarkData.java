@@ -0,0 +1,97 @@
+package foodordering;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Shared fixtures for the benchmarks
+final class BenchmarkData {
+    private static final String[][] MENU = {
+            {"Chicken Momo", "150", "Appetizers"}, {"Veg Momo", "120", "Appetizers"},
+            {"Chicken Chowmein", "140", "Main Course"}, {"Veg Chowmein", "110", "Main Course"},
+            {"Chicken Burger", "180", "Fast Food"}, {"Veg Burger", "150", "Fast Food"},
+            {"Margherita Pizza", "280", "Pizza"}, {"Chicken Pizza", "350", "Pizza"},
+            {"Coke", "60", "Beverages"}, {"Lassi", "80", "Beverages"},
+    };
+
+    private BenchmarkData() {
+    }
+
+    // The demo restaurant's ten items, repeated with numbered names until the menu has size items
+    static Restaurant restaurant(int size) {
+        List<MenuItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String[] item = MENU[i % MENU.length];
+            String name = i < MENU.length ? item[0] : item[0] + " " + (i / MENU.length);
+            items.add(new MenuItem(name, Double.parseDouble(item[1]), item[2]));
+        }
+        // One menu snapshot for the lot; addMenuItem would copy it once per item
+        Restaurant restaurant = new Restaurant("Bench Bites");
+        restaurant.addMenuItems(items);
+        return restaurant;
+    }
+
+    // Relative order volume per hour of the day, with lunch and dinner peaks
+    private static final int[] HOURLY_WEIGHTS = {1, 1, 0, 0, 0, 1, 2, 4, 6, 6, 8, 14, 20, 16, 8, 6, 6, 8, 14, 20, 18, 10, 4, 2};
+
+    // A month of synthetic paid orders with about `lines` lines over a 1,000-item menu, appended
+    // in time order: 1 to 5 lines per order, popular items picked far more often than the rest,
+    // and a wallet/card/UPI/cash mix of 30/30/30/10
+    static OrderAnalytics analytics(long lines, long seed) {
+        OrderAnalytics analytics = new OrderAnalytics();
+        List<MenuItem> menu = restaurant(1000).getMenu();
+        int[] codes = new int[menu.size()];
+        int[] prices = new int[menu.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = analytics.itemCode(menu.get(i).getName(), menu.get(i).getCategory());
+            prices[i] = (int) menu.get(i).getPrice();
+        }
+        PaymentMethod[] methods = {PaymentMethod.WALLET, PaymentMethod.WALLET, PaymentMethod.WALLET,
+                PaymentMethod.CARD, PaymentMethod.CARD, PaymentMethod.CARD,
+                PaymentMethod.UPI, PaymentMethod.UPI, PaymentMethod.UPI, PaymentMethod.CASH_ON_DELIVERY};
+        int weightTotal = 0;
+        for (int weight : HOURLY_WEIGHTS) weightTotal += weight;
+        long ordersPerHourUnit = Math.max(1, lines / 3 / 30 / weightTotal);
+        int start = OrderAnalytics.minuteOf(LocalDateTime.of(2024, 1, 1, 0, 0));
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] orderCodes = new int[5];
+        int[] quantities = new int[5];
+        int[] unitPrices = new int[5];
+        long appended = 0;
+        for (int day = 0; appended < lines; day++) {
+            for (int hour = 0; hour < 24 && appended < lines; hour++) {
+                long orders = HOURLY_WEIGHTS[hour] * ordersPerHourUnit;
+                for (long o = 0; o < orders && appended < lines; o++) {
+                    int minute = start + (day * 24 + hour) * 60 + (int) (o * 60 / orders);
+                    int count = 1 + random.nextInt(5);
+                    long amount = 0;
+                    for (int l = 0; l < count; l++) {
+                        double r = random.nextDouble();
+                        int item = (int) (codes.length * r * r * r);
+                        orderCodes[l] = codes[item];
+                        quantities[l] = 1 + random.nextInt(3);
+                        unitPrices[l] = prices[item];
+                        amount += (long) quantities[l] * unitPrices[l];
+                    }
+                    analytics.append(minute, methods[random.nextInt(methods.length)], amount, orderCodes, quantities, unitPrices, count);
+                    appended += count;
+                }
+            }
+        }
+        return analytics;
+    }
+
+    static Customer customer() {
+        return new Customer("Bench", "9800000000", "Benchmark Street", new Wallet(Long.MAX_VALUE / 4));
+    }
+
+    // Console output is formatted as usual but never written anywhere
+    static PrintStream silenceConsole() {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return console;
+    }
+}
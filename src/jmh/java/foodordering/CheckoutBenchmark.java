@@ -0,0 +1,80 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A wallet checkout through OrderingService end to end: payment, ledger, routing and the pipeline.
+// Run once with metrics on and once with them compiled out, so their cost shows as the difference.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CheckoutBenchmark {
+    private static final String PHONE = "9800000000";
+
+    private Restaurant restaurant;
+    private MenuItem item;
+    private OrderingService service;
+    private PaymentProcessor payments;
+    private OrderPipeline pipeline;
+    private String replayKey;
+    private long replayOrderId;
+    private PrintStream console;
+
+    @Setup
+    public void setUp() {
+        console = BenchmarkData.silenceConsole();
+        RestaurantRegistry restaurants = new RestaurantRegistry();
+        restaurant = BenchmarkData.restaurant(10);
+        restaurants.register(restaurant);
+        item = restaurant.getMenu().get(0);
+        payments = new PaymentProcessor(2, 1000, 10_000, 0);
+        pipeline = new OrderPipeline(new OrderEventBus(), 1, Duration.ZERO, 1, Duration.ZERO, 4096, 64);
+        pipeline.start();
+        service = new OrderingService(restaurants, new WalletStore(Long.MAX_VALUE / 4), payments, null, pipeline, new Ledger());
+
+        Order order = service.openCart(restaurant.getId(), "Bench", PHONE, "Benchmark Street");
+        service.addToCart(order.getOrderId(), item.getId(), 1);
+        replayKey = "bench-replay";
+        replayOrderId = order.getOrderId();
+        service.checkout(replayOrderId, PaymentMethod.WALLET, Map.of(), replayKey).getResult().join();
+    }
+
+    @TearDown
+    public void tearDown() {
+        service.shutdown();
+        pipeline.stop();
+        payments.shutdown();
+        System.setOut(console);
+    }
+
+    private boolean checkout() {
+        Order order = service.openCart(restaurant.getId(), "Bench", PHONE, "Benchmark Street");
+        service.addToCart(order.getOrderId(), item.getId(), 2);
+        return service.checkout(order.getOrderId(), PaymentMethod.WALLET, Map.of()).join();
+    }
+
+    @Benchmark
+    public boolean checkoutInstrumented() {
+        return checkout();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dfoodorder.metrics=false")
+    public boolean checkoutUninstrumented() {
+        return checkout();
+    }
+
+    // A retried request whose key is already known: answered from the idempotency cache
+    @Benchmark
+    @Threads(4)
+    public OrderingService.Checkout idempotentReplay() {
+        return service.checkout(replayOrderId, PaymentMethod.WALLET, Map.of(), replayKey);
+    }
+}
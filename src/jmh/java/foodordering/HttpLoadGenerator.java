@@ -0,0 +1,193 @@
+package foodordering;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Local load generator for OrderingHttpServer: starts the API in process on a free port, then keeps
+// `clients` connections busy for `seconds` after a warm-up and prints requests per second and
+// latency percentiles per endpoint. Each client sends its next request as soon as the last one is
+// answered (a closed loop), so a stall shows up as fewer requests rather than as queued latency.
+//
+//   mvn -Pjmh package
+//   java -cp target/benchmarks.jar foodordering.HttpLoadGenerator [clients] [seconds] [warmupSeconds]
+//
+// The mix is 80% menu reads, 10% searches and 10% checkouts; a checkout is three requests
+// (open a cart, add an item, pay from the wallet), each timed on its own.
+public class HttpLoadGenerator {
+    private static final int SERVER_THREADS = 64;
+
+    private enum Endpoint {
+        MENU("GET /restaurants/{id}/menu"),
+        SEARCH("GET /restaurants/{id}/search"),
+        OPEN_CART("POST /carts"),
+        ADD_ITEM("POST /carts/{id}/items"),
+        CHECKOUT("POST /carts/{id}/checkout");
+
+        final String label;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final String base;
+    private final String restaurantId;
+    private final String itemId;
+    private volatile boolean recording;
+    private volatile boolean running = true;
+
+    private HttpLoadGenerator(int port, Restaurant restaurant) {
+        this.base = "http://localhost:" + port;
+        this.restaurantId = IdGenerator.format(restaurant.getId());
+        this.itemId = IdGenerator.format(restaurant.getMenu().get(0).getId());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int warmupSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        PrintStream console = BenchmarkData.silenceConsole();
+        RestaurantRegistry restaurants = new RestaurantRegistry();
+        Restaurant restaurant = BenchmarkData.restaurant(100);
+        restaurants.register(restaurant);
+        PaymentProcessor payments = new PaymentProcessor(4, 10_000, 10_000, 0);
+        OrderPipeline pipeline = new OrderPipeline(new OrderEventBus(), 64, Duration.ZERO, 64, Duration.ZERO, 1 << 20, 64);
+        pipeline.start();
+        OrderingService service = new OrderingService(restaurants, new WalletStore(Long.MAX_VALUE / 4), payments,
+                null, pipeline, new Ledger());
+        OrderingHttpServer server = new OrderingHttpServer(service, 0, SERVER_THREADS);
+        server.start();
+        try {
+            HttpLoadGenerator load = new HttpLoadGenerator(server.getPort(), restaurant);
+            console.printf("%d clients against port %d: %ds warm-up, %ds measured%n",
+                    clients, server.getPort(), warmupSeconds, seconds);
+            load.run(clients, warmupSeconds, seconds);
+            load.report(console, seconds);
+        } finally {
+            server.stop();
+            service.shutdown();
+            pipeline.stop();
+            payments.shutdown();
+            System.setOut(console);
+        }
+    }
+
+    private void run(int clients, int warmupSeconds, int seconds) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            String phone = "97" + (10_000_000 + i);
+            Thread thread = new Thread(() -> clientLoop(phone), "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(warmupSeconds * 1000L);
+        recording = true;
+        Thread.sleep(seconds * 1000L);
+        recording = false;
+        running = false;
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+    }
+
+    private void clientLoop(String phone) {
+        while (running) {
+            int pick = ThreadLocalRandom.current().nextInt(10);
+            if (pick < 8) {
+                send(Endpoint.MENU, get("/restaurants/" + restaurantId + "/menu"));
+            } else if (pick < 9) {
+                send(Endpoint.SEARCH, get("/restaurants/" + restaurantId + "/search?q=chick&limit=20"));
+            } else {
+                checkout(phone);
+            }
+        }
+    }
+
+    private void checkout(String phone) {
+        String cart = send(Endpoint.OPEN_CART, post("/carts", "restaurantId=" + restaurantId
+                + "&name=Load&phone=" + phone + "&address=Load+Street&distanceKm=2"));
+        if (cart == null) return;
+        String cartId = field(cart, "orderId");
+        if (send(Endpoint.ADD_ITEM, post("/carts/" + cartId + "/items", "itemId=" + itemId + "&quantity=1")) == null) return;
+        send(Endpoint.CHECKOUT, post("/carts/" + cartId + "/checkout", "method=WALLET"));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String form) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+    }
+
+    // The response body on a 2xx answer, else null
+    private String send(Endpoint endpoint, HttpRequest request) {
+        long start = System.nanoTime();
+        boolean ok;
+        String body = null;
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            ok = response.statusCode() / 100 == 2;
+            body = response.body();
+        } catch (IOException e) {
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+            return null;
+        }
+        if (recording) {
+            endpoint.latency.recordSince(start);
+            if (!ok) endpoint.errors.increment();
+        }
+        return ok ? body : null;
+    }
+
+    // Value of a string field in a flat JSON answer
+    private static String field(String json, String name) {
+        String key = "\"" + name + "\":\"";
+        int start = json.indexOf(key) + key.length();
+        return json.substring(start, json.indexOf('"', start));
+    }
+
+    private void report(PrintStream out, int seconds) {
+        out.printf("%n%-30s %10s %10s %9s %9s %9s %9s %7s%n",
+                "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+        long total = 0;
+        long errors = 0;
+        for (Endpoint endpoint : Endpoint.values()) {
+            LatencyHistogram latency = endpoint.latency;
+            long count = latency.getCount();
+            total += count;
+            errors += endpoint.errors.sum();
+            out.printf("%-30s %,10d %,10.0f %9.3f %9.3f %9.3f %9.3f %,7d%n", endpoint.label, count, (double) count / seconds,
+                    millis(latency.getValueAtQuantile(0.5)), millis(latency.getValueAtQuantile(0.99)),
+                    millis(latency.getValueAtQuantile(0.999)), millis(latency.getMaxNanos()), endpoint.errors.sum());
+        }
+        out.printf("%-30s %,10d %,10.0f %39s %,7d%n", "total", total, (double) total / seconds, "", errors);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
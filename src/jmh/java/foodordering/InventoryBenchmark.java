@@ -0,0 +1,84 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Thousands of checkouts taking the same popular item at once. With stripes = 1 the stock is a
+// single compare-and-set counter, which is what every taker would otherwise fight over; with 64
+// they spread over cells on separate cache lines. The reservation cases go through Inventory as a
+// checkout does, with a one-line cart, and commit the units they took.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InventoryBenchmark {
+    private static final long STOCK = Long.MAX_VALUE / 4;
+
+    @Param({"1", "64"})
+    public int stripes;
+
+    private StockCounter counter;
+    private Inventory inventory;
+    private Restaurant restaurant;
+    private MenuItem popular;
+
+    @Setup
+    public void setUp() {
+        counter = new StockCounter(STOCK, stripes);
+        restaurant = BenchmarkData.restaurant(100);
+        popular = restaurant.getMenu().get(0);
+        inventory = new Inventory(Duration.ofMinutes(2), stripes);
+        inventory.setStock(popular, STOCK);
+    }
+
+    @TearDown
+    public void tearDown() {
+        inventory.shutdown();
+    }
+
+    // Each thread's own cart holding the popular item
+    @State(Scope.Thread)
+    public static class Cart {
+        Order order;
+
+        @Setup
+        public void setUp(InventoryBenchmark benchmark) {
+            order = new Order(BenchmarkData.customer(), benchmark.restaurant);
+            order.addItem(benchmark.popular, 1);
+        }
+    }
+
+    @Benchmark
+    public boolean takeAndPut() {
+        boolean taken = counter.tryTake(1);
+        counter.put(1);
+        return taken;
+    }
+
+    @Benchmark
+    @Threads(2000)
+    public boolean takeAndPutContended() {
+        boolean taken = counter.tryTake(1);
+        counter.put(1);
+        return taken;
+    }
+
+    @Benchmark
+    public StockReservation reserveAndCommit(Cart cart) {
+        StockReservation reservation = inventory.reserve(cart.order);
+        reservation.commit();
+        return reservation;
+    }
+
+    @Benchmark
+    @Threads(2000)
+    public StockReservation reserveAndCommitContended(Cart cart) {
+        StockReservation reservation = inventory.reserve(cart.order);
+        reservation.commit();
+        return reservation;
+    }
+}
@@ -0,0 +1,75 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Appending entries, and a full reconciliation pass over a ledger of a million entries
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class LedgerBenchmark {
+    private static final int WALLETS = 10_000;
+
+    @Param({"1000000"})
+    public int entries;
+
+    private String[] wallets;
+    private Ledger populated;
+    private Ledger appendOnly;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        wallets = new String[WALLETS];
+        for (int i = 0; i < WALLETS; i++) {
+            wallets[i] = Ledger.walletAccount("98" + i);
+        }
+        populated = new Ledger();
+        for (int i = 0; i < entries; i++) {
+            post(populated, i);
+        }
+    }
+
+    // Starts every iteration empty so memory use does not depend on how fast appends are
+    @Setup(Level.Iteration)
+    public void resetAppendOnly() {
+        appendOnly = new Ledger();
+        next = 0;
+    }
+
+    private void post(Ledger ledger, int i) {
+        String wallet = wallets[i % WALLETS];
+        switch (i % 3) {
+            case 0:
+                ledger.post(LedgerEntryType.TOP_UP, 0, Ledger.TOP_UPS, wallet, 1_000);
+                break;
+            case 1:
+                ledger.post(LedgerEntryType.PAYMENT, i, wallet, Ledger.SALES, 700);
+                break;
+            default:
+                ledger.post(LedgerEntryType.REFUND, i, Ledger.SALES, wallet, 100);
+                break;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void post() {
+        post(appendOnly, next++);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LedgerReconciliation reconcile() {
+        return populated.reconcile();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long balanceOf() {
+        return populated.balanceOf(wallets[next++ % WALLETS]);
+    }
+}
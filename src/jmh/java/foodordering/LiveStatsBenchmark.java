@@ -0,0 +1,109 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Recording orders and payments into the live windows, alone and from 4 threads, and reading the
+// 5- and 60-minute windows back once a full hour of buckets holds orders from a 1,000-item menu
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LiveStatsBenchmark {
+    private static final int ITEMS = 1000;
+    private static final int ORDERS = 4096;
+
+    private LiveStats stats;
+    private String[][] orderItems;
+    private int[][] orderQuantities;
+
+    // Each order has 1 to 5 lines, with a few items far more popular than the rest
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        orderItems = new String[ORDERS][];
+        orderQuantities = new int[ORDERS][];
+        for (int i = 0; i < ORDERS; i++) {
+            int lines = 1 + random.nextInt(5);
+            orderItems[i] = new String[lines];
+            orderQuantities[i] = new int[lines];
+            for (int j = 0; j < lines; j++) {
+                double r = random.nextDouble();
+                orderItems[i][j] = "Item " + (int) (r * r * r * ITEMS);
+                orderQuantities[i][j] = 1 + random.nextInt(3);
+            }
+        }
+        // Filled as if the last hour had passed, then left at its final minute
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-01T12:00:00Z").toEpochMilli());
+        stats = new LiveStats(clock);
+        for (int minute = 0; minute < LiveStats.MAX_MINUTES; minute++) {
+            for (int i = 0; i < 500; i++) {
+                int order = random.nextInt(ORDERS);
+                stats.recordOrder(25_000, orderItems[order], orderQuantities[order]);
+                stats.recordPayment(PaymentMethod.CARD, i % 20 == 0 ? PaymentStatus.FAILED : PaymentStatus.SUCCESS);
+            }
+            clock.millis += 60_000;
+        }
+        clock.millis -= 60_000;
+    }
+
+    // Only millis() is used by LiveStats
+    static final class MutableClock extends Clock {
+        volatile long millis;
+
+        MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        @Override public long millis() { return millis; }
+        @Override public Instant instant() { return Instant.ofEpochMilli(millis); }
+        @Override public ZoneId getZone() { return ZoneOffset.UTC; }
+        @Override public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+    }
+
+    @Benchmark
+    public void recordOrder() {
+        int order = ThreadLocalRandom.current().nextInt(ORDERS);
+        stats.recordOrder(25_000, orderItems[order], orderQuantities[order]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordOrderContended() {
+        int order = ThreadLocalRandom.current().nextInt(ORDERS);
+        stats.recordOrder(25_000, orderItems[order], orderQuantities[order]);
+    }
+
+    @Benchmark
+    public void recordPayment() {
+        stats.recordPayment(PaymentMethod.UPI, PaymentStatus.SUCCESS);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LiveWindow window5() {
+        return stats.window(5, 10);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LiveWindow window60() {
+        return stats.window(60, 10);
+    }
+
+    // Counts only, as the gauges read them
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LiveWindow window60Counts() {
+        return stats.window(60, 0);
+    }
+}
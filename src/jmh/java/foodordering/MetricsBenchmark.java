@@ -0,0 +1,41 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The cost of timing one operation and counting it, with metrics on and off
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+    private final LatencyHistogram histogram = Metrics.DEFAULT.histogram("benchmark_seconds");
+    private final Counter counter = Metrics.DEFAULT.counter("benchmark_total");
+
+    private void timedOperation() {
+        long start = Metrics.startTimer();
+        counter.increment();
+        histogram.recordSince(start);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordEnabled() {
+        timedOperation();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @Fork(value = 1, jvmArgsAppend = "-Dfoodorder.metrics=false")
+    public void recordDisabled() {
+        timedOperation();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return IdGenerator.DEFAULT.nextId();
+    }
+}
@@ -0,0 +1,88 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cart operations and receipt rendering for a single order. Receipts per second is 1e9 / score.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderBenchmark {
+    private Restaurant restaurant;
+    private Customer customer;
+    private List<MenuItem> items;
+    private Order order;
+    private PrintStream console;
+
+    @Setup
+    public void setUp() {
+        restaurant = BenchmarkData.restaurant(10);
+        customer = BenchmarkData.customer();
+        items = restaurant.getMenu();
+        order = new Order(customer, restaurant);
+        for (MenuItem item : items) {
+            order.addItem(item, 2);
+        }
+        console = BenchmarkData.silenceConsole();
+        // Paid, so the receipt includes its payment section; cash on delivery asks for no details
+        order.processPayment(PaymentMethod.CASH_ON_DELIVERY, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    // A fresh cart filled with the whole menu, including the order id it is given
+    @Benchmark
+    public Order fillCart() {
+        Order cart = new Order(customer, restaurant);
+        for (MenuItem item : items) {
+            cart.addItem(item, 2);
+        }
+        return cart;
+    }
+
+    @Benchmark
+    public long calculateTotal() {
+        return order.calculateTotal();
+    }
+
+    // The original total: the subtotal re-summed as doubles in rupees over a stream on every call,
+    // delivery of Rs. 50 below Rs. 500. Kept as the baseline calculateTotal is compared against.
+    @Benchmark
+    public double calculateTotalStreamBaseline() {
+        double subtotal = order.getItems().stream()
+                .mapToDouble(item -> item.getMenuItem().getPrice() / 100.0 * item.getQuantity())
+                .sum();
+        return subtotal > 500 ? subtotal : subtotal + 50.0;
+    }
+
+    // Consoles are UTF-8 in practice; the JDK 17 default here may be ASCII, which takes the slow path
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+    public void printReceipt() {
+        order.printReceipt();
+    }
+
+    // Rendered and encoded into the thread's buffer, without the copy an HTTP response makes
+    @Benchmark
+    public int renderReceiptText() {
+        RenderBuffer buffer = RenderBuffer.get();
+        OrderRenderer.receipt(buffer.text(), order, RenderFormat.TEXT);
+        return buffer.encode();
+    }
+
+    @Benchmark
+    public int renderReceiptJson() {
+        RenderBuffer buffer = RenderBuffer.get();
+        OrderRenderer.receipt(buffer.text(), order, RenderFormat.JSON);
+        return buffer.encode();
+    }
+}
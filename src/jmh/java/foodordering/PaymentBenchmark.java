@@ -0,0 +1,36 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Validating checkout details and building the Payment for each method
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentBenchmark {
+    private static final Map<String, String> DETAILS = Map.of(
+            "cardNumber", "4111111111111111", "cardHolderName", "Bench", "upiId", "bench@upi");
+
+    // Generated benchmark code lives in another package, so parameters must be public types
+    @Param({"WALLET", "CARD", "UPI", "CASH_ON_DELIVERY"})
+    public String method;
+
+    private PaymentMethod paymentMethod;
+    private Wallet wallet;
+
+    @Setup
+    public void setUp() {
+        paymentMethod = PaymentMethod.valueOf(method);
+        wallet = new Wallet(Long.MAX_VALUE / 4);
+    }
+
+    @Benchmark
+    public Payment createPayment() {
+        return PaymentProcessor.createPayment(paymentMethod, 25_000, wallet, DETAILS);
+    }
+}
@@ -0,0 +1,60 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Orders per second from CONFIRMED to DELIVERED through the kitchen and dispatch stages, with
+// cooking and riding taking no time, so only queueing and event handling are measured
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    private static final int ORDERS_PER_ROUND = 1000;
+
+    @Param({"1", "16"})
+    public int batchSize;
+
+    private OrderEventBus events;
+    private OrderPipeline pipeline;
+    private Restaurant restaurant;
+    private Customer customer;
+    private final AtomicReference<CountDownLatch> delivered = new AtomicReference<>();
+    private PrintStream console;
+
+    @Setup
+    public void setUp() {
+        console = BenchmarkData.silenceConsole();
+        events = new OrderEventBus();
+        pipeline = new OrderPipeline(events, 2, Duration.ZERO, 2, Duration.ZERO, 4096, batchSize);
+        events.subscribe(OrderStatus.DELIVERED, event -> delivered.get().countDown());
+        pipeline.start();
+        restaurant = BenchmarkData.restaurant(10);
+        customer = BenchmarkData.customer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.stop();
+        System.setOut(console);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ORDERS_PER_ROUND)
+    public void confirmedToDelivered() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(ORDERS_PER_ROUND);
+        delivered.set(latch);
+        for (int i = 0; i < ORDERS_PER_ROUND; i++) {
+            Order order = new Order(customer, restaurant);
+            events.transition(order, OrderStatus.CONFIRMED);
+        }
+        latch.await();
+    }
+}
@@ -0,0 +1,107 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cart pricing against a plan of `promotions` rules over a 1,000-item menu: item and category
+// discounts, happy hours, combos and coupons, with a 10-line cart that triggers several of each
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricingBenchmark {
+    private static final String[] CATEGORIES = {"Appetizers", "Main Course", "Fast Food", "Pizza", "Beverages"};
+
+    @Param({"0", "100", "500"})
+    public int promotions;
+
+    private Restaurant restaurant;
+    private Customer customer;
+    private List<PricingRule> rules;
+    private List<MenuItem> cartItems;
+    private Order order;
+    private int quantity = 1;
+
+    @Setup
+    public void setUp() {
+        restaurant = BenchmarkData.restaurant(1000);
+        customer = BenchmarkData.customer();
+        List<MenuItem> menu = restaurant.getMenu();
+        Random random = new Random(7);
+        cartItems = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cartItems.add(menu.get(i * 7));
+        }
+        rules = new ArrayList<>();
+        for (int i = 0; i < promotions; i++) {
+            String name = "Promotion " + i;
+            switch (i % 5) {
+                case 0:
+                    rules.add(PricingRule.itemDiscount(name, menu.get(random.nextInt(100)).getName(), 5 + random.nextInt(20)));
+                    break;
+                case 1:
+                    rules.add(PricingRule.categoryDiscount(name, CATEGORIES[random.nextInt(CATEGORIES.length)], 5 + random.nextInt(10)));
+                    break;
+                case 2:
+                    int from = random.nextInt(24);
+                    rules.add(PricingRule.happyHour(name, CATEGORIES[random.nextInt(CATEGORIES.length)], 10 + random.nextInt(20),
+                            LocalTime.of(from, 0), LocalTime.of((from + 1 + random.nextInt(12)) % 24, 30)));
+                    break;
+                case 3:
+                    rules.add(PricingRule.combo(name, Money.ofRupees(10 + random.nextInt(40)),
+                            cartItems.get(random.nextInt(10)).getName(), menu.get(100 + random.nextInt(100)).getName(),
+                            menu.get(200 + random.nextInt(100)).getName()));
+                    break;
+                default:
+                    rules.add(PricingRule.coupon("CODE" + i, 5 + random.nextInt(20), 0, Money.ofRupees(100), Money.ofRupees(200)));
+            }
+        }
+        rules.add(PricingRule.deliveryFee(Money.ofRupees(40), Money.ofRupees(8), 3, Money.ofRupees(600)));
+        restaurant.setPricingRules(rules);
+
+        order = newCart();
+        if (promotions > 0) {
+            order.applyCoupon("CODE4");
+        }
+    }
+
+    private Order newCart() {
+        Order cart = new Order(customer, restaurant);
+        for (MenuItem item : cartItems) {
+            cart.addItem(item, 2);
+        }
+        return cart;
+    }
+
+    // One line changes, then the cart is re-totalled: the incremental path
+    @Benchmark
+    public long changeLineAndTotal() {
+        quantity = quantity == 1 ? 3 : 1;
+        order.updateQuantity(cartItems.get(3), quantity);
+        return order.calculateTotal();
+    }
+
+    @Benchmark
+    public long calculateTotal() {
+        return order.calculateTotal();
+    }
+
+    // A fresh cart priced line by line, i.e. evaluating every line against the plan
+    @Benchmark
+    public long priceNewCart() {
+        return newCart().calculateTotal();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public PricingPlan compilePlan() {
+        return PricingPlan.compile(rules, restaurant.getMenuSnapshot());
+    }
+}
@@ -0,0 +1,61 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Startup replay of one write-ahead log segment holding 100,000 or 1,000,000 records, four wallet
+// transactions to every confirmed order, as after a crash between checkpoints
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    @Param({"100000", "1000000"})
+    public int records;
+
+    private Path directory;
+    private Path segment;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("recovery-bench");
+        segment = WriteAheadLog.segmentPath(directory, 1);
+        String[] names = {"Veg Momo", "Coke", "Chicken Pizza"};
+        int[] quantities = {2, 2, 1};
+        long[] prices = {12_000, 6_000, 45_000};
+        try (WriteAheadLog log = new WriteAheadLog(directory, 1)) {
+            long last = 0;
+            for (int i = 0; i < records; i++) {
+                String phone = "98" + (10_000_000 + i % 10_000);
+                byte[] body = i % 5 == 4
+                        ? WriteAheadLog.encodeOrder(new OrderRecord(i, phone, "Customer " + i, 1_700_000_000_000L + i,
+                                PaymentMethod.WALLET, 81_000, names, quantities, prices))
+                        : WriteAheadLog.encodeWalletTransaction(phone, WalletTransactionType.PAYMENT, 81_000);
+                last = log.append(body);
+            }
+            log.awaitDurable(last);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public PersistedState replaySegment() throws IOException {
+        PersistedState state = new PersistedState();
+        WriteAheadLog.replay(segment, state);
+        return state;
+    }
+}
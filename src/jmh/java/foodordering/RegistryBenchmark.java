@@ -0,0 +1,81 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Menu item lookups across 10,000 restaurants holding 1,000,000 items between them, alone and with
+// one thread in four adding items to random restaurants' menus. Run with -t 1, 2, 4, 8... to see
+// how throughput scales with cores; the mixed group gets three readers per updater.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+    private static final int RESTAURANTS = 10_000;
+    private static final int ITEMS_PER_RESTAURANT = 100;
+
+    private RestaurantRegistry registry;
+    private long[] restaurantIds;
+    private long[][] itemIds;
+
+    // Rebuilt every iteration so the menus updates add to do not keep growing
+    @Setup(Level.Iteration)
+    public void setUp() {
+        registry = new RestaurantRegistry();
+        restaurantIds = new long[RESTAURANTS];
+        itemIds = new long[RESTAURANTS][ITEMS_PER_RESTAURANT];
+        Restaurant template = BenchmarkData.restaurant(ITEMS_PER_RESTAURANT);
+        for (int r = 0; r < RESTAURANTS; r++) {
+            Restaurant restaurant = new Restaurant("Restaurant " + r);
+            List<MenuItem> items = new ArrayList<>(ITEMS_PER_RESTAURANT);
+            for (MenuItem item : template.getMenu()) {
+                items.add(new MenuItem(item.getName(), item.getPrice() / 100.0, item.getCategory()));
+            }
+            restaurant.addMenuItems(items);
+            registry.register(restaurant);
+            restaurantIds[r] = restaurant.getId();
+            for (int i = 0; i < ITEMS_PER_RESTAURANT; i++) {
+                itemIds[r][i] = items.get(i).getId();
+            }
+        }
+    }
+
+    private MenuItem lookUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int r = random.nextInt(RESTAURANTS);
+        return registry.findMenuItem(restaurantIds[r], itemIds[r][random.nextInt(ITEMS_PER_RESTAURANT)]);
+    }
+
+    private boolean update() {
+        int r = ThreadLocalRandom.current().nextInt(RESTAURANTS);
+        return registry.updateMenu(restaurantIds[r],
+                Collections.singletonList(new MenuItem("Special " + r, 199, "Specials")));
+    }
+
+    @Benchmark
+    @Group("readOnly")
+    public MenuItem readOnlyLookup() {
+        return lookUp();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public MenuItem mixedLookup() {
+        return lookUp();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean mixedUpdate() {
+        return update();
+    }
+}
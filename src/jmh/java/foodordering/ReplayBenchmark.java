@@ -0,0 +1,39 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Turning one replay line into an order, as JSON Lines and as CSV; a replay spends this per line
+// before checkout starts
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplayBenchmark {
+    private static final String JSON = "{\"name\":\"Customer 1200\",\"phone\":\"9800001200\",\"address\":\"Street 200\","
+            + "\"restaurant\":\"Tasty Bites\",\"items\":{\"Coke\":2,\"Veg Burger\":2,\"Veg Momo\":1,\"Chicken Pizza\":1},"
+            + "\"method\":\"CARD\",\"cardNumber\":\"4111000000001200\",\"cardHolderName\":\"Customer 1200\",\"distanceKm\":3}";
+    private static final String CSV_HEADER = "name,phone,address,restaurant,items,method,cardNumber,cardHolderName,upiId,coupon,distanceKm";
+    private static final String CSV = "Customer 1200,9800001200,Street 200,Tasty Bites,Coke:2|Veg Burger:2|Veg Momo:1|Chicken Pizza:1,"
+            + "CARD,4111000000001200,Customer 1200,,,3";
+
+    private String[] columns;
+
+    @Setup
+    public void setUp() {
+        columns = ReplayFormat.parseHeader(CSV_HEADER);
+    }
+
+    @Benchmark
+    public ReplayOrder parseJsonLine() {
+        return ReplayFormat.parseJson(JSON);
+    }
+
+    @Benchmark
+    public ReplayOrder parseCsvLine() {
+        return ReplayFormat.parseCsv(CSV, columns);
+    }
+}
@@ -0,0 +1,82 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Session and cart lookups by returning customers. The resident cases fit in memory; in the
+// write-back case 20,000 customers share a 1,000-session cache, so nearly every lookup loads a
+// session and its parked cart from disk and writes another one back.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionBenchmark {
+    private static final int CUSTOMERS = 20_000;
+
+    private Path directory;
+    private Restaurant restaurant;
+    private CustomerSessionStore resident;
+    private CustomerSessionStore writeBack;
+    private long[] cartIds;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("session-bench");
+        restaurant = BenchmarkData.restaurant(100);
+        RestaurantRegistry restaurants = new RestaurantRegistry();
+        restaurants.register(restaurant);
+        WalletStore wallets = new WalletStore(0);
+        resident = new CustomerSessionStore(restaurants, wallets, null, CUSTOMERS, order -> false);
+        writeBack = new CustomerSessionStore(restaurants, wallets, FileSessionStore.open(directory), 1000, order -> false);
+        cartIds = new long[CUSTOMERS];
+        MenuItem item = restaurant.getMenu().get(0);
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Order cart = resident.openCart("Customer " + i, phone(i), "Street " + i, restaurant);
+            cart.addItem(item, 1);
+            cartIds[i] = cart.getOrderId();
+            writeBack.openCart("Customer " + i, phone(i), "Street " + i, restaurant).addItem(item, 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String phone(int i) {
+        return "98" + (10_000_000 + i);
+    }
+
+    @Benchmark
+    public CustomerSession findResident() {
+        return resident.find(phone(ThreadLocalRandom.current().nextInt(CUSTOMERS)));
+    }
+
+    @Benchmark
+    public Order getCartResident() {
+        return resident.getCart(cartIds[ThreadLocalRandom.current().nextInt(CUSTOMERS)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CustomerSession findResidentContended() {
+        return resident.find(phone(ThreadLocalRandom.current().nextInt(CUSTOMERS)));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public CustomerSession findWithWriteBack() {
+        return writeBack.find(phone(ThreadLocalRandom.current().nextInt(CUSTOMERS)));
+    }
+}
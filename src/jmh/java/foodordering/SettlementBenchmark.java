@@ -0,0 +1,49 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// UPI payments per second through the SettlementEngine; batch size 1 is one gateway call per payment
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SettlementBenchmark {
+    private static final int PAYMENTS_PER_ROUND = 256;
+
+    @Param({"1", "16", "64"})
+    public int batchSize;
+
+    private SettlementEngine settlement;
+    private PrintStream console;
+
+    @Setup
+    public void setUp() {
+        // A 1 ms gateway round trip makes the cost of per-payment calls visible
+        settlement = new SettlementEngine(new StubPaymentGateway(Duration.ofMillis(1), Duration.ZERO),
+                batchSize, Duration.ofMillis(1));
+        console = BenchmarkData.silenceConsole();
+    }
+
+    @TearDown
+    public void tearDown() {
+        settlement.shutdown();
+        System.setOut(console);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAYMENTS_PER_ROUND)
+    public void settle() {
+        CompletableFuture<?>[] results = new CompletableFuture<?>[PAYMENTS_PER_ROUND];
+        for (int i = 0; i < PAYMENTS_PER_ROUND; i++) {
+            results[i] = settlement.submit(new UPIPayment(25_000, "bench@upi"));
+        }
+        CompletableFuture.allOf(results).join();
+    }
+}
@@ -0,0 +1,108 @@
+package foodordering;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Debits against one shared wallet, alone and with four threads racing on it; and the memory a
+// wallet's history keeps after 1,000,000 transactions, for the bounded journal at its default
+// capacity, the journal sized to hold every entry, and the original list of formatted strings.
+// retainedBytes is the heap still in use after a full GC, measured around the fill; run with
+// -prof gc for the allocation side.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletBenchmark {
+    private static final int TRANSACTIONS = 1_000_000;
+
+    private Wallet wallet;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Retained {
+        public long retainedBytes;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        wallet = new Wallet(Long.MAX_VALUE / 4);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean deductBalance() {
+        return wallet.deductBalance(1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean deductBalanceContended() {
+        return wallet.deductBalance(1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public WalletJournal journalDefaultCapacity(Retained retained) {
+        return fillJournal(Wallet.DEFAULT_HISTORY_CAPACITY, retained);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public WalletJournal journalHoldingEverything(Retained retained) {
+        return fillJournal(TRANSACTIONS, retained);
+    }
+
+    // The history as it was: one formatted string per transaction, a new formatter for each
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public List<String> stringHistoryBaseline(Retained retained) {
+        long before = usedHeapAfterGc();
+        List<String> history = new ArrayList<>();
+        double balance = TRANSACTIONS;
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            balance -= 1;
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm"));
+            history.add("[" + timestamp + "] " + "Payment: -Rs. " + 1.0 + " | Balance: Rs. " + balance);
+        }
+        retained.retainedBytes = usedHeapAfterGc() - before;
+        return history;
+    }
+
+    private static WalletJournal fillJournal(int capacity, Retained retained) {
+        long before = usedHeapAfterGc();
+        WalletJournal journal = new WalletJournal(capacity);
+        long balance = Money.ofRupees(TRANSACTIONS);
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            balance -= Money.ofRupees(1);
+            journal.append(WalletTransactionType.PAYMENT, Money.ofRupees(1), balance);
+        }
+        retained.retainedBytes = usedHeapAfterGc() - before;
+        return journal;
+    }
+
+    private static long usedHeapAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
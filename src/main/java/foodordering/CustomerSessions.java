@@ -0,0 +1,461 @@
+// Customer sessions keyed by phone number
+//
+// A session is a customer's profile plus the cart they have open, if any. Sessions live in a
+// ShardedLruCache, so a returning customer's wallet and cart come back from memory. When the cache
+// is full, the least recently used sessions are written back to small files on disk and dropped
+// from memory. An open cart goes with its session: the cart is parked with its lines, coupon and
+// delivery distance, and it is rebuilt against the current menu when the customer or its order id
+// comes back. Restaurants and items are recorded by name, as ids are only stable within one run.
+//
+// Memory and disk are exclusive. Loading a session takes its file away and eviction writes it
+// back, so the disk never holds an older copy of a resident session. Sessions still in memory are
+// written out by flush() on shutdown.
+//
+// A session file that cannot be read or written is counted and passed to SessionFailureListeners;
+// printing it is up to the console.
+
+package foodordering;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+class CustomerSession {
+    private final String phone;
+    private Customer customer;
+    private Order cart; // null when the customer has no open cart
+    // Set once the session has been written back and dropped; holders look it up again
+    private boolean detached;
+
+    CustomerSession(Customer customer) {
+        this.phone = customer.getPhone();
+        this.customer = customer;
+    }
+
+    public String getPhone() { return phone; }
+    public synchronized Customer getCustomer() { return customer; }
+    public synchronized Order getCart() { return cart; }
+
+    synchronized void setCart(Order cart) { this.cart = cart; }
+    synchronized boolean isDetached() { return detached; }
+    synchronized void detach() { detached = true; }
+
+    // New details replace the old ones, on the open cart too
+    synchronized void updateDetails(String name, String address) {
+        if (customer.getName().equals(name) && customer.getAddress().equals(address)) return;
+        customer = new Customer(name, phone, address, customer.getWallet());
+        if (cart != null) {
+            synchronized (cart) {
+                cart.setCustomer(customer);
+            }
+        }
+    }
+}
+
+// A session as it is written to disk
+class SessionRecord {
+    final String phone;
+    final String name;
+    final String address;
+    final long cartId; // 0 when there is no parked cart
+    final String restaurantName;
+    final long deliveryDistanceMeters;
+    final String couponCode; // null when none was applied
+    final String[] itemNames;
+    final int[] quantities;
+
+    SessionRecord(String phone, String name, String address, long cartId, String restaurantName,
+                  long deliveryDistanceMeters, String couponCode, String[] itemNames, int[] quantities) {
+        this.phone = phone;
+        this.name = name;
+        this.address = address;
+        this.cartId = cartId;
+        this.restaurantName = restaurantName;
+        this.deliveryDistanceMeters = deliveryDistanceMeters;
+        this.couponCode = couponCode;
+        this.itemNames = itemNames;
+        this.quantities = quantities;
+    }
+
+    // Empty carts are kept too, as a client may already hold the order id
+    static SessionRecord of(Customer customer, Order cart, Restaurant restaurant) {
+        if (cart == null || restaurant == null || cart.getStatus() != OrderStatus.PENDING) {
+            return new SessionRecord(customer.getPhone(), customer.getName(), customer.getAddress(),
+                    0, null, 0, null, new String[0], new int[0]);
+        }
+        String[] itemNames = new String[cart.getItemCount()];
+        int[] quantities = new int[itemNames.length];
+        int i = 0;
+        for (OrderItem item : cart.getItems()) {
+            itemNames[i] = item.getMenuItem().getName();
+            quantities[i++] = item.getQuantity();
+        }
+        return new SessionRecord(customer.getPhone(), customer.getName(), customer.getAddress(),
+                cart.getOrderId(), restaurant.getName(), cart.getDeliveryDistanceMeters(), cart.getCouponCode(),
+                itemNames, quantities);
+    }
+
+    boolean hasCart() { return cartId != 0; }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeUTF(phone);
+        out.writeUTF(name);
+        out.writeUTF(address);
+        out.writeLong(cartId);
+        if (!hasCart()) return;
+        out.writeUTF(restaurantName);
+        out.writeLong(deliveryDistanceMeters);
+        out.writeUTF(couponCode == null ? "" : couponCode);
+        out.writeInt(itemNames.length);
+        for (int i = 0; i < itemNames.length; i++) {
+            out.writeUTF(itemNames[i]);
+            out.writeInt(quantities[i]);
+        }
+    }
+
+    static SessionRecord readFrom(DataInput in) throws IOException {
+        String phone = in.readUTF();
+        String name = in.readUTF();
+        String address = in.readUTF();
+        long cartId = in.readLong();
+        if (cartId == 0) {
+            return new SessionRecord(phone, name, address, 0, null, 0, null, new String[0], new int[0]);
+        }
+        String restaurantName = in.readUTF();
+        long distance = in.readLong();
+        String coupon = in.readUTF();
+        int lines = in.readInt();
+        String[] itemNames = new String[lines];
+        int[] quantities = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            itemNames[i] = in.readUTF();
+            quantities[i] = in.readInt();
+        }
+        return new SessionRecord(phone, name, address, cartId, restaurantName, distance,
+                coupon.isEmpty() ? null : coupon, itemNames, quantities);
+    }
+}
+
+// Written-back sessions, one file per customer under sessions/, plus one file per parked cart
+// under carts/ naming the customer it belongs to, so a cart can be found by its order id alone.
+// Files are replaced atomically but not fsync'ed: a crash can lose a parked cart, never money.
+class FileSessionStore {
+    private static final int MAGIC = 0x53455353; // "SESS"
+    private static final int VERSION = 1;
+
+    private final Path sessions;
+    private final Path carts;
+
+    private FileSessionStore(Path sessions, Path carts) {
+        this.sessions = sessions;
+        this.carts = carts;
+    }
+
+    static FileSessionStore open(Path directory) throws IOException {
+        Path sessions = Files.createDirectories(directory.resolve("sessions"));
+        Path carts = Files.createDirectories(directory.resolve("carts"));
+        return new FileSessionStore(sessions, carts);
+    }
+
+    public void save(SessionRecord record) throws IOException {
+        Path file = sessions.resolve(fileName(record.phone));
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            record.writeTo(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (record.hasCart()) {
+            Files.write(carts.resolve(IdGenerator.format(record.cartId)), record.phone.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Reads a customer's record and removes it, with its cart's pointer: the session lives in
+    // memory from here on. Returns null for a customer with nothing on disk.
+    public SessionRecord take(String phone) throws IOException {
+        Path file = sessions.resolve(fileName(phone));
+        SessionRecord record;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognised session file " + file);
+            }
+            record = SessionRecord.readFrom(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Files.delete(file);
+        if (record.hasCart()) {
+            Files.deleteIfExists(carts.resolve(IdGenerator.format(record.cartId)));
+        }
+        return record;
+    }
+
+    // The phone number whose session holds this parked cart, or null
+    public String cartOwner(long orderId) throws IOException {
+        try {
+            return new String(Files.readAllBytes(carts.resolve(IdGenerator.format(orderId))), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    // Phone numbers are used as file names as they are when they are plain enough, else hex-encoded
+    static String fileName(String phone) {
+        if (!phone.isEmpty() && phone.length() <= 64 && phone.chars().allMatch(c ->
+                (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '+' || c == '-')) {
+            return phone + ".session";
+        }
+        StringBuilder hex = new StringBuilder("x");
+        for (byte b : phone.getBytes(StandardCharsets.UTF_8)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.append(".session").toString();
+    }
+}
+
+enum SessionFailure {
+    CART_LOOKUP, // finding which session a parked cart belongs to
+    LOAD,        // reading a written-back session
+    SAVE         // writing a session back; it stays in memory
+}
+
+interface SessionFailureListener {
+    // The error is passed as it is; it may name the session's file
+    void onFailure(SessionFailure failure, IOException error);
+}
+
+class CustomerSessionStore {
+    static final int DEFAULT_CAPACITY = 100_000;
+    static final int SEGMENTS = 64;
+    private static final Counter WRITE_BACKS = Metrics.DEFAULT.counter("session_write_backs_total");
+    private static final Counter DISK_LOADS = Metrics.DEFAULT.counter("session_disk_loads_total");
+    private static final Counter CARTS_PARKED = Metrics.DEFAULT.counter("carts_parked_total");
+    private static final Counter CARTS_RESUMED = Metrics.DEFAULT.counter("carts_resumed_total");
+    private static final EnumMap<SessionFailure, Counter> FAILURES =
+            Metrics.DEFAULT.counters("session_store_failures_total", "operation", SessionFailure.class);
+
+    private final RestaurantRegistry restaurants;
+    private final WalletStore wallets;
+    private final FileSessionStore files; // null when sessions are kept in memory only
+    private final Predicate<Order> busy; // carts that must stay in memory, e.g. while being checked out
+    private final ShardedLruCache<String, CustomerSession> cache;
+    // Open carts of resident sessions by order id
+    private final ConcurrentHashMap<Long, Order> carts = new ConcurrentHashMap<>();
+    private final List<SessionFailureListener> failureListeners = new CopyOnWriteArrayList<>();
+
+    // Without files to write back to, an evicted session would be lost, so nothing is evicted
+    CustomerSessionStore(RestaurantRegistry restaurants, WalletStore wallets, FileSessionStore files,
+                         int capacity, Predicate<Order> busy) {
+        this.restaurants = restaurants;
+        this.wallets = wallets;
+        this.files = files;
+        this.busy = busy;
+        this.cache = new ShardedLruCache<>("sessions", files == null ? Integer.MAX_VALUE : capacity, SEGMENTS, this::writeBack);
+    }
+
+    public void onFailure(SessionFailureListener listener) {
+        failureListeners.add(listener);
+    }
+
+    private void failed(SessionFailure failure, IOException error) {
+        FAILURES.get(failure).increment();
+        for (SessionFailureListener listener : failureListeners) {
+            listener.onFailure(failure, error);
+        }
+    }
+
+    // The customer's session from memory, else from disk; null for someone never seen before
+    public CustomerSession find(String phone) {
+        return cache.get(phone, this::load);
+    }
+
+    // Finds or starts the customer's session; the details given replace those on file
+    public CustomerSession signIn(String name, String phone, String address) {
+        while (true) {
+            CustomerSession session = cache.get(phone, p -> {
+                CustomerSession loaded = load(p);
+                return loaded != null ? loaded : new CustomerSession(new Customer(name, p, address, wallets.walletFor(p)));
+            });
+            synchronized (session) {
+                if (session.isDetached()) continue; // written back since the lookup
+                session.updateDetails(name, address);
+                return session;
+            }
+        }
+    }
+
+    // The customer's open cart at this restaurant if there is one, else a new cart, which replaces
+    // a cart left open at another restaurant
+    public Order openCart(String name, String phone, String address, Restaurant restaurant) {
+        while (true) {
+            CustomerSession session = signIn(name, phone, address);
+            synchronized (session) {
+                if (session.isDetached()) continue;
+                Order cart = session.getCart();
+                if (cart != null && cart.getRestaurantId() == restaurant.getId() && cart.getStatus() == OrderStatus.PENDING) {
+                    return cart;
+                }
+                if (cart != null) {
+                    carts.remove(cart.getOrderId(), cart);
+                }
+                cart = new Order(session.getCustomer(), restaurant);
+                session.setCart(cart);
+                carts.put(cart.getOrderId(), cart);
+                return cart;
+            }
+        }
+    }
+
+    // A resident open cart, or a parked one brought back with its customer's session; null when
+    // the order id is not an open cart
+    public Order getCart(long orderId) {
+        while (true) {
+            Order cart = carts.get(orderId);
+            if (cart != null) {
+                cache.get(cart.getCustomer().getPhone()); // keeps the session recently used
+                return cart;
+            }
+            if (files == null) return null;
+            String phone;
+            try {
+                phone = files.cartOwner(orderId);
+            } catch (IOException e) {
+                failed(SessionFailure.CART_LOOKUP, e);
+                return null;
+            }
+            CustomerSession session = phone == null ? null : find(phone);
+            if (session == null) return null;
+            synchronized (session) {
+                if (session.isDetached()) continue; // parked again already
+                cart = session.getCart();
+                return cart != null && cart.getOrderId() == orderId ? cart : null;
+            }
+        }
+    }
+
+    // True while the cart is open and resident; checked under the cart's lock before editing it
+    public boolean isOpen(Order cart) {
+        return carts.get(cart.getOrderId()) == cart;
+    }
+
+    // Forgets a cart that has been checked out or thrown away
+    public void closeCart(Order cart) {
+        carts.remove(cart.getOrderId(), cart);
+        CustomerSession session = cache.get(cart.getCustomer().getPhone());
+        if (session != null) {
+            synchronized (session) {
+                if (session.getCart() == cart) {
+                    session.setCart(null);
+                }
+            }
+        }
+    }
+
+    // Writes every resident session out without dropping it; for shutdown, as the files would
+    // otherwise hold copies of sessions that keep changing in memory
+    public void flush() {
+        if (files == null) return;
+        cache.forEach((phone, session) -> {
+            synchronized (session) {
+                Order cart = session.getCart();
+                if (cart == null) {
+                    save(session);
+                } else {
+                    synchronized (cart) {
+                        save(session);
+                    }
+                }
+            }
+        });
+    }
+
+    public int size() { return cache.size(); }
+    public int getOpenCarts() { return carts.size(); }
+    public ShardedLruCache<String, CustomerSession> getCache() { return cache; }
+
+    private CustomerSession load(String phone) {
+        if (files == null) return null;
+        SessionRecord record;
+        try {
+            record = files.take(phone);
+        } catch (IOException e) {
+            failed(SessionFailure.LOAD, e);
+            return null;
+        }
+        if (record == null) return null;
+        DISK_LOADS.increment();
+        CustomerSession session = new CustomerSession(new Customer(record.name, phone, record.address, wallets.walletFor(phone)));
+        if (record.hasCart()) {
+            Order cart = resume(record, session.getCustomer());
+            if (cart != null) {
+                session.setCart(cart);
+                carts.put(cart.getOrderId(), cart);
+                CARTS_RESUMED.increment();
+            }
+        }
+        return session;
+    }
+
+    // Rebuilds a parked cart against the current menu; lines whose item is gone are dropped, as is
+    // a coupon that has been withdrawn
+    private Order resume(SessionRecord record, Customer customer) {
+        Restaurant restaurant = restaurants.findByName(record.restaurantName);
+        if (restaurant == null) return null;
+        MenuSnapshot menu = restaurant.getMenuSnapshot();
+        Order cart = new Order(record.cartId, customer, restaurant);
+        cart.setDeliveryDistanceMeters(record.deliveryDistanceMeters);
+        for (int i = 0; i < record.itemNames.length; i++) {
+            MenuItem item = menu.findByName(record.itemNames[i]);
+            if (item != null) {
+                cart.addItem(item, record.quantities[i]);
+            }
+        }
+        if (record.couponCode != null) {
+            try {
+                cart.applyCoupon(record.couponCode);
+            } catch (IllegalArgumentException e) {
+                // no longer offered
+            }
+        }
+        return cart;
+    }
+
+    // Evictor for the cache, under its segment lock. A cart being checked out keeps its session in
+    // memory; otherwise the cart is parked and leaves the open carts with its session.
+    private boolean writeBack(String phone, CustomerSession session) {
+        synchronized (session) {
+            Order cart = session.getCart();
+            if (cart == null) {
+                if (!save(session)) return false;
+                session.detach();
+                return true;
+            }
+            synchronized (cart) {
+                if (busy.test(cart) || !save(session)) return false;
+                carts.remove(cart.getOrderId(), cart);
+                session.detach();
+                CARTS_PARKED.increment();
+                return true;
+            }
+        }
+    }
+
+    private boolean save(CustomerSession session) {
+        try {
+            Order cart = session.getCart();
+            Restaurant restaurant = cart == null ? null : restaurants.get(cart.getRestaurantId());
+            files.save(SessionRecord.of(session.getCustomer(), cart, restaurant));
+            WRITE_BACKS.increment();
+            return true;
+        } catch (IOException e) {
+            failed(SessionFailure.SAVE, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+// Durable storage for orders and wallets
+//
+// Every wallet transaction and confirmed order is appended to a write-ahead log (WAL) made of
+// numbered segment files. A background flusher group-commits the log: while one batch is being
+// written and fsync'ed, new records collect in the next batch, so one fsync covers many records.
+// checkpoint() switches to a fresh segment, folds the previous snapshot plus the closed segments
+// into a new snapshot and deletes those segments, so startup only replays the log tail. The
+// snapshot keeps wallet balances and the last order id, but orders only for ORDER_RETENTION; older
+// orders are dropped from it as it is rewritten.
+
+package foodordering;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+enum LogRecordType {
+    WALLET_TRANSACTION, ORDER_CONFIRMED
+}
+
+// A confirmed order as it is persisted
+class OrderRecord {
+    final long orderId;
+    final String phone;
+    final String customerName;
+    final long epochMillis;
+    final PaymentMethod method;
+    final long total;
+    final String[] itemNames;
+    final int[] quantities;
+    final long[] unitPrices;
+
+    OrderRecord(long orderId, String phone, String customerName, long epochMillis, PaymentMethod method,
+                long total, String[] itemNames, int[] quantities, long[] unitPrices) {
+        this.orderId = orderId;
+        this.phone = phone;
+        this.customerName = customerName;
+        this.epochMillis = epochMillis;
+        this.method = method;
+        this.total = total;
+        this.itemNames = itemNames;
+        this.quantities = quantities;
+        this.unitPrices = unitPrices;
+    }
+
+    static OrderRecord of(Order order) {
+        Collection<OrderItem> items = order.getItems();
+        String[] names = new String[items.size()];
+        int[] quantities = new int[items.size()];
+        long[] prices = new long[items.size()];
+        int i = 0;
+        for (OrderItem item : items) {
+            names[i] = item.getMenuItem().getName();
+            quantities[i] = item.getQuantity();
+            prices[i] = item.getMenuItem().getPrice();
+            i++;
+        }
+        Payment payment = order.getPayment();
+        return new OrderRecord(order.getOrderId(), order.getCustomer().getPhone(), order.getCustomer().getName(),
+                order.getOrderTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(),
+                payment.getMethod(), payment.getAmount(), names, quantities, prices);
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(orderId);
+        out.writeUTF(phone);
+        out.writeUTF(customerName);
+        out.writeLong(epochMillis);
+        out.writeByte(method.ordinal());
+        out.writeLong(total);
+        out.writeInt(itemNames.length);
+        for (int i = 0; i < itemNames.length; i++) {
+            out.writeUTF(itemNames[i]);
+            out.writeInt(quantities[i]);
+            out.writeLong(unitPrices[i]);
+        }
+    }
+
+    static OrderRecord readFrom(DataInput in) throws IOException {
+        long orderId = in.readLong();
+        String phone = in.readUTF();
+        String customerName = in.readUTF();
+        long epochMillis = in.readLong();
+        PaymentMethod method = PaymentMethod.values()[in.readByte()];
+        long total = in.readLong();
+        int lines = in.readInt();
+        String[] names = new String[lines];
+        int[] quantities = new int[lines];
+        long[] prices = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            names[i] = in.readUTF();
+            quantities[i] = in.readInt();
+            prices[i] = in.readLong();
+        }
+        return new OrderRecord(orderId, phone, customerName, epochMillis, method, total, names, quantities, prices);
+    }
+}
+
+// State rebuilt from the snapshot and the log
+class PersistedState {
+    // Orders older than this are left out of the next snapshot; they only feed startup analytics
+    static final long ORDER_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    final Map<String, Long> walletBalances = new HashMap<>();
+    final List<OrderRecord> orders = new ArrayList<>();
+    long lastOrderId;
+    long coveredSegment; // highest log segment already folded into this state
+
+    void applyWalletTransaction(String phone, WalletTransactionType type, long amount) {
+        switch (type) {
+            case INITIAL:
+                walletBalances.put(phone, amount);
+                break;
+            case ADDED:
+            case REFUND:
+                walletBalances.merge(phone, amount, Long::sum);
+                break;
+            case PAYMENT:
+                walletBalances.merge(phone, -amount, Long::sum);
+                break;
+        }
+    }
+
+    void applyOrder(OrderRecord order) {
+        orders.add(order);
+        lastOrderId = Math.max(lastOrderId, order.orderId);
+    }
+
+    // lastOrderId is kept so ids are never reused after the orders themselves are gone
+    void dropOrdersBefore(long epochMillis) {
+        orders.removeIf(order -> order.epochMillis < epochMillis);
+    }
+}
+
+class WriteAheadLog implements Closeable {
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int FRAME_HEADER = 8; // body length + CRC32
+
+    private final Path directory;
+    private final Object lock = new Object();
+    private final Thread flusher;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer flushing = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private FileChannel flushTarget; // the channel the running flush writes to
+    private long segment;
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean flushInProgress;
+    private boolean closed;
+    private IOException failure;
+
+    WriteAheadLog(Path directory, long segment) throws IOException {
+        this.directory = directory;
+        this.segment = segment;
+        this.channel = openSegment(segment);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Queues a record for the next group commit and returns its sequence number
+    long append(byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        synchronized (lock) {
+            if (failure != null) throw new IOException("Write-ahead log failed", failure);
+            if (closed) throw new IOException("Write-ahead log is closed");
+            int size = FRAME_HEADER + body.length;
+            if (pending.remaining() < size) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.putInt(body.length).putInt((int) crc.getValue()).put(body);
+            lock.notifyAll();
+            return ++appendedSeq;
+        }
+    }
+
+    // Blocks until the record with the given sequence number has been fsync'ed
+    void awaitDurable(long seq) throws IOException {
+        synchronized (lock) {
+            while (durableSeq < seq) {
+                if (failure != null) throw new IOException("Write-ahead log failed", failure);
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for log flush");
+                }
+            }
+        }
+    }
+
+    // Switches new flushes to a fresh segment and closes the current one; returns its number.
+    // Records still queued go to the new segment, which replays after the closed one, so only a
+    // flush already writing to the old segment is waited for. Appends never stop, and the wait
+    // is at most one flush however busy the log is.
+    long rotate() throws IOException {
+        FileChannel old;
+        long closedSegment;
+        synchronized (lock) {
+            if (failure != null) throw new IOException("Write-ahead log failed", failure);
+            old = channel;
+            closedSegment = segment;
+            channel = openSegment(++segment);
+            while (flushInProgress && flushTarget == old) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while rotating log");
+                }
+            }
+            if (failure != null) throw new IOException("Write-ahead log failed", failure);
+        }
+        old.close();
+        return closedSegment;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSeq;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.position() == 0) {
+                    return; // closed and drained
+                }
+                batch = pending;
+                pending = flushing;
+                flushing = batch;
+                batchSeq = appendedSeq;
+                target = channel;
+                flushTarget = target;
+                flushInProgress = true;
+            }
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    target.write(batch);
+                }
+                target.force(false);
+                batch.clear();
+                synchronized (lock) {
+                    durableSeq = batchSeq;
+                    flushInProgress = false;
+                    lock.notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    flushInProgress = false;
+                    lock.notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) throw new IOException("Write-ahead log failed", failure);
+    }
+
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    // Applies every intact record in the segment; a torn or corrupt tail is truncated away.
+    // The segment is streamed a frame at a time, so its size is not limited by memory.
+    static void replay(Path file, PersistedState state) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long intact = 0;
+            DataInputStream frames = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 64 * 1024));
+            byte[] body = new byte[256];
+            CRC32 crc = new CRC32();
+            while (size - intact >= FRAME_HEADER) {
+                int length = frames.readInt();
+                int checksum = frames.readInt();
+                if (length < 0 || length > size - intact - FRAME_HEADER) {
+                    break;
+                }
+                if (length > body.length) {
+                    body = new byte[Math.max(length, body.length * 2)];
+                }
+                frames.readFully(body, 0, length);
+                crc.reset();
+                crc.update(body, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                applyRecord(new DataInputStream(new ByteArrayInputStream(body, 0, length)), state);
+                intact += FRAME_HEADER + length;
+            }
+            if (intact < size) {
+                in.truncate(intact);
+            }
+        }
+    }
+
+    static byte[] encodeWalletTransaction(String phone, WalletTransactionType type, long amount) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + phone.length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(LogRecordType.WALLET_TRANSACTION.ordinal());
+            out.writeUTF(phone);
+            out.writeByte(type.ordinal());
+            out.writeLong(amount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] encodeOrder(OrderRecord order) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(LogRecordType.ORDER_CONFIRMED.ordinal());
+            order.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void applyRecord(DataInput in, PersistedState state) throws IOException {
+        switch (LogRecordType.values()[in.readByte()]) {
+            case WALLET_TRANSACTION:
+                String phone = in.readUTF();
+                WalletTransactionType type = WalletTransactionType.values()[in.readByte()];
+                state.applyWalletTransaction(phone, type, in.readLong());
+                break;
+            case ORDER_CONFIRMED:
+                state.applyOrder(OrderRecord.readFrom(in));
+                break;
+        }
+    }
+}
+
+class DurableStore implements Closeable {
+    private static final String SNAPSHOT = "snapshot.dat";
+    private static final int SNAPSHOT_MAGIC = 0x464F4F44; // "FOOD"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final Path directory;
+    private final WriteAheadLog log;
+    private final PersistedState recovered;
+    private ScheduledExecutorService checkpointer;
+
+    private DurableStore(Path directory, WriteAheadLog log, PersistedState recovered) {
+        this.directory = directory;
+        this.log = log;
+        this.recovered = recovered;
+    }
+
+    // Loads the latest snapshot, replays newer log segments and starts a fresh segment for new writes
+    static DurableStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        PersistedState state = loadSnapshot(directory);
+        long lastSegment = state.coveredSegment;
+        for (long segment : WriteAheadLog.listSegments(directory)) {
+            if (segment > state.coveredSegment) {
+                WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, segment), state);
+            }
+            lastSegment = Math.max(lastSegment, segment);
+        }
+        return new DurableStore(directory, new WriteAheadLog(directory, lastSegment + 1), state);
+    }
+
+    public PersistedState recoveredState() { return recovered; }
+
+    // Returns once the transaction is on disk, so a balance change is never acknowledged and then
+    // lost; concurrent transactions share one group commit
+    public void walletTransaction(String phone, WalletTransactionType type, long amount, long balance) {
+        try {
+            log.awaitDurable(log.append(WriteAheadLog.encodeWalletTransaction(phone, type, amount)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Returns once the order, and every wallet record appended before it, is on disk
+    public void orderConfirmed(Order order) throws IOException {
+        orderConfirmed(OrderRecord.of(order));
+    }
+
+    void orderConfirmed(OrderRecord order) throws IOException {
+        log.awaitDurable(log.append(WriteAheadLog.encodeOrder(order)));
+    }
+
+    public synchronized void checkpoint() throws IOException {
+        long closedSegment = log.rotate();
+        PersistedState state = loadSnapshot(directory);
+        List<Long> segments = WriteAheadLog.listSegments(directory);
+        for (long segment : segments) {
+            if (segment > state.coveredSegment && segment <= closedSegment) {
+                WriteAheadLog.replay(WriteAheadLog.segmentPath(directory, segment), state);
+            }
+        }
+        state.coveredSegment = closedSegment;
+        state.dropOrdersBefore(System.currentTimeMillis() - PersistedState.ORDER_RETENTION_MILLIS);
+        writeSnapshot(directory, state);
+        for (long segment : segments) {
+            if (segment <= closedSegment) {
+                Files.deleteIfExists(WriteAheadLog.segmentPath(directory, segment));
+            }
+        }
+    }
+
+    public synchronized void scheduleCheckpoints(long period, TimeUnit unit) {
+        if (checkpointer != null) return;
+        checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wal-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (checkpointer != null) {
+                checkpointer.shutdownNow();
+            }
+        }
+        log.close();
+    }
+
+    private static PersistedState loadSnapshot(Path directory) throws IOException {
+        PersistedState state = new PersistedState();
+        Path file = directory.resolve(SNAPSHOT);
+        if (!Files.exists(file)) {
+            return state;
+        }
+        CRC32 crc = new CRC32();
+        try (CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file)), crc);
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognised snapshot " + file);
+            }
+            state.coveredSegment = in.readLong();
+            state.lastOrderId = in.readLong();
+            int wallets = in.readInt();
+            for (int i = 0; i < wallets; i++) {
+                state.walletBalances.put(in.readUTF(), in.readLong());
+            }
+            int orders = in.readInt();
+            for (int i = 0; i < orders; i++) {
+                state.orders.add(OrderRecord.readFrom(in));
+            }
+            long expected = crc.getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Snapshot checksum mismatch in " + file);
+            }
+        }
+        return state;
+    }
+
+    // Written to a temporary file, fsync'ed, then atomically moved over the previous snapshot
+    private static void writeSnapshot(Path directory, PersistedState state) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        CRC32 crc = new CRC32();
+        try (CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(state.coveredSegment);
+            out.writeLong(state.lastOrderId);
+            out.writeInt(state.walletBalances.size());
+            for (Map.Entry<String, Long> wallet : state.walletBalances.entrySet()) {
+                out.writeUTF(wallet.getKey());
+                out.writeLong(wallet.getValue());
+            }
+            out.writeInt(state.orders.size());
+            for (OrderRecord order : state.orders) {
+                order.writeTo(out);
+            }
+            out.flush();
+            out.writeLong(crc.getValue());
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
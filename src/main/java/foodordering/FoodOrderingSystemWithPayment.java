@@ -0,0 +1,2052 @@
+// Online Food Ordering System with Wallet & Payment System
+
+package foodordering;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import javax.management.JMException;
+
+// Money is carried as a primitive long count of paisa (Rs. 1 = 100 paisa)
+final class Money {
+    static final long PAISA_PER_RUPEE = 100;
+
+    private Money() {}
+
+    public static long ofRupees(double rupees) {
+        return Math.round(rupees * PAISA_PER_RUPEE);
+    }
+
+    // Exact decimal rupees, e.g. "12.50"
+    public static long parse(String rupees) {
+        try {
+            return new BigDecimal(rupees.trim()).movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must have at most two decimal places: " + rupees);
+        }
+    }
+
+    public static long times(long paisa, int quantity) {
+        return Math.multiplyExact(paisa, quantity);
+    }
+
+    public static String format(long paisa) {
+        return appendTo(new StringBuilder(16), paisa).toString();
+    }
+
+    // Renders "123.45" without going through String.format
+    public static StringBuilder appendTo(StringBuilder sb, long paisa) {
+        if (paisa < 0) {
+            sb.append('-');
+            paisa = -paisa;
+        }
+        long fraction = paisa % PAISA_PER_RUPEE;
+        sb.append(paisa / PAISA_PER_RUPEE).append('.');
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+}
+
+// Snowflake-style 64-bit ids: 41 bits of milliseconds since EPOCH, 10 bits of node id, 12 bits of sequence.
+// The (timestamp, sequence) pair lives in one AtomicLong, so issuing an id is a single CAS.
+final class IdGenerator {
+    static final long EPOCH = 1704067200000L; // 2024-01-01T00:00:00Z
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    static final IdGenerator DEFAULT = new IdGenerator(Integer.getInteger("foodorder.nodeId", 0));
+
+    private final long node;
+    private final AtomicLong state = new AtomicLong(); // timestamp << SEQUENCE_BITS | sequence
+
+    public IdGenerator(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = state.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            // Same millisecond, or the clock stepped back: keep counting from the last state.
+            // A full sequence carries into the timestamp bits, borrowing the next millisecond.
+            long next = now > (last >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : last + 1;
+            if (state.compareAndSet(last, next)) {
+                return (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)
+                        | node << SEQUENCE_BITS
+                        | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // Guarantees later ids sort after an id issued before a restart, even if the clock is behind
+    public void advancePast(long id) {
+        long issued = (id >>> (NODE_BITS + SEQUENCE_BITS)) << SEQUENCE_BITS | (id & SEQUENCE_MASK);
+        state.accumulateAndGet(issued, Math::max);
+    }
+
+    public static long nodeOf(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    // Compact base-36 rendering, only built for display
+    public static String format(long id) {
+        return Long.toString(id, 36).toUpperCase();
+    }
+
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    // Same text as format, appended without building a String
+    public static StringBuilder appendTo(StringBuilder sb, long id) {
+        if (id < 0) {
+            return sb.append(format(id));
+        }
+        int start = sb.length();
+        do {
+            sb.append(DIGITS[(int) (id % 36)]);
+            id /= 36;
+        } while (id > 0);
+        for (int i = start, j = sb.length() - 1; i < j; i++, j--) {
+            char c = sb.charAt(i);
+            sb.setCharAt(i, sb.charAt(j));
+            sb.setCharAt(j, c);
+        }
+        return sb;
+    }
+
+    public static long parse(String formatted) {
+        return Long.parseLong(formatted, 36);
+    }
+}
+
+// Payment related classes
+abstract class Payment {
+    protected long paymentId;
+    protected long amount; // paisa
+    protected LocalDateTime timestamp;
+    protected volatile PaymentStatus status;
+    protected long refunded; // paisa, guarded by this
+    private int attempt; // the attempt whose result may still set the status, guarded by this
+
+    public Payment(long amount) {
+        this.paymentId = IdGenerator.DEFAULT.nextId();
+        this.amount = amount;
+        this.timestamp = LocalDateTime.now();
+        this.status = PaymentStatus.PENDING;
+    }
+
+    public abstract boolean processPayment();
+
+    public abstract PaymentMethod getMethod();
+
+    // Non-blocking variant: completes with the final status without holding a thread while waiting
+    public CompletableFuture<PaymentStatus> processPaymentAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            processPayment();
+            return status;
+        }, executor);
+    }
+
+    // Starts a new attempt, putting a failed payment back to PENDING; results reported for an
+    // earlier attempt are ignored from now on
+    synchronized int beginAttempt() {
+        this.status = PaymentStatus.PENDING;
+        return ++attempt;
+    }
+
+    synchronized boolean isCurrentAttempt(int token) {
+        return attempt == token;
+    }
+
+    // Ends an attempt that will not report in time, e.g. one that timed out. It fails unless its
+    // result already arrived, and anything it reports later is ignored. Returns the final status.
+    synchronized PaymentStatus closeAttempt(int token) {
+        if (attempt == token) {
+            attempt++;
+            if (status == PaymentStatus.PENDING) {
+                status = PaymentStatus.FAILED;
+            }
+        }
+        return status;
+    }
+
+    // Returns money through the method it was paid with; partial refunds may follow each other
+    // until the whole amount has been returned
+    public synchronized void refund(long refundAmount) {
+        if (status != PaymentStatus.SUCCESS && status != PaymentStatus.PARTIALLY_REFUNDED) {
+            throw new IllegalStateException("Only successful payments can be refunded (payment is " + status + ")");
+        }
+        if (refundAmount <= 0 || refundAmount > amount - refunded) {
+            throw new IllegalArgumentException("Refund must be between Rs. 0.01 and Rs. " + Money.format(amount - refunded));
+        }
+        returnFunds(refundAmount);
+        refunded += refundAmount;
+        this.status = refunded == amount ? PaymentStatus.REFUNDED : PaymentStatus.PARTIALLY_REFUNDED;
+    }
+
+    // Money paid outside the process is returned by the gateway or the rider; only a wallet is credited here
+    protected void returnFunds(long refundAmount) {
+    }
+
+    // Where refunds go, shown with the payment; refunds themselves are counted, not printed
+    public abstract String getRefundDestination();
+
+    public synchronized long getRefundedAmount() { return refunded; }
+    public synchronized long getRefundableAmount() {
+        return status == PaymentStatus.SUCCESS || status == PaymentStatus.PARTIALLY_REFUNDED ? amount - refunded : 0;
+    }
+
+    public long getPaymentId() { return paymentId; }
+    public long getAmount() { return amount; }
+    public PaymentStatus getStatus() { return status; }
+    public LocalDateTime getTimestamp() { return timestamp; }
+}
+
+enum PaymentStatus {
+    PENDING, SUCCESS, FAILED, PARTIALLY_REFUNDED, REFUNDED,
+    OVERLOADED // never sent: the gateway stayed too busy until the payment's deadline
+}
+
+enum PaymentMethod {
+    WALLET, CARD, UPI, CASH_ON_DELIVERY
+}
+
+class WalletPayment extends Payment {
+    private Wallet wallet;
+
+    public WalletPayment(long amount, Wallet wallet) {
+        super(amount);
+        this.wallet = wallet;
+    }
+
+    @Override
+    public PaymentMethod getMethod() { return PaymentMethod.WALLET; }
+
+    @Override
+    public boolean processPayment() {
+        // Single atomic debit; a concurrent checkout cannot slip in between check and deduct
+        if (wallet.deductBalance(amount)) {
+            this.status = PaymentStatus.SUCCESS;
+            return true;
+        } else {
+            this.status = PaymentStatus.FAILED;
+            return false;
+        }
+    }
+
+    @Override
+    protected void returnFunds(long refundAmount) {
+        wallet.refund(refundAmount);
+    }
+
+    public Wallet getWallet() { return wallet; }
+
+    @Override
+    public String getRefundDestination() { return "wallet"; }
+}
+
+// Card and UPI payments are approved by an external gateway, either one call per payment
+// or in batches through a SettlementEngine. The gateway's decision is applied for the attempt
+// that asked for it, so a decision arriving after its attempt timed out changes nothing.
+abstract class GatewayPayment extends Payment {
+    public GatewayPayment(long amount) {
+        super(amount);
+    }
+
+    // Share of payments the simulated gateway approves
+    abstract double approvalRate();
+
+    // Round trip of a single simulated gateway call
+    abstract long gatewayLatencyMillis();
+
+    // One simulated gateway call for this payment alone; completes with the decision
+    public CompletableFuture<Boolean> requestApproval(Executor executor) {
+        // The gateway delay is a timer, not a sleeping thread
+        Executor gateway = CompletableFuture.delayedExecutor(gatewayLatencyMillis(), TimeUnit.MILLISECONDS, executor);
+        return CompletableFuture.supplyAsync(() -> ThreadLocalRandom.current().nextDouble() < approvalRate(), gateway);
+    }
+
+    @Override
+    public boolean processPayment() {
+        try {
+            Thread.sleep(gatewayLatencyMillis()); // Simulate processing time
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return applySettlement(beginAttempt(), Math.random() < approvalRate()) == PaymentStatus.SUCCESS;
+    }
+
+    // Records the gateway's decision for the given attempt and reports it to the customer; a
+    // decision for an attempt that has been closed or already decided is ignored
+    synchronized PaymentStatus applySettlement(int attempt, boolean approved) {
+        if (!isCurrentAttempt(attempt) || status != PaymentStatus.PENDING) {
+            return status;
+        }
+        status = approved ? PaymentStatus.SUCCESS : PaymentStatus.FAILED;
+        return status;
+    }
+}
+
+class CardPayment extends GatewayPayment {
+    static final long GATEWAY_LATENCY_MS = 2000;
+    static final double APPROVAL_RATE = 0.95;
+
+    private String cardNumber;
+    private String cardHolderName;
+
+    public CardPayment(long amount, String cardNumber, String cardHolderName) {
+        super(amount);
+        this.cardNumber = cardNumber;
+        this.cardHolderName = cardHolderName;
+    }
+
+    @Override
+    public PaymentMethod getMethod() { return PaymentMethod.CARD; }
+
+    @Override
+    double approvalRate() { return APPROVAL_RATE; }
+
+    @Override
+    long gatewayLatencyMillis() { return GATEWAY_LATENCY_MS; }
+
+    public String getLastFourDigits() { return cardNumber.substring(cardNumber.length() - 4); }
+
+    @Override
+    public String getRefundDestination() { return "card ending with ****" + getLastFourDigits(); }
+}
+
+class UPIPayment extends GatewayPayment {
+    static final long GATEWAY_LATENCY_MS = 1500;
+    static final double APPROVAL_RATE = 0.90;
+
+    private String upiId;
+
+    public UPIPayment(long amount, String upiId) {
+        super(amount);
+        this.upiId = upiId;
+    }
+
+    @Override
+    public PaymentMethod getMethod() { return PaymentMethod.UPI; }
+
+    @Override
+    double approvalRate() { return APPROVAL_RATE; }
+
+    @Override
+    long gatewayLatencyMillis() { return GATEWAY_LATENCY_MS; }
+
+    public String getUpiId() { return upiId; }
+
+    @Override
+    public String getRefundDestination() { return "UPI ID " + upiId; }
+}
+
+class CashOnDeliveryPayment extends Payment {
+    public CashOnDeliveryPayment(long amount) {
+        super(amount);
+    }
+
+    @Override
+    public PaymentMethod getMethod() { return PaymentMethod.CASH_ON_DELIVERY; }
+
+    @Override
+    public boolean processPayment() {
+        this.status = PaymentStatus.SUCCESS;
+        return true;
+    }
+
+    @Override
+    public String getRefundDestination() { return "cash, returned or not collected on delivery"; }
+}
+
+class Wallet {
+    static final int DEFAULT_HISTORY_CAPACITY = 1024;
+
+    // Balance is held in paisa so debit and credit can be a single CAS on a long
+    private final AtomicLong balancePaisa;
+    private final WalletJournal transactionHistory;
+    private volatile WalletListener listener;
+
+    public Wallet(long initialBalance) {
+        this(initialBalance, DEFAULT_HISTORY_CAPACITY);
+    }
+
+    public Wallet(long initialBalance, int historyCapacity) {
+        this.balancePaisa = new AtomicLong(initialBalance);
+        this.transactionHistory = new WalletJournal(historyCapacity);
+        transactionHistory.append(WalletTransactionType.INITIAL, initialBalance, initialBalance);
+    }
+
+    public long getBalance() {
+        return balancePaisa.get();
+    }
+
+    public WalletJournal getTransactionHistory() { return transactionHistory; }
+
+    public void setListener(WalletListener listener) { this.listener = listener; }
+
+    private void notifyListener(WalletTransactionType type, long amount, long balance) {
+        WalletListener l = listener;
+        if (l != null) {
+            l.onTransaction(type, amount, balance);
+        }
+    }
+
+    public void addBalance(long amount) {
+        long balance = balancePaisa.addAndGet(amount);
+        record(WalletTransactionType.ADDED, amount, balance, -amount);
+    }
+
+    // Money coming back from a refunded wallet payment
+    public void refund(long amount) {
+        long balance = balancePaisa.addAndGet(amount);
+        record(WalletTransactionType.REFUND, amount, balance, -amount);
+    }
+
+    public boolean deductBalance(long amount) {
+        long current;
+        do {
+            current = balancePaisa.get();
+            if (current < amount) {
+                return false;
+            }
+        } while (!balancePaisa.compareAndSet(current, current - amount));
+        record(WalletTransactionType.PAYMENT, amount, current - amount, amount);
+        return true;
+    }
+
+    // The listener makes the change durable; if it cannot, the change is undone and the error
+    // passed on, so the balance never holds money the log does not
+    private void record(WalletTransactionType type, long amount, long balance, long undo) {
+        try {
+            notifyListener(type, amount, balance);
+        } catch (RuntimeException e) {
+            balancePaisa.addAndGet(undo);
+            throw e;
+        }
+        transactionHistory.append(type, amount, balance);
+    }
+
+    public void showTransactionHistory() {
+        System.out.println("\n--- Wallet Transaction History ---");
+        int retained = transactionHistory.size();
+        if (retained == 0) {
+            System.out.println("No transactions found.");
+        } else {
+            long total = transactionHistory.totalAppended();
+            if (total > retained) {
+                System.out.println("(Showing last " + retained + " of " + total + " transactions)");
+            }
+            StringBuilder line = new StringBuilder(64);
+            transactionHistory.forEach(0, retained, (type, amount, epochMillis, balance) -> {
+                line.setLength(0);
+                WalletJournal.appendEntry(line, type, amount, epochMillis, balance);
+                System.out.println(line);
+            });
+        }
+        System.out.println("Current Balance: Rs. " + Money.format(getBalance()));
+        System.out.println("----------------------------------\n");
+    }
+}
+
+interface WalletListener {
+    void onTransaction(WalletTransactionType type, long amount, long balance);
+}
+
+enum WalletTransactionType {
+    INITIAL("Initial balance", '+'), ADDED("Added", '+'), PAYMENT("Payment", '-'), REFUND("Refund", '+');
+
+    final String label;
+    final char sign;
+
+    WalletTransactionType(String label, char sign) {
+        this.label = label;
+        this.sign = sign;
+    }
+}
+
+// Fixed-capacity ring of wallet transactions stored column-wise in primitive arrays.
+// Once full, the oldest entries are overwritten; strings are only built when rendering.
+class WalletJournal {
+    private static final WalletTransactionType[] TYPES = WalletTransactionType.values();
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm").withZone(ZoneId.systemDefault());
+
+    interface EntryVisitor {
+        void visit(WalletTransactionType type, long amount, long epochMillis, long balance);
+    }
+
+    private final byte[] types;
+    private final long[] amounts;
+    private final long[] timestamps;
+    private final long[] balances;
+    private long appended;
+
+    public WalletJournal(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Journal capacity must be positive");
+        }
+        this.types = new byte[capacity];
+        this.amounts = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.balances = new long[capacity];
+    }
+
+    public synchronized void append(WalletTransactionType type, long amount, long balance) {
+        int slot = (int) (appended % types.length);
+        types[slot] = (byte) type.ordinal();
+        amounts[slot] = amount;
+        timestamps[slot] = System.currentTimeMillis();
+        balances[slot] = balance;
+        appended++;
+    }
+
+    public int capacity() { return types.length; }
+
+    public synchronized long totalAppended() { return appended; }
+
+    // Number of entries still held, at most capacity()
+    public synchronized int size() {
+        return (int) Math.min(appended, types.length);
+    }
+
+    // Visits up to count entries starting at offset, oldest retained entry first
+    public synchronized int forEach(int offset, int count, EntryVisitor visitor) {
+        int size = size();
+        int end = Math.min(size, offset + count);
+        long first = appended - size;
+        for (int i = offset; i < end; i++) {
+            int slot = (int) ((first + i) % types.length);
+            visitor.visit(TYPES[types[slot]], amounts[slot], timestamps[slot], balances[slot]);
+        }
+        return Math.max(0, end - offset);
+    }
+
+    public int forEachPage(int page, int pageSize, EntryVisitor visitor) {
+        return forEach(page * pageSize, pageSize, visitor);
+    }
+
+    static StringBuilder appendEntry(StringBuilder sb, WalletTransactionType type, long amount,
+                                     long epochMillis, long balance) {
+        sb.append('[');
+        TIMESTAMP_FORMAT.formatTo(Instant.ofEpochMilli(epochMillis), sb);
+        sb.append("] ").append(type.label).append(": ").append(type.sign).append("Rs. ");
+        Money.appendTo(sb, amount);
+        if (type != WalletTransactionType.INITIAL) {
+            Money.appendTo(sb.append(" | Balance: Rs. "), balance);
+        }
+        return sb;
+    }
+}
+
+// Wallets keyed by customer phone; each wallet does its own lock-free debit/credit
+class WalletStore {
+    interface Listener {
+        void onTransaction(String phone, WalletTransactionType type, long amount, long balance);
+    }
+
+    private final ConcurrentHashMap<String, Wallet> wallets = new ConcurrentHashMap<>();
+    private final long welcomeBonus;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public WalletStore(long welcomeBonus) {
+        this.welcomeBonus = welcomeBonus;
+    }
+
+    // Receives every transaction from now on, tagged with the owner's phone
+    public void addListener(Listener listener) { listeners.add(listener); }
+
+    public Wallet walletFor(String phone) {
+        return wallets.computeIfAbsent(phone, p -> {
+            Wallet wallet = attach(p, new Wallet(welcomeBonus));
+            notifyListeners(p, WalletTransactionType.INITIAL, welcomeBonus, welcomeBonus);
+            return wallet;
+        });
+    }
+
+    // Re-creates a wallet with a recovered balance without reporting it as a new transaction
+    public void restore(String phone, long balance) {
+        wallets.put(phone, attach(phone, new Wallet(balance)));
+    }
+
+    public boolean contains(String phone) { return wallets.containsKey(phone); }
+
+    // The phone's wallet, or null if it has none yet
+    public Wallet find(String phone) { return wallets.get(phone); }
+
+    private Wallet attach(String phone, Wallet wallet) {
+        wallet.setListener((type, amount, balance) -> notifyListeners(phone, type, amount, balance));
+        return wallet;
+    }
+
+    private void notifyListeners(String phone, WalletTransactionType type, long amount, long balance) {
+        for (Listener l : listeners) {
+            l.onTransaction(phone, type, amount, balance);
+        }
+    }
+
+    public boolean debit(String phone, long amount) {
+        return walletFor(phone).deductBalance(amount);
+    }
+
+    public void credit(String phone, long amount) {
+        walletFor(phone).addBalance(amount);
+    }
+
+    public int size() { return wallets.size(); }
+}
+
+class PaymentProcessor {
+    static final int BREAKER_WINDOW = 20;
+    static final int BREAKER_MINIMUM_CALLS = 10;
+    static final double BREAKER_FAILURE_RATE = 0.5;
+    static final long BREAKER_OPEN_MILLIS = 30_000;
+    static final int BREAKER_PROBES = 3;
+    static final int GATEWAY_INITIAL_LIMIT = 64;
+    static final int GATEWAY_MAX_LIMIT = 1024;
+    static final long GATEWAY_SLOW_MILLIS = 5_000;
+    static final long RETRY_BASE_MILLIS = 200;
+    static final long RETRY_MAX_MILLIS = 2_000;
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final long timeoutMillis; // deadline for a payment, across all of its attempts
+    private final int maxRetries;
+    private final SettlementEngine settlement; // null settles card and UPI payments one by one
+    private final Map<PaymentMethod, CircuitBreaker> breakers = new EnumMap<>(PaymentMethod.class);
+    private final Map<PaymentMethod, AdaptiveConcurrencyLimit> limits = new EnumMap<>(PaymentMethod.class);
+    private final List<BiConsumer<PaymentMethod, PaymentStatus>> attemptListeners = new CopyOnWriteArrayList<>();
+    // Gateway calls by paymentId while their payment is being processed. A retry joins a call that
+    // is still running, or takes an approval that arrived too late for its own attempt, rather
+    // than asking the gateway to charge the customer again.
+    private final ConcurrentHashMap<Long, CompletableFuture<Boolean>> gatewayCalls = new ConcurrentHashMap<>();
+
+    private static final EnumMap<PaymentMethod, LatencyHistogram> CREATE_LATENCY =
+            Metrics.DEFAULT.histograms("payment_create_seconds", "method", PaymentMethod.class);
+    private static final EnumMap<PaymentMethod, LatencyHistogram> PAYMENT_LATENCY =
+            Metrics.DEFAULT.histograms("payment_seconds", "method", PaymentMethod.class);
+    private static final EnumMap<PaymentMethod, Counter> SUCCEEDED =
+            Metrics.DEFAULT.counters("payments_succeeded_total", "method", PaymentMethod.class);
+    private static final EnumMap<PaymentMethod, Counter> FAILED =
+            Metrics.DEFAULT.counters("payments_failed_total", "method", PaymentMethod.class);
+    private static final EnumMap<PaymentMethod, Counter> SHED =
+            Metrics.DEFAULT.counters("payments_shed_total", "method", PaymentMethod.class);
+    private static final EnumMap<PaymentMethod, Counter> RETRIES =
+            Metrics.DEFAULT.counters("payment_retries_total", "method", PaymentMethod.class);
+    private static final EnumMap<PaymentMethod, Counter> VOIDED =
+            Metrics.DEFAULT.counters("payment_late_approvals_voided_total", "method", PaymentMethod.class);
+
+    public PaymentProcessor(int poolSize, int maxInFlight, long timeoutMillis, int maxRetries) {
+        this(poolSize, maxInFlight, timeoutMillis, maxRetries, null);
+    }
+
+    // Gateway calls run on a small bounded pool; in-flight payments are capped for backpressure
+    public PaymentProcessor(int poolSize, int maxInFlight, long timeoutMillis, int maxRetries, SettlementEngine settlement) {
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "payment-gateway");
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeoutMillis = timeoutMillis;
+        this.maxRetries = maxRetries;
+        this.settlement = settlement;
+        // Wallet and cash on delivery never leave the process, so only gateway methods are guarded
+        for (PaymentMethod method : new PaymentMethod[] {PaymentMethod.CARD, PaymentMethod.UPI}) {
+            breakers.put(method, new CircuitBreaker(method.toString(), BREAKER_WINDOW, BREAKER_MINIMUM_CALLS,
+                    BREAKER_FAILURE_RATE, BREAKER_OPEN_MILLIS, BREAKER_PROBES));
+            limits.put(method, new AdaptiveConcurrencyLimit(GATEWAY_INITIAL_LIMIT, 1, GATEWAY_MAX_LIMIT, GATEWAY_SLOW_MILLIS));
+        }
+    }
+
+    // False while the method's circuit breaker is open
+    public boolean isAvailable(PaymentMethod method) {
+        CircuitBreaker breaker = breakers.get(method);
+        return breaker == null || breaker.getState() != CircuitState.OPEN;
+    }
+
+    // What to offer instead of an unavailable method
+    public List<PaymentMethod> fallbacksFor(PaymentMethod method) {
+        List<PaymentMethod> fallbacks = new ArrayList<>();
+        for (PaymentMethod candidate : PaymentMethod.values()) {
+            if (candidate != method && isAvailable(candidate)) {
+                fallbacks.add(candidate);
+            }
+        }
+        return fallbacks;
+    }
+
+    // Told the outcome of every attempt that reached the gateway (or the wallet), retries included,
+    // on the thread that completed it
+    public void onAttempt(BiConsumer<PaymentMethod, PaymentStatus> listener) {
+        attemptListeners.add(listener);
+    }
+
+    public CircuitBreaker getBreaker(PaymentMethod method) { return breakers.get(method); }
+
+    // Hears every gateway method's breaker opening and closing
+    public void onBreakerChange(BreakerListener listener) {
+        for (CircuitBreaker breaker : breakers.values()) {
+            breaker.addListener(listener);
+        }
+    }
+    public AdaptiveConcurrencyLimit getLimit(PaymentMethod method) { return limits.get(method); }
+
+    public CompletableFuture<PaymentStatus> submit(Payment payment) {
+        try {
+            inFlight.acquire(); // Block the caller when too many payments are in flight
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            payment.status = PaymentStatus.FAILED;
+            return CompletableFuture.completedFuture(PaymentStatus.FAILED);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long start = Metrics.startTimer();
+        PaymentMethod method = payment.getMethod();
+        return attempt(payment, 0, deadline).whenComplete((status, error) -> {
+            inFlight.release();
+            PAYMENT_LATENCY.get(method).recordSince(start);
+            (status == PaymentStatus.SUCCESS ? SUCCEEDED : status == PaymentStatus.OVERLOADED ? SHED : FAILED).get(method).increment();
+            CompletableFuture<Boolean> call = gatewayCalls.remove(payment.getPaymentId());
+            if (call != null && status != PaymentStatus.SUCCESS) {
+                // The payment has failed for good; a charge the gateway approves after all is voided
+                call.thenAccept(approved -> {
+                    if (approved) {
+                        payment.returnFunds(payment.getAmount());
+                        VOIDED.get(method).increment();
+                    }
+                });
+            }
+        });
+    }
+
+    // The payment's gateway call: the one already running or approved, else a new one
+    private CompletableFuture<Boolean> charge(GatewayPayment payment) {
+        return gatewayCalls.compute(payment.getPaymentId(), (id, call) -> {
+            if (call != null && (!call.isDone() || Boolean.TRUE.equals(call.getNow(false)))) {
+                return call;
+            }
+            return settlement != null ? settlement.submit(payment) : payment.requestApproval(executor);
+        });
+    }
+
+    private CompletableFuture<PaymentStatus> attempt(Payment payment, int retry, long deadline) {
+        AdaptiveConcurrencyLimit limit = limits.get(payment.getMethod());
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return fail(payment);
+        }
+        if (limit == null) {
+            return call(payment, retry, deadline);
+        }
+        // Too many calls waiting on the gateway: wait in line for one of them to finish, and give
+        // up only when the payment's deadline passes first
+        CompletableFuture<Void> permit = limit.acquire();
+        if (permit.isDone()) {
+            return call(payment, retry, deadline);
+        }
+        return permit.orTimeout(remaining, TimeUnit.NANOSECONDS)
+                .handleAsync((granted, error) -> error == null, executor)
+                .thenCompose(granted -> granted ? call(payment, retry, deadline) : shed(payment));
+    }
+
+    // One attempt, holding a permit from the method's limit if it has one
+    private CompletableFuture<PaymentStatus> call(Payment payment, int retry, long deadline) {
+        PaymentMethod method = payment.getMethod();
+        CircuitBreaker breaker = breakers.get(method);
+        AdaptiveConcurrencyLimit limit = limits.get(method);
+        long remaining = deadline - System.nanoTime();
+        // Rejected without touching the gateway: deadline spent while waiting, or breaker open
+        if (remaining <= 0 || (breaker != null && !breaker.tryAcquire())) {
+            if (limit != null) {
+                limit.cancel();
+            }
+            return fail(payment);
+        }
+        long start = System.nanoTime();
+        int token = payment.beginAttempt();
+        CompletableFuture<PaymentStatus> result;
+        if (payment instanceof GatewayPayment) {
+            GatewayPayment gatewayPayment = (GatewayPayment) payment;
+            result = charge(gatewayPayment).thenApply(approved -> gatewayPayment.applySettlement(token, approved));
+        } else {
+            result = payment.processPaymentAsync(executor);
+        }
+        return result
+                .orTimeout(remaining, TimeUnit.NANOSECONDS)
+                .handle((status, error) -> {
+                    if (error != null) {
+                        // Terminal for this attempt: a late decision from the gateway is ignored
+                        status = payment.closeAttempt(token);
+                    }
+                    if (breaker != null) {
+                        limit.release(System.nanoTime() - start, error instanceof TimeoutException);
+                        breaker.record(status == PaymentStatus.SUCCESS);
+                    }
+                    for (BiConsumer<PaymentMethod, PaymentStatus> listener : attemptListeners) {
+                        listener.accept(method, status);
+                    }
+                    return status;
+                })
+                .thenCompose(status -> {
+                    if (status == PaymentStatus.FAILED && retry < maxRetries && breaker != null) {
+                        RETRIES.get(method).increment();
+                        Executor backoff = CompletableFuture.delayedExecutor(retryDelayMillis(retry), TimeUnit.MILLISECONDS, executor);
+                        return CompletableFuture.supplyAsync(() -> null, backoff)
+                                .thenCompose(ignored -> attempt(payment, retry + 1, deadline));
+                    }
+                    return CompletableFuture.completedFuture(status);
+                });
+    }
+
+    // Exponential backoff with full jitter, so retries from many checkouts do not arrive together
+    private static long retryDelayMillis(int retry) {
+        long ceiling = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << retry);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static CompletableFuture<PaymentStatus> fail(Payment payment) {
+        payment.status = PaymentStatus.FAILED;
+        return CompletableFuture.completedFuture(PaymentStatus.FAILED);
+    }
+
+    private static CompletableFuture<PaymentStatus> shed(Payment payment) {
+        payment.status = PaymentStatus.OVERLOADED;
+        return CompletableFuture.completedFuture(PaymentStatus.OVERLOADED);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // Console checkout: prompts for whatever the chosen method needs
+    public static Payment createPayment(PaymentMethod method, long amount, Wallet wallet, Scanner sc) {
+        Map<String, String> details = new HashMap<>();
+        switch (method) {
+            case CARD:
+                System.out.print("Enter card number (16 digits): ");
+                details.put("cardNumber", sc.nextLine());
+                System.out.print("Enter card holder name: ");
+                details.put("cardHolderName", sc.nextLine());
+                break;
+            
+            case UPI:
+                System.out.print("Enter UPI ID: ");
+                details.put("upiId", sc.nextLine());
+                break;
+            
+            default:
+                break;
+        }
+        return createPayment(method, amount, wallet, details);
+    }
+
+    // Details are passed as data: cardNumber and cardHolderName for CARD, upiId for UPI
+    public static Payment createPayment(PaymentMethod method, long amount, Wallet wallet, Map<String, String> details) {
+        long start = Metrics.startTimer();
+        try {
+            return newPayment(method, amount, wallet, details);
+        } finally {
+            CREATE_LATENCY.get(method).recordSince(start);
+        }
+    }
+
+    private static Payment newPayment(PaymentMethod method, long amount, Wallet wallet, Map<String, String> details) {
+        switch (method) {
+            case WALLET:
+                return new WalletPayment(amount, wallet);
+            
+            case CARD:
+                String cardNumber = require(details, "cardNumber");
+                if (cardNumber.length() < 4) {
+                    throw new IllegalArgumentException("cardNumber must have at least 4 digits");
+                }
+                return new CardPayment(amount, cardNumber, require(details, "cardHolderName"));
+            
+            case UPI:
+                return new UPIPayment(amount, require(details, "upiId"));
+            
+            case CASH_ON_DELIVERY:
+                return new CashOnDeliveryPayment(amount);
+            
+            default:
+                return null;
+        }
+    }
+
+    private static String require(Map<String, String> details, String key) {
+        String value = details.get(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(key + " is required");
+        }
+        return value.trim();
+    }
+}
+
+// Original classes with modifications
+class MenuItem {
+    private long id;
+    private String name;
+    private long price; // paisa
+    private String category;
+
+    public MenuItem(String name, double price, String category) {
+        this.id = IdGenerator.DEFAULT.nextId();
+        this.name = name;
+        this.price = Money.ofRupees(price);
+        this.category = category;
+    }
+
+    public long getId() { return id; }
+    public String getName() { return name; }
+    public long getPrice() { return price; }
+    public String getCategory() { return category; }
+
+    @Override
+    public String toString() {
+        return name + " (" + category + ") - Rs. " + Money.format(price);
+    }
+}
+
+class Customer {
+    private String name;
+    private String phone;
+    private String address;
+    private Wallet wallet;
+
+    public Customer(String name, String phone, String address) {
+        this.name = name;
+        this.phone = phone;
+        this.address = address;
+        this.wallet = new Wallet(Money.ofRupees(500)); // Initial wallet balance
+    }
+
+    public Customer(String name, String phone, String address, Wallet wallet) {
+        this.name = name;
+        this.phone = phone;
+        this.address = address;
+        this.wallet = wallet;
+    }
+
+    public String getName() { return name; }
+    public String getPhone() { return phone; }
+    public String getAddress() { return address; }
+    public Wallet getWallet() { return wallet; }
+}
+
+class Restaurant {
+    private long id;
+    private String name;
+    private volatile MenuSnapshot menu = MenuSnapshot.EMPTY;
+    private final MenuSearchIndex searchIndex = new MenuSearchIndex();
+    private volatile List<PricingRule> pricingRules = Collections.emptyList();
+    private volatile PricingPlan pricingPlan = PricingPlan.compile(Collections.emptyList(), MenuSnapshot.EMPTY);
+    private final LongAdder ordersReceived = new LongAdder();
+    // Orders routed here and not yet delivered or cancelled; ids grow with time, so oldest first
+    private final ConcurrentSkipListMap<Long, Order> incoming = new ConcurrentSkipListMap<>();
+
+    public Restaurant(String name) {
+        this.id = IdGenerator.DEFAULT.nextId();
+        this.name = name;
+    }
+
+    // Copy-on-write: readers keep using the snapshot they already hold
+    public synchronized void addMenuItem(MenuItem item) {
+        menu = menu.with(Collections.singletonList(item));
+        searchIndex.add(item);
+    }
+
+    public synchronized void addMenuItems(Collection<MenuItem> items) {
+        menu = menu.with(items);
+        for (MenuItem item : items) {
+            searchIndex.add(item);
+        }
+    }
+
+    public synchronized void setPricingRules(List<? extends PricingRule> rules) {
+        pricingRules = List.copyOf(rules);
+        pricingPlan = PricingPlan.compile(pricingRules, menu);
+    }
+
+    public List<PricingRule> getPricingRules() { return pricingRules; }
+
+    // Compiled against the current menu; recompiled on first use after the menu changes
+    public PricingPlan getPricingPlan() {
+        PricingPlan plan = pricingPlan;
+        if (plan.getMenuVersion() != menu.getVersion()) {
+            synchronized (this) {
+                plan = pricingPlan;
+                if (plan.getMenuVersion() != menu.getVersion()) {
+                    plan = PricingPlan.compile(pricingRules, menu);
+                    pricingPlan = plan;
+                }
+            }
+        }
+        return plan;
+    }
+
+    public SearchResult search(String text, String category, long minPrice, long maxPrice, int limit) {
+        return searchIndex.search(text, category, minPrice, maxPrice, limit);
+    }
+
+    // Items in display order, so getMenu().get(n - 1) is the item shown as number n
+    public List<MenuItem> getMenu() { return menu.getItems(); }
+    public MenuSnapshot getMenuSnapshot() { return menu; }
+    public long getId() { return id; }
+    public String getName() { return name; }
+
+    public void acceptOrder(Order order) {
+        incoming.put(order.getOrderId(), order);
+        ordersReceived.increment();
+    }
+
+    // The order has been delivered or cancelled and leaves the incoming queue
+    public void completeOrder(Order order) {
+        incoming.remove(order.getOrderId());
+    }
+
+    public Collection<Order> getIncomingOrders() { return Collections.unmodifiableCollection(incoming.values()); }
+    public int getIncomingCount() { return incoming.size(); }
+    public long getOrdersReceived() { return ordersReceived.sum(); }
+
+    public void displayMenuByCategory() {
+        OrderRenderer.printMenu(menu);
+    }
+}
+
+// All restaurants in the marketplace. Lookups are lock-free reads of concurrent maps, and a
+// catalog update only swaps that one restaurant's menu snapshot, so other restaurants are unaffected.
+class RestaurantRegistry {
+    private final ConcurrentHashMap<Long, Restaurant> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Restaurant> byName = new ConcurrentHashMap<>();
+
+    public Restaurant register(Restaurant restaurant) {
+        Restaurant existing = byName.putIfAbsent(restaurant.getName().toLowerCase(), restaurant);
+        if (existing != null) {
+            throw new IllegalArgumentException("Restaurant already registered: " + restaurant.getName());
+        }
+        byId.put(restaurant.getId(), restaurant);
+        return restaurant;
+    }
+
+    public Restaurant get(long id) { return byId.get(id); }
+    public Restaurant findByName(String name) { return byName.get(name.toLowerCase()); }
+    public Collection<Restaurant> getRestaurants() { return byId.values(); }
+    public int size() { return byId.size(); }
+
+    public boolean updateMenu(long restaurantId, Collection<MenuItem> items) {
+        Restaurant restaurant = byId.get(restaurantId);
+        if (restaurant == null) {
+            return false;
+        }
+        restaurant.addMenuItems(items);
+        return true;
+    }
+
+    public MenuItem findMenuItem(long restaurantId, long itemId) {
+        Restaurant restaurant = byId.get(restaurantId);
+        return restaurant == null ? null : restaurant.getMenuSnapshot().findById(itemId);
+    }
+
+    // Hands a confirmed order to the restaurant it was placed with
+    public void route(Order order) {
+        Restaurant restaurant = byId.get(order.getRestaurantId());
+        if (restaurant == null) {
+            throw new IllegalStateException("Order " + IdGenerator.format(order.getOrderId()) + " has no registered restaurant");
+        }
+        restaurant.acceptOrder(order);
+    }
+
+    public void complete(Order order) {
+        Restaurant restaurant = byId.get(order.getRestaurantId());
+        if (restaurant != null) {
+            restaurant.completeOrder(order);
+        }
+    }
+}
+
+// Immutable view of a restaurant's catalog. Items are numbered category by category, in the
+// order categories first appeared; the rendered menu text and its bytes are built once per snapshot.
+final class MenuSnapshot {
+    static final MenuSnapshot EMPTY = new MenuSnapshot(0, new LinkedHashMap<>());
+
+    private final long version;
+    private final List<MenuItem> items;
+    private final Map<String, List<MenuItem>> byCategory;
+    private final Map<Long, Integer> numberById;
+    private final Map<String, MenuItem> byName;
+    private volatile String rendered;
+    private volatile byte[] renderedBytes;
+
+    private MenuSnapshot(long version, LinkedHashMap<String, List<MenuItem>> categories) {
+        this.version = version;
+        List<MenuItem> numbered = new ArrayList<>();
+        Map<String, List<MenuItem>> grouped = new LinkedHashMap<>();
+        Map<Long, Integer> ids = new HashMap<>();
+        Map<String, MenuItem> names = new HashMap<>();
+        for (Map.Entry<String, List<MenuItem>> entry : categories.entrySet()) {
+            grouped.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            for (MenuItem item : entry.getValue()) {
+                numbered.add(item);
+                ids.put(item.getId(), numbered.size());
+                names.put(item.getName().toLowerCase(), item);
+            }
+        }
+        this.items = Collections.unmodifiableList(numbered);
+        this.byCategory = Collections.unmodifiableMap(grouped);
+        this.numberById = ids;
+        this.byName = names;
+    }
+
+    MenuSnapshot with(Collection<MenuItem> added) {
+        LinkedHashMap<String, List<MenuItem>> categories = new LinkedHashMap<>();
+        byCategory.forEach((category, list) -> categories.put(category, new ArrayList<>(list)));
+        for (MenuItem item : added) {
+            categories.computeIfAbsent(item.getCategory(), k -> new ArrayList<>()).add(item);
+        }
+        return new MenuSnapshot(version + 1, categories);
+    }
+
+    public long getVersion() { return version; }
+    public List<MenuItem> getItems() { return items; }
+    public Map<String, List<MenuItem>> getCategories() { return byCategory; }
+    public int size() { return items.size(); }
+
+    // 1-based, matching the numbers shown by render()
+    public MenuItem itemAt(int number) { return items.get(number - 1); }
+    public MenuItem findById(long id) {
+        Integer number = numberById.get(id);
+        return number == null ? null : itemAt(number);
+    }
+
+    // Display number of the item in this snapshot, or 0 if it is not on the menu
+    public int numberOf(MenuItem item) {
+        return numberById.getOrDefault(item.getId(), 0);
+    }
+    public MenuItem findByName(String name) { return byName.get(name.toLowerCase()); }
+
+    public String render() {
+        String text = rendered;
+        if (text == null) {
+            StringBuilder sb = new StringBuilder(64 * (items.size() + byCategory.size()));
+            int itemNumber = 1;
+            for (Map.Entry<String, List<MenuItem>> entry : byCategory.entrySet()) {
+                sb.append("\n--- ").append(entry.getKey().toUpperCase()).append(" ---\n");
+                for (MenuItem item : entry.getValue()) {
+                    sb.append(itemNumber++).append(". ").append(item.getName())
+                            .append(" (").append(item.getCategory()).append(") - Rs. ");
+                    Money.appendTo(sb, item.getPrice()).append('\n');
+                }
+            }
+            text = sb.toString();
+            rendered = text;
+        }
+        return text;
+    }
+
+    // render() in the console's charset, also encoded once per snapshot
+    public byte[] renderedBytes() {
+        byte[] bytes = renderedBytes;
+        if (bytes == null) {
+            bytes = render().getBytes(RenderBuffer.CONSOLE_CHARSET);
+            renderedBytes = bytes;
+        }
+        return bytes;
+    }
+}
+
+class OrderItem {
+    private MenuItem menuItem;
+    private int quantity;
+
+    public OrderItem(MenuItem menuItem, int quantity) {
+        this.menuItem = menuItem;
+        this.quantity = quantity;
+    }
+
+    public MenuItem getMenuItem() { return menuItem; }
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public long getSubtotal() {
+        return Money.times(menuItem.getPrice(), quantity);
+    }
+
+    @Override
+    public String toString() {
+        return menuItem.getName() + " x " + quantity + " = Rs. " + Money.format(getSubtotal());
+    }
+}
+
+class Order {
+    private long orderId;
+    private long restaurantId;
+    private Customer customer;
+    // Lines indexed by menu item id, in the order they were added
+    private Map<Long, OrderItem> items = new LinkedHashMap<>();
+    private long subtotal; // running sum of line subtotals, paisa
+    private LocalDateTime orderTime;
+    private static final LatencyHistogram RECEIPT_LATENCY = Metrics.DEFAULT.histogram("receipt_render_seconds");
+    private final CartPricing pricing; // discounts and delivery fee, updated as lines change
+    private long deliveryDistanceMeters;
+    private volatile Payment payment;
+    private volatile OrderStatus status;
+    private volatile Duration estimatedDelivery;
+
+    public Order(Customer customer, Restaurant restaurant) {
+        this.orderId = IdGenerator.DEFAULT.nextId();
+        this.restaurantId = restaurant.getId();
+        this.customer = customer;
+        this.orderTime = LocalDateTime.now();
+        this.status = OrderStatus.PENDING;
+        this.pricing = restaurant.getPricingPlan().newCart();
+    }
+
+    // A parked cart coming back under the order id it was opened with
+    Order(long orderId, Customer customer, Restaurant restaurant) {
+        this(customer, restaurant);
+        this.orderId = orderId;
+    }
+
+    public Customer getCustomer(){
+        return customer;
+    }
+
+    void setCustomer(Customer customer) { this.customer = customer; }
+
+    public long getOrderId() { return orderId; }
+    public long getRestaurantId() { return restaurantId; }
+    public LocalDateTime getOrderTime() { return orderTime; }
+    public Payment getPayment() { return payment; }
+    public OrderStatus getStatus() { return status; }
+    public Collection<OrderItem> getItems() { return Collections.unmodifiableCollection(items.values()); }
+
+    public void addItem(MenuItem menuItem, int quantity) {
+        OrderItem item = items.get(menuItem.getId());
+        if (item != null) {
+            item.setQuantity(item.getQuantity() + quantity);
+        } else {
+            item = new OrderItem(menuItem, quantity);
+            items.put(menuItem.getId(), item);
+        }
+        subtotal += Money.times(menuItem.getPrice(), quantity);
+        pricing.setQuantity(item.getMenuItem(), item.getQuantity());
+    }
+
+    // Sets the quantity of an existing line; zero or less removes it
+    public boolean updateQuantity(MenuItem menuItem, int quantity) {
+        if (quantity <= 0) {
+            return removeItem(menuItem);
+        }
+        OrderItem item = items.get(menuItem.getId());
+        if (item == null) {
+            return false;
+        }
+        subtotal -= item.getSubtotal();
+        item.setQuantity(quantity);
+        subtotal += item.getSubtotal();
+        pricing.setQuantity(item.getMenuItem(), quantity);
+        return true;
+    }
+
+    public boolean removeItem(MenuItem menuItem) {
+        OrderItem item = items.remove(menuItem.getId());
+        if (item == null) {
+            return false;
+        }
+        subtotal -= item.getSubtotal();
+        pricing.setQuantity(item.getMenuItem(), 0);
+        return true;
+    }
+
+    public int getItemCount() { return items.size(); }
+
+    // How many of the item the cart holds, 0 when it has no line for it
+    public int getQuantity(MenuItem menuItem) {
+        OrderItem item = items.get(menuItem.getId());
+        return item == null ? 0 : item.getQuantity();
+    }
+
+    public long calculateSubtotal() {
+        return subtotal;
+    }
+
+    // Everything the restaurant's promotions take off the subtotal
+    public long getDiscount() {
+        return pricing.discount(subtotal);
+    }
+
+    public long getDeliveryCharge() {
+        return pricing.deliveryFee(subtotal - getDiscount(), deliveryDistanceMeters);
+    }
+
+    public long calculateTotal() {
+        long itemsTotal = subtotal - pricing.discount(subtotal);
+        return itemsTotal + pricing.deliveryFee(itemsTotal, deliveryDistanceMeters);
+    }
+
+    // The total to charge at checkout: happy-hour prices stay as they are now until the cart changes
+    public long lockTotal() {
+        pricing.lock();
+        return calculateTotal();
+    }
+
+    // After a failed checkout the cart follows happy hour again
+    public void unlockTotal() {
+        pricing.unlock();
+    }
+
+    public List<AppliedPromotion> getAppliedPromotions() {
+        return pricing.applied(subtotal);
+    }
+
+    // Free delivery applies when the subtotal after discounts is above this
+    public long getFreeDeliveryAbove() {
+        return pricing.getPlan().getDelivery().getFreeAbove();
+    }
+
+    public void applyCoupon(String code) {
+        pricing.applyCoupon(code);
+    }
+
+    public void removeCoupon() {
+        pricing.removeCoupon();
+    }
+
+    public CouponRule getCoupon() { return pricing.getCoupon(); }
+
+    public String getCouponCode() {
+        CouponRule coupon = pricing.getCoupon();
+        return coupon == null ? null : coupon.getCode();
+    }
+
+    public long getDeliveryDistanceMeters() { return deliveryDistanceMeters; }
+
+    public void setDeliveryDistanceMeters(long meters) {
+        if (meters < 0) {
+            throw new IllegalArgumentException("Delivery distance must not be negative");
+        }
+        this.deliveryDistanceMeters = meters;
+    }
+
+    public boolean isEmpty() { return items.isEmpty(); }
+
+    public boolean processPayment(PaymentMethod method, Scanner sc) {
+        Payment payment = PaymentProcessor.createPayment(method, lockTotal(), customer.getWallet(), sc);
+        if (payment != null && payment.processPayment()) {
+            this.payment = payment;
+            transitionTo(OrderStatus.CONFIRMED);
+            return true;
+        }
+        return false;
+    }
+
+    public CompletableFuture<Boolean> processPaymentAsync(PaymentMethod method, Scanner sc, PaymentProcessor processor) {
+        return processPaymentAsync(PaymentProcessor.createPayment(method, lockTotal(), customer.getWallet(), sc), processor);
+    }
+
+    public CompletableFuture<Boolean> processPaymentAsync(Payment payment, PaymentProcessor processor) {
+        if (payment == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return processor.submit(payment).thenApply(status -> {
+            if (status != PaymentStatus.SUCCESS) {
+                return false;
+            }
+            this.payment = payment;
+            transitionTo(OrderStatus.CONFIRMED);
+            return true;
+        });
+    }
+
+    // Moves the order along its lifecycle; returns the status it left
+    public synchronized OrderStatus transitionTo(OrderStatus next) {
+        OrderStatus previous = status;
+        if (!previous.canTransitionTo(next)) {
+            throw new IllegalStateException("Order " + IdGenerator.format(orderId) + " cannot go from " + previous + " to " + next);
+        }
+        status = next;
+        return previous;
+    }
+
+    public Duration getEstimatedDelivery() { return estimatedDelivery; }
+    void setEstimatedDelivery(Duration estimatedDelivery) { this.estimatedDelivery = estimatedDelivery; }
+
+    public void printReceipt() {
+        long start = Metrics.startTimer();
+        OrderRenderer.printReceipt(this);
+        RECEIPT_LATENCY.recordSince(start);
+    }
+
+    public void displayItems() {
+        OrderRenderer.printItems(this);
+    }
+}
+
+enum OrderStatus {
+    PENDING, CONFIRMED, PREPARING, OUT_FOR_DELIVERY, DELIVERED, CANCELLED;
+
+    public boolean canTransitionTo(OrderStatus next) {
+        switch (this) {
+            case PENDING:
+                return next == CONFIRMED || next == CANCELLED;
+            case CONFIRMED:
+                return next == PREPARING || next == CANCELLED;
+            case PREPARING:
+                return next == OUT_FOR_DELIVERY || next == CANCELLED;
+            case OUT_FOR_DELIVERY:
+                return next == DELIVERED;
+            default:
+                return false; // DELIVERED and CANCELLED are final
+        }
+    }
+
+    public boolean isFinal() {
+        return this == DELIVERED || this == CANCELLED;
+    }
+}
+
+public class FoodOrderingSystemWithPayment {
+    // Replayed checkouts waiting on a payment at once, twice what each gateway method starts out allowing
+    static final int REPLAY_IN_FLIGHT = 2 * PaymentProcessor.GATEWAY_INITIAL_LIMIT;
+    private static Scanner sc = new Scanner(System.in);
+    private static SettlementEngine settlementEngine = new SettlementEngine(
+            new StubPaymentGateway(Duration.ofMillis(UPIPayment.GATEWAY_LATENCY_MS), Duration.ofMillis(2)), 64, Duration.ofMillis(50));
+    private static PaymentProcessor paymentProcessor = new PaymentProcessor(4, 1000, 10_000, 2, settlementEngine);
+    private static WalletStore walletStore = new WalletStore(Money.ofRupees(500));
+    private static Ledger ledger = new Ledger();
+    private static DurableStore durableStore;
+    private static RestaurantRegistry restaurants = new RestaurantRegistry();
+    private static OrderingService orderingService;
+    // 4 cooks and 6 riders; checkout turns orders away while 1024 are waiting for the kitchen
+    private static OrderPipeline orderPipeline = new OrderPipeline(new OrderEventBus(),
+            4, Duration.ofMinutes(15), 6, Duration.ofMinutes(20), 1024, 4);
+
+    public static void main(String[] args) {
+        restaurants.register(initializeRestaurant());
+        if (args.length > 2 && args[0].equals("--replay-generate")) {
+            generateReplay(Paths.get(args[1]), Long.parseLong(args[2]), args.length > 3 ? Long.parseLong(args[3]) : 1);
+            return;
+        }
+        boolean replay = args.length > 1 && args[0].equals("--replay");
+        Path dataDir = Paths.get("data");
+        if (replay) {
+            // Replayed orders go to a scratch directory, and the kitchen and riders take no time
+            dataDir = createReplayDirectory();
+            orderPipeline = new OrderPipeline(new OrderEventBus(), 4, Duration.ZERO, 6, Duration.ZERO, 1024, 64);
+        }
+        walletStore.addListener(ledger::recordWalletTransaction);
+        durableStore = dataDir == null ? null : openDurableStore(dataDir);
+        orderPipeline.start();
+        orderingService = new OrderingService(restaurants, walletStore, paymentProcessor, durableStore, orderPipeline, ledger,
+                dataDir == null ? null : openSessionFiles(dataDir));
+        if (durableStore != null) {
+            for (OrderRecord order : durableStore.recoveredState().orders) {
+                orderingService.getAnalytics().record(order, restaurants);
+            }
+        }
+        if (!replay) {
+            initializeStock(); // a replay is about the file's orders, so nothing sells out
+        }
+        registerMetrics();
+        announceOnConsole();
+
+        if (replay) {
+            replay(Paths.get(args[1]), args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors(),
+                    args.length > 3 ? Integer.parseInt(args[3]) : REPLAY_IN_FLIGHT, dataDir);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+
+        Restaurant restaurant = chooseRestaurant();
+        
+        System.out.println("🍽️  Welcome to " + restaurant.getName() + " 🍽️");
+        System.out.println("Your favorite online food ordering system with secure payments!");
+
+        Customer customer = getCustomerDetails();
+        Order order = openCart(customer, restaurant);
+
+        boolean running = true;
+        while (running) {
+            displayMainMenu();
+            int choice = getValidChoice(1, 7);
+
+            switch (choice) {
+                case 1:
+                    viewMenu(restaurant);
+                    break;
+                case 2:
+                    addItemToOrder(restaurant, order);
+                    break;
+                case 3:
+                    viewCart(order);
+                    break;
+                case 4:
+                    manageWallet(customer.getWallet());
+                    break;
+                case 5:
+                    placeOrder(order);
+                    running = false;
+                    break;
+                case 6:
+                    searchMenu(restaurant);
+                    break;
+                case 7:
+                    System.out.println("Thank you for visiting! 👋");
+                    running = false;
+                    break;
+            }
+        }
+        
+        orderPipeline.stop();
+        paymentProcessor.shutdown();
+        settlementEngine.shutdown();
+        orderingService.shutdown();
+        orderingService.closeSessions();
+        closeDurableStore();
+        sc.close();
+    }
+
+    // Headless mode: the HTTP API replaces the console loop until the process is stopped
+    private static void serve(int port) {
+        try {
+            OrderingHttpServer server = new OrderingHttpServer(orderingService, port, 64);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                orderPipeline.stop();
+                paymentProcessor.shutdown();
+                settlementEngine.shutdown();
+                orderingService.shutdown();
+                orderingService.closeSessions();
+                closeDurableStore();
+            }));
+            server.start();
+            System.out.println("Ordering API listening on port " + port);
+        } catch (IOException e) {
+            System.out.println("❌ Could not start the ordering API: " + e.getMessage());
+        }
+    }
+
+    // Batch mode: orders from the file go through checkout on `threads` workers with up to inFlight
+    // payments outstanding, then a summary is printed. Breaker changes and expired holds would be
+    // announced as they are at the console, so the console is silenced meanwhile.
+    private static void replay(Path file, int threads, int inFlight, Path dataDir) {
+        PrintStream console = System.out;
+        console.println("Replaying " + file + " on " + threads + " threads...");
+        ReplaySummary summary = null;
+        try {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            summary = new OrderReplay(orderingService, restaurants, threads, inFlight).run(file);
+        } catch (IOException | RuntimeException e) {
+            console.println("❌ Could not replay " + file + ": " + e.getMessage());
+        } finally {
+            System.setOut(console);
+        }
+        orderPipeline.stop();
+        paymentProcessor.shutdown();
+        settlementEngine.shutdown();
+        orderingService.shutdown();
+        orderingService.closeSessions();
+        closeDurableStore();
+        deleteReplayDirectory(dataDir);
+        if (summary != null) {
+            summary.print(console);
+        }
+    }
+
+    private static void generateReplay(Path file, long count, long seed) {
+        try {
+            OrderReplay.generate(file, restaurants.getRestaurants(), count, seed);
+            System.out.println("Wrote " + count + " orders to " + file);
+        } catch (IOException e) {
+            System.out.println("❌ Could not write " + file + ": " + e.getMessage());
+        }
+    }
+
+    // null when no scratch directory could be made; the replay then runs without persistence
+    private static Path createReplayDirectory() {
+        try {
+            return Files.createTempDirectory("foodorder-replay");
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not create a replay directory, continuing without persistence: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void deleteReplayDirectory(Path dataDir) {
+        if (dataDir == null) return;
+        try (Stream<Path> paths = Files.walk(dataDir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not remove " + dataDir + ": " + e.getMessage());
+        }
+    }
+
+    // Gauges over state owned by the components wired together here
+    private static void registerMetrics() {
+        Metrics metrics = Metrics.DEFAULT;
+        for (PaymentMethod method : new PaymentMethod[] {PaymentMethod.CARD, PaymentMethod.UPI}) {
+            CircuitBreaker breaker = paymentProcessor.getBreaker(method);
+            AdaptiveConcurrencyLimit limit = paymentProcessor.getLimit(method);
+            metrics.gauge(Metrics.key("payment_breaker_state", "method", method.name()), () -> breaker.getState().ordinal());
+            metrics.gauge(Metrics.key("payment_breaker_failure_rate", "method", method.name()), breaker::getFailureRate);
+            metrics.gauge(Metrics.key("payment_concurrency_limit", "method", method.name()), limit::getLimit);
+            metrics.gauge(Metrics.key("payment_in_flight", "method", method.name()), limit::getInFlight);
+        }
+        metrics.gauge("settlement_batches", settlementEngine::getBatches);
+        metrics.gauge("settlement_average_batch_size", settlementEngine::getAverageBatchSize);
+        metrics.gauge("ledger_entries", ledger::size);
+        metrics.gauge("wallets", walletStore::size);
+        metrics.gauge("sessions", orderingService.getSessions()::size);
+        metrics.gauge("open_carts", orderingService.getSessions()::getOpenCarts);
+        Inventory inventory = orderingService.getInventory();
+        metrics.gauge("stock_reservations_held", inventory::getHeld);
+        for (Restaurant restaurant : restaurants.getRestaurants()) {
+            for (MenuItem item : restaurant.getMenu()) {
+                if (inventory.isTracked(item)) {
+                    metrics.gauge(Metrics.key("stock_available", "item", item.getName()), () -> inventory.getAvailable(item));
+                }
+            }
+        }
+        LiveStats live = orderingService.getLiveStats();
+        for (int minutes : LiveStats.WINDOWS) {
+            metrics.gauge(Metrics.key("live_orders_per_minute", "window", minutes + "m"),
+                    () -> live.window(minutes, 0).getOrdersPerMinute());
+        }
+        for (PaymentMethod method : PaymentMethod.values()) {
+            metrics.gauge(Metrics.key("live_payment_failure_rate_5m", "method", method.name()),
+                    () -> live.window(5, 0).getFailureRate(method));
+        }
+        for (OrderStage stage : new OrderStage[] {orderPipeline.getKitchen(), orderPipeline.getDispatch()}) {
+            metrics.gauge(Metrics.key("order_stage_depth", "stage", stage.getName()), stage::getDepth);
+        }
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            System.out.println("⚠️  Metrics are not available over JMX: " + e.getMessage());
+        }
+    }
+
+    // Resilience events the services only count and pass on; the console is where they are printed
+    private static void announceOnConsole() {
+        paymentProcessor.onBreakerChange((method, state) -> System.out.println(state == CircuitState.OPEN
+                ? "⚠️  " + method + " payments are failing; pausing them for "
+                        + PaymentProcessor.BREAKER_OPEN_MILLIS / 1000 + " seconds."
+                : "✅ " + method + " payments are available again."));
+        orderingService.getInventory().onHoldExpired(orderId -> System.out.println(
+                "⚠️  Stock held for order " + IdGenerator.format(orderId) + " was released after its hold expired"));
+        // Only the kind of error: its message may carry a file name made from a phone number
+        orderingService.getSessions().onFailure((failure, error) -> System.out.println(failure == SessionFailure.SAVE
+                ? "⚠️  A customer session could not be saved and stays in memory (" + error.getClass().getSimpleName() + ")"
+                : "⚠️  A saved customer session could not be read (" + error.getClass().getSimpleName() + ")"));
+    }
+
+    private static DurableStore openDurableStore(Path dataDir) {
+        try {
+            DurableStore store = DurableStore.open(dataDir);
+            PersistedState state = store.recoveredState();
+            state.walletBalances.forEach((phone, balance) -> {
+                walletStore.restore(phone, balance);
+                if (balance > 0) {
+                    ledger.post(LedgerEntryType.OPENING_BALANCE, 0, Ledger.OPENING_BALANCES, Ledger.walletAccount(phone), balance);
+                }
+            });
+            IdGenerator.DEFAULT.advancePast(state.lastOrderId);
+            walletStore.addListener(store::walletTransaction);
+            store.scheduleCheckpoints(5, TimeUnit.MINUTES);
+            return store;
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not open order storage, continuing without persistence: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Customers who have not been seen for a while are kept on disk next to the order log
+    private static FileSessionStore openSessionFiles(Path dataDir) {
+        try {
+            return FileSessionStore.open(dataDir);
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not open session storage, keeping sessions in memory: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeDurableStore() {
+        if (durableStore == null) return;
+        try {
+            durableStore.checkpoint();
+            durableStore.close();
+        } catch (IOException e) {
+            System.out.println("⚠️  Could not save order storage: " + e.getMessage());
+        }
+    }
+
+    private static Restaurant initializeRestaurant() {
+        Restaurant restaurant = new Restaurant("Tasty Bites");
+        
+        restaurant.addMenuItem(new MenuItem("Chicken Momo", 150, "Appetizers"));
+        restaurant.addMenuItem(new MenuItem("Veg Momo", 120, "Appetizers"));
+        restaurant.addMenuItem(new MenuItem("Chicken Chowmein", 140, "Main Course"));
+        restaurant.addMenuItem(new MenuItem("Veg Chowmein", 110, "Main Course"));
+        restaurant.addMenuItem(new MenuItem("Chicken Burger", 180, "Fast Food"));
+        restaurant.addMenuItem(new MenuItem("Veg Burger", 150, "Fast Food"));
+        restaurant.addMenuItem(new MenuItem("Margherita Pizza", 280, "Pizza"));
+        restaurant.addMenuItem(new MenuItem("Chicken Pizza", 350, "Pizza"));
+        restaurant.addMenuItem(new MenuItem("Coke", 60, "Beverages"));
+        restaurant.addMenuItem(new MenuItem("Lassi", 80, "Beverages"));
+
+        restaurant.setPricingRules(List.of(
+                PricingRule.categoryDiscount("10% off Beverages", "Beverages", 10),
+                PricingRule.combo("Burger & Coke combo", Money.ofRupees(30), "Chicken Burger", "Coke"),
+                PricingRule.happyHour("Happy hour: 20% off Pizza", "Pizza", 20, LocalTime.of(15, 0), LocalTime.of(18, 0)),
+                PricingRule.coupon("WELCOME50", 0, Money.ofRupees(50), Money.ofRupees(300), 0),
+                PricingRule.coupon("FEAST10", 10, 0, Money.ofRupees(800), Money.ofRupees(150)),
+                PricingRule.deliveryFee(Money.ofRupees(50), Money.ofRupees(10), 3, Money.ofRupees(500))));
+        return restaurant;
+    }
+
+    // Dishes made in batches each morning; everything else is unlimited. Counts start afresh each run.
+    private static void initializeStock() {
+        Inventory inventory = orderingService.getInventory();
+        Map<String, Integer> batches = Map.of("Chicken Momo", 200, "Veg Momo", 150, "Margherita Pizza", 40,
+                "Chicken Pizza", 40, "Lassi", 100);
+        for (Restaurant restaurant : restaurants.getRestaurants()) {
+            for (MenuItem item : restaurant.getMenu()) {
+                Integer units = batches.get(item.getName());
+                if (units != null) {
+                    inventory.setStock(item, units);
+                }
+            }
+        }
+        inventory.onRestock((item, units, available) ->
+                System.out.println("📦 " + item.getName() + " restocked with " + units + ", " + available + " available"));
+    }
+
+    private static Restaurant chooseRestaurant() {
+        List<Restaurant> available = new ArrayList<>(restaurants.getRestaurants());
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        available.sort(Comparator.comparing(Restaurant::getName));
+        System.out.println("\n--- Restaurants ---");
+        for (int i = 0; i < available.size(); i++) {
+            System.out.println((i + 1) + ". " + available.get(i).getName());
+        }
+        System.out.print("Choose a restaurant: ");
+        return available.get(getValidChoice(1, available.size()) - 1);
+    }
+
+    private static Customer getCustomerDetails() {
+        System.out.println("\n--- Customer Registration ---");
+        System.out.print("Enter your name: ");
+        String name = sc.nextLine();
+        System.out.print("Enter your phone number: ");
+        String phone = sc.nextLine();
+        System.out.print("Enter your delivery address: ");
+        String address = sc.nextLine();
+        
+        boolean returning = walletStore.contains(phone);
+        Customer customer = orderingService.signIn(name, phone, address).getCustomer();
+        if (returning) {
+            System.out.println("🎉 Welcome back " + name + "! Your wallet balance is Rs. " + Money.format(customer.getWallet().getBalance()));
+        } else {
+            System.out.println("🎉 Welcome " + name + "! You get Rs. 500 in your wallet as a welcome bonus!");
+        }
+        
+        return customer;
+    }
+
+    // Offers the cart a returning customer left open here before starting a new one
+    private static Order openCart(Customer customer, Restaurant restaurant) {
+        Order cart = orderingService.openCart(restaurant.getId(), customer.getName(), customer.getPhone(), customer.getAddress());
+        if (cart.isEmpty()) {
+            return cart;
+        }
+        System.out.println("🛒 You left " + cart.getItemCount() + " item(s) in your cart last time (Rs. "
+                + Money.format(cart.calculateTotal()) + ").");
+        System.out.print("Continue with that cart? (y/n): ");
+        if (sc.nextLine().trim().equalsIgnoreCase("n")) {
+            orderingService.discardCart(cart.getOrderId());
+            cart = orderingService.openCart(restaurant.getId(), customer.getName(), customer.getPhone(), customer.getAddress());
+        }
+        return cart;
+    }
+
+    private static void displayMainMenu() {
+        System.out.println("\n--- MAIN MENU ---");
+        System.out.println("1. 🍽️  View Menu");
+        System.out.println("2. 🛒 Add Item to Cart");
+        System.out.println("3. 👀 View Cart");
+        System.out.println("4. 💰 Manage Wallet");
+        System.out.println("5. 🚀 Place Order & Pay");
+        System.out.println("6. 🔍 Search Menu");
+        System.out.println("7. 🚪 Exit");
+        System.out.print("Enter your choice: ");
+    }
+
+    private static void viewMenu(Restaurant restaurant) {
+        System.out.println("\n🍽️  MENU  🍽️");
+        restaurant.displayMenuByCategory();
+    }
+
+    private static void searchMenu(Restaurant restaurant) {
+        System.out.print("\nSearch for a dish or category: ");
+        String text = sc.nextLine();
+        MenuSnapshot menu = restaurant.getMenuSnapshot();
+        SearchResult result = restaurant.search(text, null, 0, Long.MAX_VALUE, 20);
+
+        if (result.getTotalHits() == 0) {
+            System.out.println("No items found for \"" + text + "\".");
+            return;
+        }
+        System.out.println("\n🔍 " + result.getTotalHits() + " item(s) found");
+        for (MenuItem item : result.getItems()) {
+            System.out.println(menu.numberOf(item) + ". " + item);
+        }
+        System.out.print("By category:");
+        result.getCategoryCounts().forEach((category, count) -> System.out.print(" " + category + " (" + count + ")"));
+        System.out.println("\nUse 'Add Item to Cart' with the item number to order.");
+    }
+
+    private static void addItemToOrder(Restaurant restaurant, Order order) {
+        MenuSnapshot menu = restaurant.getMenuSnapshot();
+        System.out.println("\n🍽️  MENU  🍽️");
+        OrderRenderer.printMenu(menu);
+        
+        System.out.print("\nEnter item number to add to cart (0 to go back): ");
+        int choice = getValidChoice(0, menu.size());
+        
+        if (choice == 0) return;
+        
+        System.out.print("Enter quantity: ");
+        int quantity = getValidQuantity();
+        
+        MenuItem item = menu.itemAt(choice);
+        try {
+            orderingService.getInventory().checkAvailable(item, order.getQuantity(item) + quantity);
+        } catch (IllegalStateException e) {
+            System.out.println("❌ " + e.getMessage());
+            return;
+        }
+        order.addItem(item, quantity);
+        System.out.println("✅ " + item.getName() + " x " + quantity + " added to cart!");
+    }
+
+    private static void viewCart(Order order) {
+        if (order.isEmpty()) {
+            System.out.println("🛒 Your cart is empty!");
+            return;
+        }
+        OrderRenderer.printCart(order);
+    }
+
+    private static void manageWallet(Wallet wallet) {
+        System.out.println("\n💰 WALLET MANAGEMENT");
+        System.out.println("Current Balance: Rs. " + Money.format(wallet.getBalance()));
+        System.out.println("1. Add Money");
+        System.out.println("2. Transaction History");
+        System.out.println("3. Back to Main Menu");
+        System.out.print("Choose option: ");
+        
+        int choice = getValidChoice(1, 3);
+        
+        switch (choice) {
+            case 1:
+                System.out.print("Enter amount to add: Rs. ");
+                long amount = Money.ofRupees(getValidAmount());
+                wallet.addBalance(amount);
+                System.out.println("✅ Rs. " + Money.format(amount) + " added to wallet successfully!");
+                break;
+            case 2:
+                wallet.showTransactionHistory();
+                break;
+            case 3:
+                return;
+        }
+    }
+
+    private static void placeOrder(Order order) {
+        if (order.isEmpty()) {
+            System.out.println("🛒 Your cart is empty! Add some items first.");
+            return;
+        }
+    
+        viewCart(order);
+        askForCoupon(order);
+        System.out.println("\n💳 SELECT PAYMENT METHOD");
+        System.out.println("1. 💰 Wallet (Balance: Rs. " + Money.format(order.getCustomer().getWallet().getBalance()) + ")"); // Updated line
+        System.out.println("2. 💳 Credit/Debit Card");
+        System.out.println("3. 📱 UPI Payment");
+        System.out.println("4. 💵 Cash on Delivery");
+        System.out.print("Choose payment method: ");
+    
+        PaymentMethod method = PaymentMethod.values()[getValidChoice(1, 4) - 1];
+        while (!paymentProcessor.isAvailable(method)) {
+            System.out.println("⚠️  " + method + " payments are temporarily unavailable. Try: " + paymentProcessor.fallbacksFor(method));
+            System.out.print("Choose payment method: ");
+            method = PaymentMethod.values()[getValidChoice(1, 4) - 1];
+        }
+    
+        Payment payment;
+        try {
+            payment = PaymentProcessor.createPayment(method, order.lockTotal(), order.getCustomer().getWallet(), sc);
+        } catch (IllegalArgumentException e) {
+            System.out.println("❌ " + e.getMessage());
+            return;
+        }
+
+        System.out.println("\nProcessing your order...");
+        CompletableFuture<Boolean> checkout;
+        try {
+            checkout = orderingService.checkout(order, payment);
+        } catch (IllegalStateException e) {
+            System.out.println("❌ " + e.getMessage());
+            return;
+        }
+        boolean confirmed;
+        try {
+            confirmed = checkout.join();
+        } catch (CompletionException e) {
+            System.out.println("❌ " + e.getCause().getMessage());
+            return;
+        }
+        printPaymentOutcome(payment);
+        if (confirmed) {
+            order.printReceipt();
+        } else {
+            System.out.println("❌ Order failed! Please try again with a different payment method.");
+        }
+    }
+
+    // The payment classes only record their outcome; it is told to the customer here
+    private static void printPaymentOutcome(Payment payment) {
+        boolean paid = payment.getStatus() == PaymentStatus.SUCCESS;
+        if (payment instanceof WalletPayment) {
+            Wallet wallet = ((WalletPayment) payment).getWallet();
+            if (paid) {
+                System.out.println("✅ Payment successful via Wallet!");
+                System.out.println("Remaining wallet balance: Rs. " + Money.format(wallet.getBalance()));
+            } else {
+                System.out.println("❌ Payment failed! Insufficient wallet balance.");
+                System.out.println("Your balance: Rs. " + Money.format(wallet.getBalance()) + " | Required: Rs. " + Money.format(payment.getAmount()));
+            }
+        } else if (payment instanceof CardPayment) {
+            if (paid) {
+                System.out.println("✅ Card payment successful!");
+                System.out.println("Card ending with: ****" + ((CardPayment) payment).getLastFourDigits());
+            } else {
+                System.out.println("❌ Card payment failed! Please try again.");
+            }
+        } else if (payment instanceof UPIPayment) {
+            if (paid) {
+                System.out.println("✅ UPI payment successful!");
+                System.out.println("UPI ID: " + ((UPIPayment) payment).getUpiId());
+            } else {
+                System.out.println("❌ UPI payment failed! Please try again.");
+            }
+        } else if (paid) {
+            System.out.println("✅ Cash on Delivery selected!");
+            System.out.println("💰 Please keep Rs. " + Money.format(payment.getAmount()) + " ready for delivery.");
+        }
+    }
+
+    private static void askForCoupon(Order order) {
+        while (true) {
+            System.out.print("\n🎟️  Coupon code (press Enter to skip): ");
+            String code = sc.nextLine().trim();
+            if (code.isEmpty()) {
+                return;
+            }
+            long before = order.calculateTotal();
+            try {
+                order.applyCoupon(code);
+            } catch (IllegalArgumentException e) {
+                System.out.println("❌ " + e.getMessage());
+                continue;
+            }
+            if (order.calculateTotal() < before) {
+                System.out.println("✅ Coupon " + order.getCouponCode() + " applied. New total: Rs. " + Money.format(order.calculateTotal()));
+            } else {
+                System.out.println("ℹ️  Coupon " + order.getCouponCode() + " needs items worth Rs. "
+                        + Money.format(order.getCoupon().getMinSubtotal()) + " after other discounts; it will apply once you reach that.");
+            }
+            return;
+        }
+    }
+
+    private static int getValidChoice(int min, int max) {
+        while (true) {
+            try {
+                int choice = sc.nextInt();
+                sc.nextLine();
+                if (choice >= min && choice <= max) {
+                    return choice;
+                }
+                System.out.print("Invalid choice. Enter between " + min + " and " + max + ": ");
+            } catch (InputMismatchException e) {
+                System.out.print("Please enter a valid number: ");
+                sc.nextLine();
+            }
+        }
+    }
+
+    private static int getValidQuantity() {
+        while (true) {
+            try {
+                int quantity = sc.nextInt();
+                sc.nextLine();
+                if (quantity > 0) return quantity;
+                System.out.print("Quantity must be greater than 0: ");
+            } catch (InputMismatchException e) {
+                System.out.print("Please enter a valid quantity: ");
+                sc.nextLine();
+            }
+        }
+    }
+
+    private static double getValidAmount() {
+        while (true) {
+            try {
+                double amount = sc.nextDouble();
+                sc.nextLine();
+                if (amount > 0) return amount;
+                System.out.print("Amount must be greater than 0: ");
+            } catch (InputMismatchException e) {
+                System.out.print("Please enter a valid amount: ");
+                sc.nextLine();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+// Deduplication of retried requests
+//
+// Clients send an idempotency key with a request that must not run twice, such as a checkout.
+// The first request with a key stores its result here; repeats within the time-to-live get that
+// same result back instead of running again. Lookups and inserts go straight to a
+// ConcurrentHashMap, so requests with different keys never contend on a shared lock.
+//
+// Keys are also appended to a FIFO queue as they are inserted. Every entry lives for the same
+// time-to-live, so the head of that queue is always the next entry to expire; inserts trim it
+// past expired entries and down to the capacity.
+
+package foodordering;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class IdempotencyCache<V> {
+    private static final class Entry<V> {
+        final String key;
+        final V value;
+        final long expiresAtNanos;
+
+        Entry(String key, V value, long expiresAtNanos) {
+            this.key = key;
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry<V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final long ttlNanos;
+
+    IdempotencyCache(int capacity, Duration ttl) {
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    // Stores value unless the key is already live; returns the stored value in that case, else null
+    public V putIfAbsent(String key, V value) {
+        long now = System.nanoTime();
+        Entry<V> candidate = new Entry<>(key, value, now + ttlNanos);
+        while (true) {
+            Entry<V> existing = entries.putIfAbsent(key, candidate);
+            if (existing == null) {
+                insertionOrder.add(candidate);
+                size.incrementAndGet();
+                evict(now);
+                return null;
+            }
+            if (!existing.isExpired(now)) {
+                return existing.value;
+            }
+            // An expired entry the trimming has not reached yet; take its place
+            if (entries.remove(key, existing)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    public V get(String key) {
+        Entry<V> entry = entries.get(key);
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.value;
+    }
+
+    // Forgets a key, but only while it still maps to value
+    public boolean remove(String key, V value) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.value == value && entries.remove(key, entry)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private void evict(long now) {
+        Entry<V> head;
+        while ((head = insertionOrder.peek()) != null && (head.isExpired(now) || size.get() > capacity)) {
+            if (insertionOrder.remove(head) && entries.remove(head.key, head)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+// Stock of menu items, reserved at checkout
+//
+// Items have unlimited stock until a count is set for them. A checkout reserves every line of the
+// cart before the payment starts, or none of them; the reservation is committed when the payment
+// succeeds and released when it fails. Held reservations are kept in a concurrent set that a
+// background sweep goes through a few times per hold time, releasing any held for longer, e.g.
+// because their payment never finished.
+//
+// A popular item is taken from by every checkout at once, so its count is not one number but a
+// StockCounter: the units are spread over striped cells, each on its own cache line, and a thread
+// takes from the cell its thread id maps to with a compare-and-set that never lets a cell go
+// below zero. Only when no single cell holds enough does a taker lock the counter, gather every
+// cell and spread what is left again. Units are never oversold, and while stock is plentiful
+// checkouts of the same item rarely touch the same cell.
+
+package foodordering;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Units of one item, striped over cells so concurrent takers do not contend
+class StockCounter {
+    static final int DEFAULT_STRIPES = 64;
+    // Cells are 16 longs (128 bytes) apart so no two share a cache line
+    private static final int PAD = 16;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    StockCounter(long units) {
+        this(units, DEFAULT_STRIPES);
+    }
+
+    // stripes is rounded up to a power of two
+    StockCounter(long units, int stripes) {
+        if (units < 0) {
+            throw new IllegalArgumentException("Stock must not be negative");
+        }
+        int count = Integer.highestOneBit(Math.max(1, Math.min(stripes, 1 << 10)) * 2 - 1);
+        cells = new AtomicLongArray(count * PAD);
+        mask = count - 1;
+        spread(units);
+    }
+
+    // Takes quantity units, or none when fewer are left
+    public boolean tryTake(int quantity) {
+        int home = home();
+        for (int i = 0; i <= mask; i++) {
+            int cell = ((home + i) & mask) * PAD;
+            long units = cells.get(cell);
+            while (units >= quantity) {
+                if (cells.compareAndSet(cell, units, units - quantity)) {
+                    return true;
+                }
+                units = cells.get(cell);
+            }
+        }
+        return takeGathered(quantity);
+    }
+
+    // Units coming back, e.g. from a released reservation
+    public void put(long units) {
+        cells.getAndAdd(home() * PAD, units);
+    }
+
+    // New units, spread evenly so the next takers find them wherever they look first
+    public synchronized void restock(long units) {
+        spread(units);
+    }
+
+    // Replaces the count; units reserved meanwhile are not affected
+    public synchronized void set(long units) {
+        if (units < 0) {
+            throw new IllegalArgumentException("Stock must not be negative");
+        }
+        gather();
+        spread(units);
+    }
+
+    // Exact when nothing is being taken or put at the same time
+    public long available() {
+        long units = 0;
+        for (int i = 0; i <= mask; i++) {
+            units += cells.get(i * PAD);
+        }
+        return units;
+    }
+
+    public int getStripes() { return mask + 1; }
+
+    // No cell had enough on its own; collects all of them, takes from the total and spreads the rest
+    private synchronized boolean takeGathered(int quantity) {
+        long units = gather();
+        boolean taken = units >= quantity;
+        spread(taken ? units - quantity : units);
+        return taken;
+    }
+
+    private long gather() {
+        long units = 0;
+        for (int i = 0; i <= mask; i++) {
+            units += cells.getAndSet(i * PAD, 0);
+        }
+        return units;
+    }
+
+    private void spread(long units) {
+        int count = mask + 1;
+        for (int i = 0; i < count; i++) {
+            cells.getAndAdd(i * PAD, units / count + (i < units % count ? 1 : 0));
+        }
+    }
+
+    private int home() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
+
+interface RestockListener {
+    void onRestock(MenuItem item, long units, long available);
+}
+
+interface HoldExpiryListener {
+    // The order's payment never finished within the hold time, so its units went back on sale
+    void onHoldExpired(long orderId);
+}
+
+// Units of a cart's items held for it while it is paid for. It ends exactly once: committed,
+// released, or expired and released by the inventory's sweep.
+class StockReservation {
+    static final StockReservation NONE = new StockReservation(0, new StockCounter[0], new int[0], 0, null);
+
+    private static final int HELD = 0;
+    private static final int COMMITTED = 1;
+    private static final int RELEASED = 2;
+    private static final Counter COMMITS = Metrics.DEFAULT.counter(Metrics.key("stock_reservations_total", "result", "committed"));
+    private static final Counter RELEASES = Metrics.DEFAULT.counter(Metrics.key("stock_reservations_total", "result", "released"));
+    private static final Counter EXPIRIES = Metrics.DEFAULT.counter(Metrics.key("stock_reservations_total", "result", "expired"));
+    private static final Counter OVERSOLD = Metrics.DEFAULT.counter("stock_oversold_units_total");
+
+    private final long orderId;
+    private final StockCounter[] counters;
+    private final int[] quantities;
+    private final long expiresAtNanos;
+    private final Set<StockReservation> held; // removed from it when it ends
+    private final AtomicInteger state = new AtomicInteger(HELD);
+    private volatile boolean expired;
+
+    StockReservation(long orderId, StockCounter[] counters, int[] quantities, long expiresAtNanos,
+                     Set<StockReservation> held) {
+        this.orderId = orderId;
+        this.counters = counters;
+        this.quantities = quantities;
+        this.expiresAtNanos = expiresAtNanos;
+        this.held = held;
+    }
+
+    public long getOrderId() { return orderId; }
+    public boolean isHeld() { return state.get() == HELD; }
+
+    // The payment went through: the units are sold. If the reservation had already expired they
+    // are taken again, and any that are gone by now are counted as oversold.
+    public void commit() {
+        if (counters.length == 0) return;
+        if (state.compareAndSet(HELD, COMMITTED)) {
+            held.remove(this);
+            COMMITS.increment();
+        } else if (expired && state.compareAndSet(RELEASED, COMMITTED)) {
+            for (int i = 0; i < counters.length; i++) {
+                if (!counters[i].tryTake(quantities[i])) {
+                    OVERSOLD.add(quantities[i]);
+                }
+            }
+            COMMITS.increment();
+        }
+    }
+
+    public void release() {
+        if (counters.length == 0) return;
+        if (state.compareAndSet(HELD, RELEASED)) {
+            held.remove(this);
+            putBack();
+            RELEASES.increment();
+        }
+    }
+
+    // Releases the units if the hold time is up and the reservation has not ended yet; true if
+    // this call released them
+    boolean expireIfDue(long nowNanos) {
+        if (nowNanos - expiresAtNanos < 0 || state.get() != HELD) return false;
+        // Set first, so a commit racing with the release below knows to take the units again
+        expired = true;
+        if (state.compareAndSet(HELD, RELEASED)) {
+            held.remove(this);
+            putBack();
+            EXPIRIES.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void putBack() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i].put(quantities[i]);
+        }
+    }
+}
+
+class Inventory {
+    private static final Counter SOLD_OUT = Metrics.DEFAULT.counter("stock_sold_out_total");
+    private static final Counter RESTOCKED = Metrics.DEFAULT.counter("stock_restocked_units_total");
+
+    // Sweeps per hold time, so a reservation is released at most an eighth of it late
+    static final int SWEEPS_PER_HOLD = 8;
+
+    private final Duration hold;
+    private final int stripes;
+    // Stocked items by menu item id; absent items are unlimited
+    private final ConcurrentHashMap<Long, StockCounter> stock = new ConcurrentHashMap<>();
+    private final Set<StockReservation> held = ConcurrentHashMap.newKeySet();
+    private final List<RestockListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<HoldExpiryListener> expiryListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService sweeper;
+
+    Inventory(Duration hold) {
+        this(hold, StockCounter.DEFAULT_STRIPES);
+    }
+
+    // Reservations are released if still held `hold` after they were made; each item's units are
+    // spread over `stripes` cells
+    Inventory(Duration hold, int stripes) {
+        this.hold = hold;
+        this.stripes = stripes;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "stock-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, hold.toMillis() / SWEEPS_PER_HOLD);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void setStock(MenuItem item, long units) {
+        StockCounter counter = stock.putIfAbsent(item.getId(), new StockCounter(units, stripes));
+        if (counter != null) {
+            counter.set(units);
+        }
+    }
+
+    // Back to unlimited
+    public void clearStock(MenuItem item) {
+        stock.remove(item.getId());
+    }
+
+    public boolean isTracked(MenuItem item) {
+        return stock.containsKey(item.getId());
+    }
+
+    // Units left, Long.MAX_VALUE for an untracked item
+    public long getAvailable(MenuItem item) {
+        StockCounter counter = stock.get(item.getId());
+        return counter == null ? Long.MAX_VALUE : counter.available();
+    }
+
+    public void restock(MenuItem item, long units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException("Restock quantity must be greater than 0");
+        }
+        StockCounter counter = stock.get(item.getId());
+        if (counter == null) {
+            throw new IllegalStateException(item.getName() + " has no stock count; set one first");
+        }
+        counter.restock(units);
+        RESTOCKED.add(units);
+        long available = counter.available();
+        for (RestockListener listener : listeners) {
+            listener.onRestock(item, units, available);
+        }
+    }
+
+    public void onRestock(RestockListener listener) {
+        listeners.add(listener);
+    }
+
+    public void onHoldExpired(HoldExpiryListener listener) {
+        expiryListeners.add(listener);
+    }
+
+    // Takes every stocked line of the cart or, when one is short, none; called under the cart's lock
+    public StockReservation reserve(Order order) {
+        StockCounter[] counters = new StockCounter[order.getItemCount()];
+        int[] quantities = new int[counters.length];
+        int taken = 0;
+        for (OrderItem line : order.getItems()) {
+            StockCounter counter = stock.get(line.getMenuItem().getId());
+            if (counter == null) continue;
+            if (!counter.tryTake(line.getQuantity())) {
+                for (int i = 0; i < taken; i++) {
+                    counters[i].put(quantities[i]);
+                }
+                SOLD_OUT.increment();
+                throw new IllegalStateException(shortage(line.getMenuItem(), counter.available()));
+            }
+            counters[taken] = counter;
+            quantities[taken++] = line.getQuantity();
+        }
+        if (taken == 0) {
+            return StockReservation.NONE;
+        }
+        StockReservation reservation = new StockReservation(order.getOrderId(), Arrays.copyOf(counters, taken),
+                Arrays.copyOf(quantities, taken), System.nanoTime() + hold.toNanos(), held);
+        held.add(reservation);
+        return reservation;
+    }
+
+    // Throws when the cart would hold more of the item than is left; nothing is reserved yet
+    public void checkAvailable(MenuItem item, int quantity) {
+        long available = getAvailable(item);
+        if (quantity > available) {
+            throw new IllegalStateException(shortage(item, available));
+        }
+    }
+
+    public Duration getHold() { return hold; }
+    public int getHeld() { return held.size(); }
+
+    public void shutdown() {
+        sweeper.shutdown();
+    }
+
+    private void sweep() {
+        long now = System.nanoTime();
+        for (StockReservation reservation : held) {
+            if (reservation.expireIfDue(now)) {
+                for (HoldExpiryListener listener : expiryListeners) {
+                    listener.onHoldExpired(reservation.getOrderId());
+                }
+            }
+        }
+    }
+
+    private static String shortage(MenuItem item, long available) {
+        return available <= 0 ? item.getName() + " is sold out" : "Only " + available + " " + item.getName() + " left";
+    }
+}
@@ -0,0 +1,235 @@
+// Double-entry ledger of every money movement
+//
+// Each entry moves an amount from one account (debit) to another (credit), so the balances of
+// all accounts always sum to zero. Accounts are plain names:
+//
+//   wallet:<phone>         money a customer holds in their wallet
+//   settlement:<method>    money collected or returned through a card, UPI or cash
+//   revenue:sales          order payments, less refunds
+//   promotions:welcome     welcome bonuses given to new wallets
+//   external:top-up        money customers added to their wallets
+//   equity:opening         wallet balances recovered from storage at startup
+//
+// Entries are append-only and stored column-wise in fixed-size chunks of primitive arrays, so
+// appending never copies earlier entries and a reconciliation pass is a linear scan over
+// arrays. Every account also keeps a running balance, so reading it is O(1).
+
+package foodordering;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+enum LedgerEntryType {
+    OPENING_BALANCE, WELCOME_BONUS, TOP_UP, PAYMENT, REFUND
+}
+
+class LedgerReconciliation {
+    private final long entries;
+    private final int accounts;
+    private final List<String> mismatchedAccounts;
+    private final long imbalance;
+    private final long nanos;
+
+    LedgerReconciliation(long entries, int accounts, List<String> mismatchedAccounts, long imbalance, long nanos) {
+        this.entries = entries;
+        this.accounts = accounts;
+        this.mismatchedAccounts = mismatchedAccounts;
+        this.imbalance = imbalance;
+        this.nanos = nanos;
+    }
+
+    // Running balances match the entries and debits equal credits
+    public boolean isBalanced() { return mismatchedAccounts.isEmpty() && imbalance == 0; }
+    public long getEntries() { return entries; }
+    public int getAccounts() { return accounts; }
+    // Accounts whose running balance differs from the sum of their entries
+    public List<String> getMismatchedAccounts() { return mismatchedAccounts; }
+    // Sum of all account balances; zero unless an entry was lost or corrupted
+    public long getImbalance() { return imbalance; }
+    public long getNanos() { return nanos; }
+}
+
+class Ledger {
+    static final String SALES = "revenue:sales";
+    static final String WELCOME_BONUSES = "promotions:welcome";
+    static final String TOP_UPS = "external:top-up";
+    static final String OPENING_BALANCES = "equity:opening";
+
+    private static final LedgerEntryType[] TYPES = LedgerEntryType.values();
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final class Chunk {
+        final byte[] types = new byte[CHUNK_SIZE];
+        final int[] debits = new int[CHUNK_SIZE];
+        final int[] credits = new int[CHUNK_SIZE];
+        final long[] amounts = new long[CHUNK_SIZE];
+        final long[] references = new long[CHUNK_SIZE];
+    }
+
+    private static final class Account {
+        final int id;
+        final String name;
+        final AtomicLong balance = new AtomicLong();
+
+        Account(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Account> accountsByName = new ConcurrentHashMap<>();
+    // Guarded by this; entries below size are never modified again
+    private Account[] accounts = new Account[64];
+    private int accountCount;
+    private Chunk[] chunks = new Chunk[16];
+    private long size;
+
+    static String walletAccount(String phone) {
+        return "wallet:" + phone;
+    }
+
+    static String settlementAccount(PaymentMethod method) {
+        return "settlement:" + method;
+    }
+
+    // Appends one entry moving amount from debit to credit; returns its position in the ledger.
+    // reference ties the entry to an order or payment id, or 0 when there is none.
+    public long post(LedgerEntryType type, long reference, String debit, String credit, long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Ledger amounts must be positive");
+        }
+        if (debit.equals(credit)) {
+            throw new IllegalArgumentException("An entry needs two different accounts");
+        }
+        Account from = account(debit);
+        Account to = account(credit);
+        synchronized (this) {
+            long index = size;
+            int chunkIndex = (int) (index >>> CHUNK_BITS);
+            int slot = (int) index & CHUNK_MASK;
+            if (slot == 0) {
+                if (chunkIndex == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, chunks.length * 2);
+                }
+                chunks[chunkIndex] = new Chunk();
+            }
+            Chunk chunk = chunks[chunkIndex];
+            chunk.types[slot] = (byte) type.ordinal();
+            chunk.debits[slot] = from.id;
+            chunk.credits[slot] = to.id;
+            chunk.amounts[slot] = amount;
+            chunk.references[slot] = reference;
+            size = index + 1;
+            from.balance.addAndGet(-amount);
+            to.balance.addAndGet(amount);
+            return index;
+        }
+    }
+
+    // Credits minus debits; lock-free
+    public long balanceOf(String account) {
+        Account a = accountsByName.get(account);
+        return a == null ? 0 : a.balance.get();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public LedgerEntryType typeAt(long index) {
+        return TYPES[chunkAt(index).types[(int) index & CHUNK_MASK]];
+    }
+
+    public long referenceAt(long index) {
+        return chunkAt(index).references[(int) index & CHUNK_MASK];
+    }
+
+    public long amountAt(long index) {
+        return chunkAt(index).amounts[(int) index & CHUNK_MASK];
+    }
+
+    // Recomputes every balance from the entries and compares it with the running totals.
+    // Only the snapshot of sizes and balances is taken under the lock; the scan runs without it,
+    // so postings carry on while a reconciliation is in progress.
+    public LedgerReconciliation reconcile() {
+        long start = System.nanoTime();
+        Chunk[] chunkSnapshot;
+        Account[] accountSnapshot;
+        long entries;
+        int accountTotal;
+        long[] expected;
+        synchronized (this) {
+            chunkSnapshot = chunks;
+            accountSnapshot = accounts;
+            entries = size;
+            accountTotal = accountCount;
+            expected = new long[accountTotal];
+            for (int i = 0; i < accountTotal; i++) {
+                expected[i] = accountSnapshot[i].balance.get();
+            }
+        }
+        long[] computed = new long[accountTotal];
+        for (int c = 0; (long) c << CHUNK_BITS < entries; c++) {
+            Chunk chunk = chunkSnapshot[c];
+            int count = (int) Math.min(CHUNK_SIZE, entries - ((long) c << CHUNK_BITS));
+            int[] debits = chunk.debits;
+            int[] credits = chunk.credits;
+            long[] amounts = chunk.amounts;
+            for (int i = 0; i < count; i++) {
+                computed[debits[i]] -= amounts[i];
+                computed[credits[i]] += amounts[i];
+            }
+        }
+        List<String> mismatched = new ArrayList<>();
+        long imbalance = 0;
+        for (int i = 0; i < accountTotal; i++) {
+            imbalance += computed[i];
+            if (computed[i] != expected[i]) {
+                mismatched.add(accountSnapshot[i].name);
+            }
+        }
+        return new LedgerReconciliation(entries, accountTotal, mismatched, imbalance, System.nanoTime() - start);
+    }
+
+    // Fed from WalletStore. Wallet payments and refunds are posted with their order instead.
+    public void recordWalletTransaction(String phone, WalletTransactionType type, long amount, long balance) {
+        if (amount <= 0) return;
+        switch (type) {
+            case INITIAL:
+                post(LedgerEntryType.WELCOME_BONUS, 0, WELCOME_BONUSES, walletAccount(phone), amount);
+                break;
+            case ADDED:
+                post(LedgerEntryType.TOP_UP, 0, TOP_UPS, walletAccount(phone), amount);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized Chunk chunkAt(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No ledger entry " + index);
+        }
+        return chunks[(int) (index >>> CHUNK_BITS)];
+    }
+
+    private Account account(String name) {
+        Account existing = accountsByName.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        synchronized (this) {
+            return accountsByName.computeIfAbsent(name, n -> {
+                if (accountCount == accounts.length) {
+                    accounts = Arrays.copyOf(accounts, accounts.length * 2);
+                }
+                Account account = new Account(accountCount, n);
+                accounts[accountCount++] = account;
+                return account;
+            });
+        }
+    }
+}
@@ -0,0 +1,282 @@
+// Live order and payment numbers over the last few minutes
+//
+// Time is cut into one-minute tumbling buckets kept in a ring of 60, and a bucket is reused for
+// the minute an hour after its own, so memory stays the same however busy it gets. A sliding
+// window of n minutes adds up the newest n buckets, the current and partly filled one included.
+//
+// A bucket counts confirmed orders and the amount charged for them, and payment attempts and
+// failures per method. Items sold go into two sketches of fixed size: a Count-Min sketch, whose
+// estimate of an item's quantity is never too low and almost always within about 0.3% of all
+// items sold in the bucket, and a Space-Saving list of the items most likely to be the heaviest.
+// A window's best sellers are the Space-Saving candidates of its buckets, ranked by their
+// quantities in the sum of its Count-Min sketches.
+
+package foodordering;
+
+import java.time.Clock;
+import java.util.*;
+
+// An item's estimated quantity sold over a window
+class TrendingItem {
+    private final String name;
+    private final long quantity;
+
+    TrendingItem(String name, long quantity) {
+        this.name = name;
+        this.quantity = quantity;
+    }
+
+    public String getName() { return name; }
+    public long getQuantity() { return quantity; }
+}
+
+// Totals over the last `minutes` minutes
+class LiveWindow {
+    private final int minutes;
+    private final long spanMillis;
+    private final long orders;
+    private final long amount;
+    private final long[] attempts;
+    private final long[] failures;
+    private final List<TrendingItem> topItems;
+
+    LiveWindow(int minutes, long spanMillis, long orders, long amount, long[] attempts, long[] failures,
+               List<TrendingItem> topItems) {
+        this.minutes = minutes;
+        this.spanMillis = spanMillis;
+        this.orders = orders;
+        this.amount = amount;
+        this.attempts = attempts;
+        this.failures = failures;
+        this.topItems = topItems;
+    }
+
+    public int getMinutes() { return minutes; }
+    public long getOrders() { return orders; }
+    public long getAmount() { return amount; }
+    public List<TrendingItem> getTopItems() { return topItems; }
+    public long getAttempts(PaymentMethod method) { return attempts[method.ordinal()]; }
+    public long getFailures(PaymentMethod method) { return failures[method.ordinal()]; }
+
+    // Over the time the window has actually covered, which is shorter just after startup
+    public double getOrdersPerMinute() {
+        return orders * 60_000.0 / spanMillis;
+    }
+
+    // Average amount charged per order, in paisa
+    public long getAverageBasket() {
+        return orders == 0 ? 0 : amount / orders;
+    }
+
+    public double getFailureRate(PaymentMethod method) {
+        long count = attempts[method.ordinal()];
+        return count == 0 ? 0 : (double) failures[method.ordinal()] / count;
+    }
+}
+
+class LiveStats {
+    static final int MAX_MINUTES = 60;
+    static final int[] WINDOWS = {5, 15, 60};
+    static final int SKETCH_DEPTH = 4;
+    static final int SKETCH_WIDTH_BITS = 10;
+    static final int SKETCH_WIDTH = 1 << SKETCH_WIDTH_BITS;
+    static final int HEAVY_HITTERS = 64; // Space-Saving entries per bucket
+    private static final PaymentMethod[] METHODS = PaymentMethod.values();
+    private static final long MINUTE_MILLIS = 60_000;
+
+    // Space-Saving over weighted items: a new item takes the place of the lightest one and starts
+    // from its count, so an item heavier than 1/capacity of the total is always kept
+    private static final class SpaceSaving {
+        final String[] names;
+        final long[] counts;
+        final HashMap<String, Integer> slots;
+        int size;
+
+        SpaceSaving(int capacity) {
+            names = new String[capacity];
+            counts = new long[capacity];
+            slots = new HashMap<>(capacity * 2);
+        }
+
+        void add(String name, long weight) {
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                if (size < names.length) {
+                    slot = size++;
+                } else {
+                    slot = 0;
+                    for (int i = 1; i < size; i++) {
+                        if (counts[i] < counts[slot]) slot = i;
+                    }
+                    slots.remove(names[slot]);
+                }
+                names[slot] = name;
+                slots.put(name, slot);
+            }
+            counts[slot] += weight;
+        }
+
+        void clear() {
+            Arrays.fill(names, 0, size, null);
+            Arrays.fill(counts, 0, size, 0);
+            slots.clear();
+            size = 0;
+        }
+    }
+
+    // One minute of traffic; guarded by itself
+    private static final class Bucket {
+        long minute = Long.MIN_VALUE;
+        long orders;
+        long amount;
+        final long[] attempts = new long[METHODS.length];
+        final long[] failures = new long[METHODS.length];
+        final int[] sketch = new int[SKETCH_DEPTH * SKETCH_WIDTH];
+        final SpaceSaving heavyHitters = new SpaceSaving(HEAVY_HITTERS);
+
+        // Called with the lock held before touching the bucket
+        void roll(long now) {
+            if (minute == now) return;
+            minute = now;
+            orders = 0;
+            amount = 0;
+            Arrays.fill(attempts, 0);
+            Arrays.fill(failures, 0);
+            Arrays.fill(sketch, 0);
+            heavyHitters.clear();
+        }
+    }
+
+    private final Clock clock;
+    private final long startMillis;
+    private final Bucket[] buckets = new Bucket[MAX_MINUTES];
+
+    LiveStats() {
+        this(Clock.systemUTC());
+    }
+
+    LiveStats(Clock clock) {
+        this.clock = clock;
+        this.startMillis = clock.millis();
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    // A confirmed order: its amount charged and the quantity of each item
+    public void recordOrder(Order order) {
+        Collection<OrderItem> items = order.getItems();
+        String[] names = new String[items.size()];
+        int[] quantities = new int[names.length];
+        int i = 0;
+        for (OrderItem item : items) {
+            names[i] = item.getMenuItem().getName();
+            quantities[i++] = item.getQuantity();
+        }
+        recordOrder(order.getPayment().getAmount(), names, quantities);
+    }
+
+    void recordOrder(long amount, String[] itemNames, int[] quantities) {
+        int[] cells = new int[itemNames.length * SKETCH_DEPTH];
+        for (int i = 0; i < itemNames.length; i++) {
+            cells(itemNames[i], cells, i * SKETCH_DEPTH);
+        }
+        long now = clock.millis() / MINUTE_MILLIS;
+        Bucket bucket = bucketFor(now);
+        synchronized (bucket) {
+            bucket.roll(now);
+            bucket.orders++;
+            bucket.amount += amount;
+            for (int i = 0; i < itemNames.length; i++) {
+                for (int row = 0; row < SKETCH_DEPTH; row++) {
+                    bucket.sketch[cells[i * SKETCH_DEPTH + row]] += quantities[i];
+                }
+                bucket.heavyHitters.add(itemNames[i], quantities[i]);
+            }
+        }
+    }
+
+    // One payment attempt; anything but SUCCESS counts as a failure
+    public void recordPayment(PaymentMethod method, PaymentStatus status) {
+        long now = clock.millis() / MINUTE_MILLIS;
+        Bucket bucket = bucketFor(now);
+        synchronized (bucket) {
+            bucket.roll(now);
+            bucket.attempts[method.ordinal()]++;
+            if (status != PaymentStatus.SUCCESS) {
+                bucket.failures[method.ordinal()]++;
+            }
+        }
+    }
+
+    // Totals over the last `minutes` minutes with up to topLimit best sellers; 0 skips the sketches
+    public LiveWindow window(int minutes, int topLimit) {
+        if (minutes < 1 || minutes > MAX_MINUTES) {
+            throw new IllegalArgumentException("Window must be 1 to " + MAX_MINUTES + " minutes");
+        }
+        long nowMillis = clock.millis();
+        long now = nowMillis / MINUTE_MILLIS;
+        long orders = 0;
+        long amount = 0;
+        long[] attempts = new long[METHODS.length];
+        long[] failures = new long[METHODS.length];
+        long[] sketch = topLimit > 0 ? new long[SKETCH_DEPTH * SKETCH_WIDTH] : null;
+        Set<String> candidates = new HashSet<>();
+        for (long minute = now - minutes + 1; minute <= now; minute++) {
+            Bucket bucket = bucketFor(minute);
+            synchronized (bucket) {
+                if (bucket.minute != minute) continue; // nothing happened that minute
+                orders += bucket.orders;
+                amount += bucket.amount;
+                for (int m = 0; m < METHODS.length; m++) {
+                    attempts[m] += bucket.attempts[m];
+                    failures[m] += bucket.failures[m];
+                }
+                if (sketch != null) {
+                    int[] cells = bucket.sketch;
+                    for (int c = 0; c < cells.length; c++) sketch[c] += cells[c];
+                    candidates.addAll(Arrays.asList(bucket.heavyHitters.names).subList(0, bucket.heavyHitters.size));
+                }
+            }
+        }
+        long covered = (minutes - 1) * MINUTE_MILLIS + nowMillis % MINUTE_MILLIS;
+        long span = Math.max(MINUTE_MILLIS, Math.min(covered, nowMillis - startMillis));
+        return new LiveWindow(minutes, span, orders, amount, attempts, failures,
+                sketch == null ? Collections.emptyList() : topItems(sketch, candidates, topLimit));
+    }
+
+    private static List<TrendingItem> topItems(long[] sketch, Set<String> candidates, int limit) {
+        List<TrendingItem> items = new ArrayList<>(candidates.size());
+        int[] cells = new int[SKETCH_DEPTH];
+        for (String name : candidates) {
+            cells(name, cells, 0);
+            long estimate = Long.MAX_VALUE;
+            for (int cell : cells) estimate = Math.min(estimate, sketch[cell]);
+            items.add(new TrendingItem(name, estimate));
+        }
+        items.sort(Comparator.comparingLong(TrendingItem::getQuantity).reversed().thenComparing(TrendingItem::getName));
+        return items.size() > limit ? new ArrayList<>(items.subList(0, limit)) : items;
+    }
+
+    // The sketch cell of the name in each row, from two hashes combined as h1 + row * h2
+    private static void cells(String name, int[] out, int offset) {
+        int h1 = mix(name.hashCode());
+        int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            out[offset + row] = (row << SKETCH_WIDTH_BITS) + ((h1 + row * h2) >>> (32 - SKETCH_WIDTH_BITS));
+        }
+    }
+
+    // MurmurHash3's finaliser
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        return h ^ (h >>> 16);
+    }
+
+    private Bucket bucketFor(long minute) {
+        return buckets[(int) Math.floorMod(minute, (long) MAX_MINUTES)];
+    }
+}
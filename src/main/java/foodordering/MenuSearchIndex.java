@@ -0,0 +1,358 @@
+// Menu search
+//
+// An in-memory inverted index over menu item names and categories. Every indexed item gets a dense
+// document number; each term maps to a posting list of those numbers kept in a plain int array.
+// Prefix queries walk a sorted term dictionary, and typos (one insertion, deletion or substitution)
+// are matched through a dictionary of single-character deletions of every indexed term.
+// Items are indexed as they are added, so there is no rebuild step. Each term's posting list also
+// keeps its hits per category, so a one-term query without a price range takes its facets from
+// there and only reads as many documents as it returns. Terms found in a large share of the
+// catalog, and every category, also keep a bitset of their documents: words that all match such
+// terms are intersected and counted per category 64 documents at a time.
+
+package foodordering;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+class SearchResult {
+    private final List<MenuItem> items;
+    private final Map<String, Integer> categoryCounts;
+    private final int totalHits;
+
+    SearchResult(List<MenuItem> items, Map<String, Integer> categoryCounts, int totalHits) {
+        this.items = items;
+        this.categoryCounts = categoryCounts;
+        this.totalHits = totalHits;
+    }
+
+    // At most the requested limit, in catalog order
+    public List<MenuItem> getItems() { return items; }
+    // Hits per category across all matches, before the category filter and limit are applied
+    public Map<String, Integer> getCategoryCounts() { return categoryCounts; }
+    public int getTotalHits() { return totalHits; }
+}
+
+class MenuSearchIndex {
+    static final int MIN_FUZZY_TERM_LENGTH = 4;
+    // A term gets a bitset once it is in this many items and at least 1/DENSE_SHARE of the catalog
+    static final int DENSE_MIN_DOCS = 1024;
+    static final int DENSE_SHARE = 32;
+
+    private static final class PostingList {
+        int[] docs = new int[4];
+        int size;
+        int[] categoryCounts = new int[0]; // by category id; null for unions and intersections
+        long[] bits; // for dense terms only, see DENSE_SHARE
+
+        void add(int doc, int category, int docCount) {
+            if (size > 0 && docs[size - 1] == doc) return; // term repeated within one item
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+            if (category >= categoryCounts.length) categoryCounts = Arrays.copyOf(categoryCounts, category + 1);
+            categoryCounts[category]++;
+            if (bits != null) {
+                bits = setBit(bits, doc);
+            } else if (size >= DENSE_MIN_DOCS && (long) size * DENSE_SHARE >= docCount) {
+                bits = new long[(doc >> 6) + 1];
+                for (int i = 0; i < size; i++) {
+                    bits[docs[i] >> 6] |= 1L << docs[i];
+                }
+            }
+        }
+
+        static PostingList derived(int capacity) {
+            PostingList list = new PostingList();
+            list.docs = new int[Math.max(capacity, 1)];
+            list.categoryCounts = null;
+            return list;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<String, PostingList> terms = new TreeMap<>();
+    private final Map<String, List<String>> deletions = new HashMap<>();
+    private final Map<String, Integer> categoryIds = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private MenuItem[] docs = new MenuItem[16];
+    private long[] prices = new long[16];
+    private int[] categories = new int[16];
+    private int[] categoryTotals = new int[0]; // every item, for a query without words
+    private final List<long[]> categoryBits = new ArrayList<>();
+    private int docCount;
+
+    public void add(MenuItem item) {
+        lock.writeLock().lock();
+        try {
+            int doc = docCount++;
+            if (doc == docs.length) {
+                docs = Arrays.copyOf(docs, doc * 2);
+                prices = Arrays.copyOf(prices, doc * 2);
+                categories = Arrays.copyOf(categories, doc * 2);
+            }
+            docs[doc] = item;
+            prices[doc] = item.getPrice();
+            int category = categoryIds.computeIfAbsent(item.getCategory(), c -> {
+                categoryNames.add(c);
+                return categoryNames.size() - 1;
+            });
+            categories[doc] = category;
+            if (category >= categoryTotals.length) {
+                categoryTotals = Arrays.copyOf(categoryTotals, category + 1);
+                categoryBits.add(new long[0]);
+            }
+            categoryTotals[category]++;
+            categoryBits.set(category, setBit(categoryBits.get(category), doc));
+            for (String term : tokenize(item.getName() + " " + item.getCategory())) {
+                PostingList postings = terms.get(term);
+                if (postings == null) {
+                    postings = new PostingList();
+                    terms.put(term, postings);
+                    if (term.length() >= MIN_FUZZY_TERM_LENGTH) {
+                        for (String variant : deletionsOf(term)) {
+                            deletions.computeIfAbsent(variant, v -> new ArrayList<>(1)).add(term);
+                        }
+                    }
+                }
+                postings.add(doc, category, docCount);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public SearchResult search(String text, int limit) {
+        return search(text, null, 0, Long.MAX_VALUE, limit);
+    }
+
+    // Every query word must match: exactly, as a prefix, or failing both, within one typo.
+    // category may be null; prices are inclusive paisa bounds.
+    public SearchResult search(String text, String category, long minPrice, long maxPrice, int limit) {
+        List<String> words = tokenize(text);
+        lock.readLock().lock();
+        try {
+            int categoryFilter = -1;
+            if (category != null) {
+                Integer id = categoryIds.get(category);
+                if (id == null) {
+                    return new SearchResult(Collections.emptyList(), Collections.emptyMap(), 0);
+                }
+                categoryFilter = id;
+            }
+            // Intersect rarest word first so later steps only probe a short candidate list
+            PostingList matches = null;
+            List<PostingList> perWord = new ArrayList<>(words.size());
+            for (String word : words) {
+                perWord.add(matchWord(word));
+            }
+            boolean anyPrice = minPrice <= 0 && maxPrice == Long.MAX_VALUE;
+            if (anyPrice && perWord.size() > 1 && allDense(perWord)) {
+                return searchDense(perWord, categoryFilter, limit);
+            }
+            perWord.sort(Comparator.comparingInt(p -> p.size));
+            for (PostingList wordMatches : perWord) {
+                matches = matches == null ? wordMatches : intersect(matches, wordMatches);
+            }
+            int[] facetCounts = new int[categoryNames.size()];
+            List<MenuItem> items = new ArrayList<>(Math.min(limit, 64));
+            int hits = 0;
+            int end = matches == null ? docCount : matches.size;
+            int[] counted = matches == null ? categoryTotals : matches.categoryCounts;
+            if (counted != null && anyPrice) {
+                // Every match counts, so the facets are already known and only the returned items are read
+                System.arraycopy(counted, 0, facetCounts, 0, counted.length);
+                hits = categoryFilter < 0 ? end : facetCounts[categoryFilter];
+                for (int i = 0; i < end && items.size() < limit; i++) {
+                    int doc = matches == null ? i : matches.docs[i];
+                    if (categoryFilter < 0 || categories[doc] == categoryFilter) items.add(docs[doc]);
+                }
+            } else {
+                for (int i = 0; i < end; i++) {
+                    int doc = matches == null ? i : matches.docs[i];
+                    if (prices[doc] < minPrice || prices[doc] > maxPrice) continue;
+                    facetCounts[categories[doc]]++;
+                    if (categoryFilter >= 0 && categories[doc] != categoryFilter) continue;
+                    hits++;
+                    if (items.size() < limit) items.add(docs[doc]);
+                }
+            }
+            return new SearchResult(items, facets(facetCounts), hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean allDense(List<PostingList> lists) {
+        for (PostingList list : lists) {
+            if (list.bits == null) return false;
+        }
+        return true;
+    }
+
+    // Caller holds the read lock. Words past the end of a bitset are all zero.
+    private SearchResult searchDense(List<PostingList> perWord, int categoryFilter, int limit) {
+        long[][] wordBits = new long[perWord.size()][];
+        for (int i = 0; i < wordBits.length; i++) {
+            wordBits[i] = perWord.get(i).bits;
+        }
+        long[][] inCategory = categoryBits.toArray(new long[0][]);
+        int[] facetCounts = new int[inCategory.length];
+        List<MenuItem> items = new ArrayList<>(Math.min(limit, 64));
+        int hits = 0;
+        int words = (docCount + 63) >> 6;
+        for (int w = 0; w < words; w++) {
+            long matched = -1L;
+            for (long[] bits : wordBits) {
+                matched &= w < bits.length ? bits[w] : 0;
+            }
+            if (matched == 0) continue;
+            for (int c = 0; c < inCategory.length; c++) {
+                if (w < inCategory[c].length) facetCounts[c] += Long.bitCount(matched & inCategory[c][w]);
+            }
+            if (categoryFilter >= 0) {
+                matched &= w < inCategory[categoryFilter].length ? inCategory[categoryFilter][w] : 0;
+            }
+            hits += Long.bitCount(matched);
+            for (long rest = matched; rest != 0 && items.size() < limit; rest &= rest - 1) {
+                items.add(docs[(w << 6) + Long.numberOfTrailingZeros(rest)]);
+            }
+        }
+        return new SearchResult(items, facets(facetCounts), hits);
+    }
+
+    private Map<String, Integer> facets(int[] facetCounts) {
+        Map<String, Integer> facets = new LinkedHashMap<>();
+        for (int i = 0; i < facetCounts.length; i++) {
+            if (facetCounts[i] > 0) facets.put(categoryNames.get(i), facetCounts[i]);
+        }
+        return facets;
+    }
+
+    private static long[] setBit(long[] bits, int doc) {
+        int word = doc >> 6;
+        if (word >= bits.length) bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length * 2));
+        bits[word] |= 1L << doc;
+        return bits;
+    }
+
+    // Posting lists are only read here; a single matching term is returned as-is without copying
+    private PostingList matchWord(String word) {
+        List<PostingList> lists = new ArrayList<>(
+                terms.subMap(word, true, word + Character.MAX_VALUE, false).values());
+        if (lists.isEmpty() && word.length() >= MIN_FUZZY_TERM_LENGTH) {
+            for (String candidate : fuzzyCandidates(word)) {
+                lists.add(terms.get(candidate));
+            }
+        }
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        int total = 0;
+        for (PostingList list : lists) {
+            total += list.size;
+        }
+        PostingList union = PostingList.derived(total);
+        for (PostingList list : lists) {
+            System.arraycopy(list.docs, 0, union.docs, union.size, list.size);
+            union.size += list.size;
+        }
+        Arrays.sort(union.docs, 0, union.size);
+        int unique = 0;
+        for (int i = 0; i < union.size; i++) {
+            if (unique == 0 || union.docs[unique - 1] != union.docs[i]) {
+                union.docs[unique++] = union.docs[i];
+            }
+        }
+        union.size = unique;
+        return union;
+    }
+
+    // Linear merge for lists of similar length, otherwise gallops through the longer one
+    private static PostingList intersect(PostingList small, PostingList large) {
+        PostingList out = PostingList.derived(small.size);
+        if (large.size / 8 <= small.size) {
+            int i = 0;
+            int j = 0;
+            while (i < small.size && j < large.size) {
+                int a = small.docs[i];
+                int b = large.docs[j];
+                if (a == b) {
+                    out.docs[out.size++] = a;
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return out;
+        }
+        int from = 0;
+        for (int i = 0; i < small.size && from < large.size; i++) {
+            int doc = small.docs[i];
+            int step = 1;
+            int hi = from;
+            while (hi < large.size && large.docs[hi] < doc) {
+                from = hi + 1;
+                hi += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(large.docs, from, Math.min(hi + 1, large.size), doc);
+            if (found >= 0) {
+                out.docs[out.size++] = doc;
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return out;
+    }
+
+    // Terms within one edit: they share the word itself or one of its single-character deletions
+    private Set<String> fuzzyCandidates(String word) {
+        Set<String> candidates = new HashSet<>();
+        if (terms.containsKey(word)) candidates.add(word);
+        List<String> viaWord = deletions.get(word);
+        if (viaWord != null) candidates.addAll(viaWord);
+        for (String variant : deletionsOf(word)) {
+            if (terms.containsKey(variant)) candidates.add(variant);
+            List<String> shared = deletions.get(variant);
+            if (shared != null) candidates.addAll(shared);
+        }
+        return candidates;
+    }
+
+    private static List<String> deletionsOf(String term) {
+        List<String> variants = new ArrayList<>(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            variants.add(term.substring(0, i) + term.substring(i + 1));
+        }
+        return variants;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
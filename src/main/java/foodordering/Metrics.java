@@ -0,0 +1,306 @@
+// Built-in metrics
+//
+// Counters are LongAdders and latencies go into LatencyHistograms; neither takes a lock when
+// recording. Call sites look their metrics up once and keep them in fields, so the hot path
+// never touches the registry maps or builds metric names.
+//
+// Everything registered in Metrics.DEFAULT is rendered in the Prometheus text format by
+// GET /metrics and published over JMX as foodorder:type=Metrics. Running with
+// -Dfoodorder.metrics=false turns every timer and counter into a no-op, which is how the
+// instrumented and uninstrumented costs are compared.
+
+package foodordering;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        if (Metrics.ENABLED) count.increment();
+    }
+
+    public void add(long amount) {
+        if (Metrics.ENABLED) count.add(amount);
+    }
+
+    public long get() { return count.sum(); }
+}
+
+// Log-linear buckets in the style of HdrHistogram: values below 32 ns get a bucket each, and every
+// power of two above that is split into 32 equal sub-buckets, so a reported percentile is within
+// about 3% of the true value across the whole range of a long.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void recordSince(long startNanos) {
+        if (Metrics.ENABLED) record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        if (!Metrics.ENABLED) return;
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        totalNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // Largest value that falls into the bucket
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    public long getTotalNanos() { return totalNanos.sum(); }
+    public long getMaxNanos() { return maxNanos.get(); }
+
+    // quantile between 0 and 1; 0 when nothing has been recorded
+    public long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+}
+
+class Metrics {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("foodorder.metrics", "true"));
+    static final Metrics DEFAULT = new Metrics();
+
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Keys are metric names with optional Prometheus labels, e.g. payments_total{method="CARD"}
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+
+    // Returns 0 when metrics are off so callers skip the clock read too
+    static long startTimer() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public Counter counter(String key) {
+        return counters.computeIfAbsent(key, k -> new Counter());
+    }
+
+    public LatencyHistogram histogram(String key) {
+        return histograms.computeIfAbsent(key, k -> new LatencyHistogram());
+    }
+
+    // Replaces any gauge registered under the same key
+    public void gauge(String key, DoubleSupplier value) {
+        gauges.put(key, value);
+    }
+
+    // One histogram per enum constant, labelled label="CONSTANT"
+    public <E extends Enum<E>> EnumMap<E, LatencyHistogram> histograms(String name, String label, Class<E> type) {
+        EnumMap<E, LatencyHistogram> byConstant = new EnumMap<>(type);
+        for (E constant : type.getEnumConstants()) {
+            byConstant.put(constant, histogram(key(name, label, constant.name())));
+        }
+        return byConstant;
+    }
+
+    public <E extends Enum<E>> EnumMap<E, Counter> counters(String name, String label, Class<E> type) {
+        EnumMap<E, Counter> byConstant = new EnumMap<>(type);
+        for (E constant : type.getEnumConstants()) {
+            byConstant.put(constant, counter(key(name, label, constant.name())));
+        }
+        return byConstant;
+    }
+
+    // The value is escaped as the text format requires, since some come from menu item names
+    static String key(String name, String label, String value) {
+        StringBuilder key = new StringBuilder(name.length() + label.length() + value.length() + 5);
+        key.append(name).append('{').append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': key.append("\\\\"); break;
+                case '"': key.append("\\\""); break;
+                case '\n': key.append("\\n"); break;
+                default: key.append(c);
+            }
+        }
+        return key.append("\"}").toString();
+    }
+
+    // Prometheus text exposition; histograms are summaries in seconds
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        String lastName = null;
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            lastName = typeLine(out, entry.getKey(), "counter", lastName);
+            out.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, DoubleSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+            lastName = typeLine(out, entry.getKey(), "gauge", lastName);
+            out.append(entry.getKey()).append(' ').append(entry.getValue().getAsDouble()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            String key = entry.getKey();
+            LatencyHistogram histogram = entry.getValue();
+            lastName = typeLine(out, key, "summary", lastName);
+            for (double quantile : QUANTILES) {
+                out.append(withLabel(key, "quantile=\"" + quantile + "\"")).append(' ')
+                        .append(seconds(histogram.getValueAtQuantile(quantile))).append('\n');
+            }
+            out.append(withSuffix(key, "_sum")).append(' ').append(seconds(histogram.getTotalNanos())).append('\n');
+            out.append(withSuffix(key, "_count")).append(' ').append(histogram.getCount()).append('\n');
+        }
+        return out.toString();
+    }
+
+    // Publishes every metric as a read-only attribute of foodorder:type=Metrics; the metrics keep
+    // working without it, so the caller decides whether a failure matters
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("foodorder:type=Metrics"));
+    }
+
+    private static String typeLine(StringBuilder out, String key, String type, String lastName) {
+        String name = baseName(key);
+        if (!name.equals(lastName)) {
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+        return name;
+    }
+
+    private static String baseName(String key) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key : key.substring(0, brace);
+    }
+
+    private static String withLabel(String key, String label) {
+        return key.endsWith("}") ? key.substring(0, key.length() - 1) + "," + label + "}" : key + "{" + label + "}";
+    }
+
+    private static String withSuffix(String key, String suffix) {
+        int brace = key.indexOf('{');
+        return brace < 0 ? key + suffix : key.substring(0, brace) + suffix + key.substring(brace);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    // Attributes: counters and gauges under their keys; histograms as <key>.p50, .p99, .max
+    // and .count, with latencies in milliseconds
+    private final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = counters.get(attribute);
+            if (counter != null) return counter.get();
+            DoubleSupplier gauge = gauges.get(attribute);
+            if (gauge != null) return gauge.getAsDouble();
+            int dot = attribute.lastIndexOf('.');
+            LatencyHistogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+            if (histogram != null) {
+                switch (attribute.substring(dot + 1)) {
+                    case "p50": return histogram.getValueAtQuantile(0.5) / 1e6;
+                    case "p99": return histogram.getValueAtQuantile(0.99) / 1e6;
+                    case "max": return histogram.getMaxNanos() / 1e6;
+                    case "count": return (double) histogram.getCount();
+                    default: break;
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // left out, as the DynamicMBean contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String key : new TreeSet<>(counters.keySet())) {
+                attributes.add(new MBeanAttributeInfo(key, "java.lang.Long", "counter", true, false, false));
+            }
+            for (String key : new TreeSet<>(gauges.keySet())) {
+                attributes.add(new MBeanAttributeInfo(key, "java.lang.Double", "gauge", true, false, false));
+            }
+            for (String key : new TreeSet<>(histograms.keySet())) {
+                for (String stat : new String[] {"p50", "p99", "max", "count"}) {
+                    attributes.add(new MBeanAttributeInfo(key + "." + stat, "java.lang.Double",
+                            stat.equals("count") ? "samples" : "milliseconds", true, false, false));
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Food ordering metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
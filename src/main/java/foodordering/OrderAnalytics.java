@@ -0,0 +1,380 @@
+// Reporting over paid orders
+//
+// Every confirmed order is appended to two column stores: one row per order (time, payment method,
+// amount charged) and one row per order line (time, item, quantity, unit price). Columns are
+// primitive arrays in fixed-size chunks, as in the Ledger, and item and category names are
+// dictionary-encoded into int codes, so a line costs 16 bytes. Times are local minutes since the
+// epoch, matching Order.orderTime.
+//
+// Each chunk records the earliest and latest minute it holds. A query skips chunks outside its time
+// range and checks times row by row only in chunks that straddle a bound. It takes a snapshot
+// under the lock, scans the chunks in parallel on the common fork-join pool, each into its own
+// array of per-group sums, and adds those arrays together at the end.
+
+package foodordering;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Gross sales of one menu item, before discounts
+class ItemSales {
+    private final String name;
+    private final String category;
+    private final long quantity;
+    private final long revenue;
+
+    ItemSales(String name, String category, long quantity, long revenue) {
+        this.name = name;
+        this.category = category;
+        this.quantity = quantity;
+        this.revenue = revenue;
+    }
+
+    public String getName() { return name; }
+    public String getCategory() { return category; }
+    public long getQuantity() { return quantity; }
+    public long getRevenue() { return revenue; }
+}
+
+// Order count and amount charged per payment method
+class PaymentMix {
+    private final long[] orders;
+    private final long[] amounts;
+
+    PaymentMix(long[] orders, long[] amounts) {
+        this.orders = orders;
+        this.amounts = amounts;
+    }
+
+    public long getOrders(PaymentMethod method) { return orders[method.ordinal()]; }
+    public long getAmount(PaymentMethod method) { return amounts[method.ordinal()]; }
+
+    public long getTotalOrders() {
+        long total = 0;
+        for (long count : orders) total += count;
+        return total;
+    }
+}
+
+class OrderAnalytics {
+    private static final PaymentMethod[] METHODS = PaymentMethod.values();
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Zone map shared by both kinds of chunk
+    private abstract static class Chunk {
+        final int[] minutes = new int[CHUNK_SIZE];
+        int minMinute = Integer.MAX_VALUE;
+        int maxMinute = Integer.MIN_VALUE;
+
+        void cover(int minute) {
+            if (minute < minMinute) minMinute = minute;
+            if (minute > maxMinute) maxMinute = minute;
+        }
+    }
+
+    private static final class OrderChunk extends Chunk {
+        final byte[] methods = new byte[CHUNK_SIZE];
+        final long[] amounts = new long[CHUNK_SIZE];
+    }
+
+    private static final class LineChunk extends Chunk {
+        final int[] items = new int[CHUNK_SIZE];
+        final int[] quantities = new int[CHUNK_SIZE];
+        final int[] unitPrices = new int[CHUNK_SIZE];
+    }
+
+    // Scans rows [0, count) of one chunk whose times are in [from, to) into per-group sums
+    private interface ChunkScan<C extends Chunk> {
+        void scan(C chunk, int count, int from, int to, long[] sums);
+    }
+
+    // Chunks, dictionaries and sizes as of one moment; rows below the sizes never change again
+    private static final class Snapshot {
+        OrderChunk[] orderChunks;
+        LineChunk[] lineChunks;
+        long orders;
+        long lines;
+        String[] itemNames;
+        int[] itemCategories;
+        int items;
+        String[] categoryNames;
+        int categories;
+    }
+
+    // Guarded by this
+    private final HashMap<String, Integer> itemCodes = new HashMap<>();
+    private final HashMap<String, Integer> categoryCodes = new HashMap<>();
+    private String[] itemNames = new String[256];
+    private int[] itemCategories = new int[256];
+    private int itemCount;
+    private String[] categoryNames = new String[16];
+    private int categoryCount;
+    private OrderChunk[] orderChunks = new OrderChunk[16];
+    private LineChunk[] lineChunks = new LineChunk[16];
+    private long orders;
+    private long lines;
+
+    // Local minutes since the epoch, the unit every time column is kept in
+    static int minuteOf(LocalDateTime time) {
+        return (int) Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    public void record(Order order) {
+        Collection<OrderItem> items = order.getItems();
+        int[] codes = new int[items.size()];
+        int[] quantities = new int[codes.length];
+        int[] unitPrices = new int[codes.length];
+        synchronized (this) {
+            int i = 0;
+            for (OrderItem item : items) {
+                MenuItem menuItem = item.getMenuItem();
+                codes[i] = itemCode(menuItem.getName(), menuItem.getCategory());
+                quantities[i] = item.getQuantity();
+                unitPrices[i] = Math.toIntExact(menuItem.getPrice());
+                i++;
+            }
+            append(minuteOf(order.getOrderTime()), order.getPayment().getMethod(), order.getPayment().getAmount(),
+                    codes, quantities, unitPrices, codes.length);
+        }
+    }
+
+    // An order recovered from storage; categories are not stored with it, so they are looked up by
+    // item name, and items no longer on any menu are reported under "Other"
+    public void record(OrderRecord order, RestaurantRegistry restaurants) {
+        int[] codes = new int[order.itemNames.length];
+        int[] quantities = order.quantities.clone();
+        int[] unitPrices = new int[codes.length];
+        String[] categories = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            categories[i] = "Other";
+            for (Restaurant restaurant : restaurants.getRestaurants()) {
+                MenuItem item = restaurant.getMenuSnapshot().findByName(order.itemNames[i]);
+                if (item != null) {
+                    categories[i] = item.getCategory();
+                    break;
+                }
+            }
+            unitPrices[i] = Math.toIntExact(order.unitPrices[i]);
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(order.epochMillis), ZoneId.systemDefault());
+        synchronized (this) {
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = itemCode(order.itemNames[i], categories[i]);
+            }
+            append(minuteOf(time), order.method, order.total, codes, quantities, unitPrices, codes.length);
+        }
+    }
+
+    // The dictionary code of an item, added on first sight with the category it has then
+    synchronized int itemCode(String name, String category) {
+        Integer code = itemCodes.get(name);
+        if (code != null) {
+            return code;
+        }
+        if (itemCount == itemNames.length) {
+            itemNames = Arrays.copyOf(itemNames, itemCount * 2);
+            itemCategories = Arrays.copyOf(itemCategories, itemCount * 2);
+        }
+        itemNames[itemCount] = name;
+        itemCategories[itemCount] = categoryCode(category);
+        itemCodes.put(name, itemCount);
+        return itemCount++;
+    }
+
+    // Appends an order of lineCount lines given as item codes, quantities and unit prices in paisa
+    synchronized void append(int minute, PaymentMethod method, long amount,
+                             int[] itemCodes, int[] quantities, int[] unitPrices, int lineCount) {
+        int slot = (int) orders & CHUNK_MASK;
+        if (slot == 0) {
+            int chunk = (int) (orders >>> CHUNK_BITS);
+            if (chunk == orderChunks.length) {
+                orderChunks = Arrays.copyOf(orderChunks, chunk * 2);
+            }
+            orderChunks[chunk] = new OrderChunk();
+        }
+        OrderChunk orderChunk = orderChunks[(int) (orders >>> CHUNK_BITS)];
+        orderChunk.minutes[slot] = minute;
+        orderChunk.methods[slot] = (byte) method.ordinal();
+        orderChunk.amounts[slot] = amount;
+        orderChunk.cover(minute);
+        orders++;
+
+        for (int i = 0; i < lineCount; i++) {
+            int lineSlot = (int) lines & CHUNK_MASK;
+            if (lineSlot == 0) {
+                int chunk = (int) (lines >>> CHUNK_BITS);
+                if (chunk == lineChunks.length) {
+                    lineChunks = Arrays.copyOf(lineChunks, chunk * 2);
+                }
+                lineChunks[chunk] = new LineChunk();
+            }
+            LineChunk lineChunk = lineChunks[(int) (lines >>> CHUNK_BITS)];
+            lineChunk.minutes[lineSlot] = minute;
+            lineChunk.items[lineSlot] = itemCodes[i];
+            lineChunk.quantities[lineSlot] = quantities[i];
+            lineChunk.unitPrices[lineSlot] = unitPrices[i];
+            lineChunk.cover(minute);
+            lines++;
+        }
+    }
+
+    public synchronized long getOrders() { return orders; }
+    public synchronized long getLines() { return lines; }
+
+    // Gross sales per category, largest first; null bounds leave that side of the range open
+    public Map<String, Long> revenueByCategory(LocalDateTime from, LocalDateTime to) {
+        Snapshot s = snapshot();
+        int[] itemCategories = s.itemCategories;
+        long[] sums = scan(s.lineChunks, s.lines, from, to, s.categories, (chunk, count, lo, hi, out) -> {
+            int[] minutes = chunk.minutes;
+            int[] items = chunk.items;
+            int[] quantities = chunk.quantities;
+            int[] prices = chunk.unitPrices;
+            for (int i = 0; i < count; i++) {
+                int minute = minutes[i];
+                if (minute >= lo && minute < hi) {
+                    out[itemCategories[items[i]]] += (long) quantities[i] * prices[i];
+                }
+            }
+        });
+        Integer[] order = byDescending(sums);
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int category : order) {
+            if (sums[category] > 0) {
+                result.put(s.categoryNames[category], sums[category]);
+            }
+        }
+        return result;
+    }
+
+    // The best-selling items by gross sales
+    public List<ItemSales> topItems(int limit, LocalDateTime from, LocalDateTime to) {
+        Snapshot s = snapshot();
+        int items = s.items;
+        // Quantities in the first half, sales in the second
+        long[] sums = scan(s.lineChunks, s.lines, from, to, items * 2, (chunk, count, lo, hi, out) -> {
+            int[] minutes = chunk.minutes;
+            int[] codes = chunk.items;
+            int[] quantities = chunk.quantities;
+            int[] prices = chunk.unitPrices;
+            for (int i = 0; i < count; i++) {
+                int minute = minutes[i];
+                if (minute >= lo && minute < hi) {
+                    int item = codes[i];
+                    out[item] += quantities[i];
+                    out[items + item] += (long) quantities[i] * prices[i];
+                }
+            }
+        });
+        long[] revenue = Arrays.copyOfRange(sums, items, items * 2);
+        List<ItemSales> result = new ArrayList<>();
+        for (int item : byDescending(revenue)) {
+            if (result.size() == limit || revenue[item] == 0) break;
+            result.add(new ItemSales(s.itemNames[item], s.categoryNames[s.itemCategories[item]], sums[item], revenue[item]));
+        }
+        return result;
+    }
+
+    public PaymentMix paymentMix(LocalDateTime from, LocalDateTime to) {
+        Snapshot s = snapshot();
+        int methods = METHODS.length;
+        // Order counts in the first half, amounts in the second
+        long[] sums = scan(s.orderChunks, s.orders, from, to, methods * 2, (chunk, count, lo, hi, out) -> {
+            int[] minutes = chunk.minutes;
+            byte[] codes = chunk.methods;
+            long[] amounts = chunk.amounts;
+            for (int i = 0; i < count; i++) {
+                int minute = minutes[i];
+                if (minute >= lo && minute < hi) {
+                    out[codes[i]]++;
+                    out[methods + codes[i]] += amounts[i];
+                }
+            }
+        });
+        return new PaymentMix(Arrays.copyOf(sums, methods), Arrays.copyOfRange(sums, methods, methods * 2));
+    }
+
+    // Orders per hour of the day, 0 to 23
+    public long[] ordersByHour(LocalDateTime from, LocalDateTime to) {
+        Snapshot s = snapshot();
+        return scan(s.orderChunks, s.orders, from, to, 24, (chunk, count, lo, hi, out) -> {
+            int[] minutes = chunk.minutes;
+            for (int i = 0; i < count; i++) {
+                int minute = minutes[i];
+                if (minute >= lo && minute < hi) {
+                    out[Math.floorMod(minute / 60, 24)]++;
+                }
+            }
+        });
+    }
+
+    private synchronized Snapshot snapshot() {
+        Snapshot s = new Snapshot();
+        s.orderChunks = orderChunks;
+        s.lineChunks = lineChunks;
+        s.orders = orders;
+        s.lines = lines;
+        s.itemNames = itemNames;
+        s.itemCategories = itemCategories;
+        s.items = itemCount;
+        s.categoryNames = categoryNames;
+        s.categories = categoryCount;
+        return s;
+    }
+
+    // Runs scan over every chunk that overlaps [from, to) in parallel and adds up the results. A
+    // chunk wholly inside the range is scanned with open bounds, which the row check always passes.
+    // The last chunk may still be filling, so its zone map is not trusted and its rows are always
+    // checked.
+    private static <C extends Chunk> long[] scan(C[] chunks, long rows, LocalDateTime from, LocalDateTime to,
+                                                 int groups, ChunkScan<C> scan) {
+        int lo = from == null ? Integer.MIN_VALUE : minuteOf(from);
+        int hi = to == null ? Integer.MAX_VALUE : minuteOf(to);
+        int chunkCount = (int) ((rows + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        return IntStream.range(0, chunkCount).parallel()
+                .mapToObj(c -> {
+                    C chunk = chunks[c];
+                    int count = (int) Math.min(CHUNK_SIZE, rows - ((long) c << CHUNK_BITS));
+                    long[] sums = new long[groups];
+                    if (c == chunkCount - 1) {
+                        scan.scan(chunk, count, lo, hi, sums);
+                    } else if (chunk.minMinute >= lo && chunk.maxMinute < hi) {
+                        scan.scan(chunk, count, Integer.MIN_VALUE, Integer.MAX_VALUE, sums);
+                    } else if (chunk.maxMinute >= lo && chunk.minMinute < hi) {
+                        scan.scan(chunk, count, lo, hi, sums);
+                    }
+                    return sums;
+                })
+                .reduce((a, b) -> {
+                    for (int i = 0; i < a.length; i++) a[i] += b[i];
+                    return a;
+                })
+                .orElseGet(() -> new long[groups]);
+    }
+
+    private int categoryCode(String category) {
+        Integer code = categoryCodes.get(category);
+        if (code != null) {
+            return code;
+        }
+        if (categoryCount == categoryNames.length) {
+            categoryNames = Arrays.copyOf(categoryNames, categoryCount * 2);
+        }
+        categoryNames[categoryCount] = category;
+        categoryCodes.put(category, categoryCount);
+        return categoryCount++;
+    }
+
+    private static Integer[] byDescending(long[] values) {
+        Integer[] indexes = new Integer[values.length];
+        for (int i = 0; i < indexes.length; i++) indexes[i] = i;
+        Arrays.sort(indexes, (a, b) -> Long.compare(values[b], values[a]));
+        return indexes;
+    }
+}
@@ -0,0 +1,344 @@
+// Order lifecycle after checkout
+//
+// Every status change is published on an in-process OrderEventBus. The OrderPipeline listens
+// for CONFIRMED orders and moves them through two stages, each a queue drained in batches by a
+// fixed number of cooks or riders:
+//
+//   kitchen:  CONFIRMED -> PREPARING, a cook prepares up to batchSize orders together
+//   dispatch: PREPARING -> OUT_FOR_DELIVERY -> DELIVERED, a rider carries up to batchSize orders
+//
+// Cooks and riders are slots, not threads: a batch takes a slot, and a shared scheduled clock
+// finishes it after the prep or delivery time, so nothing sleeps and submitting never blocks.
+// Checkout stops taking orders while the kitchen queue is at capacity.
+//
+// Delivery estimates are computed from the current depth of both queues and the measured time
+// each stage takes per batch.
+
+package foodordering;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+class OrderEvent {
+    private final Order order;
+    private final OrderStatus from;
+    private final OrderStatus to;
+    private final long nanoTime;
+
+    OrderEvent(Order order, OrderStatus from, OrderStatus to) {
+        this.order = order;
+        this.from = from;
+        this.to = to;
+        this.nanoTime = System.nanoTime();
+    }
+
+    public Order getOrder() { return order; }
+    public OrderStatus getFrom() { return from; }
+    public OrderStatus getTo() { return to; }
+    public long getNanoTime() { return nanoTime; }
+}
+
+// Synchronous pub/sub: listeners run on the publishing thread and should hand off real work
+class OrderEventBus {
+    private static final EnumMap<OrderStatus, Counter> TRANSITIONS =
+            Metrics.DEFAULT.counters("order_transitions_total", "status", OrderStatus.class);
+
+    private final Map<OrderStatus, List<Consumer<OrderEvent>>> listeners = new EnumMap<>(OrderStatus.class);
+
+    OrderEventBus() {
+        for (OrderStatus status : OrderStatus.values()) {
+            listeners.put(status, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    public void subscribe(OrderStatus status, Consumer<OrderEvent> listener) {
+        listeners.get(status).add(listener);
+    }
+
+    public void subscribeAll(Consumer<OrderEvent> listener) {
+        for (OrderStatus status : OrderStatus.values()) {
+            subscribe(status, listener);
+        }
+    }
+
+    // Applies the transition on the order and announces it
+    public void transition(Order order, OrderStatus next) {
+        OrderStatus previous = order.transitionTo(next);
+        publish(new OrderEvent(order, previous, next));
+    }
+
+    public void publish(OrderEvent event) {
+        TRANSITIONS.get(event.getTo()).increment();
+        for (Consumer<OrderEvent> listener : listeners.get(event.getTo())) {
+            listener.accept(event);
+        }
+    }
+}
+
+class OrderStage {
+    interface BatchHandler {
+        // Runs when a cook or rider picks the batch up
+        void begin(List<Order> batch);
+
+        // Runs once the batch's cooking or riding time has passed
+        void finish(List<Order> batch);
+    }
+
+    private static final class Ticket {
+        final Order order;
+        final long enqueuedNanos;
+
+        Ticket(Order order) {
+            this.order = order;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    private final String name;
+    private final ConcurrentLinkedQueue<Ticket> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final int capacity;
+    private final int batchSize;
+    private final int workers;
+    private final Duration nominalBatchTime;
+    private final ScheduledExecutorService clock;
+    private final BatchHandler handler;
+    private final Counter overCapacity;
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder serviceNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LatencyHistogram waitLatency;
+    private final LatencyHistogram batchLatency;
+    private int idleWorkers;  // guarded by this
+    private boolean running;  // guarded by this
+
+    OrderStage(String name, int capacity, int batchSize, int workers, Duration nominalBatchTime,
+               ScheduledExecutorService clock, BatchHandler handler) {
+        this.name = name;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.workers = workers;
+        this.idleWorkers = workers;
+        this.nominalBatchTime = nominalBatchTime;
+        this.clock = clock;
+        this.handler = handler;
+        this.overCapacity = Metrics.DEFAULT.counter(Metrics.key("order_stage_over_capacity_total", "stage", name));
+        this.waitLatency = Metrics.DEFAULT.histogram(Metrics.key("order_stage_wait_seconds", "stage", name));
+        this.batchLatency = Metrics.DEFAULT.histogram(Metrics.key("order_stage_batch_seconds", "stage", name));
+    }
+
+    void start() {
+        synchronized (this) {
+            running = true;
+        }
+        pickUp();
+    }
+
+    synchronized void stop() {
+        running = false;
+    }
+
+    // Never blocks the caller: a paid order is always taken, even past capacity. Checkout uses
+    // hasRoom to turn new orders away before charging for them, so only payments already in
+    // flight can overshoot, and those are counted.
+    void submit(Order order) {
+        queue.add(new Ticket(order));
+        if (depth.incrementAndGet() > capacity) {
+            overCapacity.increment();
+        }
+        pickUp();
+    }
+
+    boolean hasRoom() {
+        return depth.get() < capacity;
+    }
+
+    // Hands queued orders to idle cooks or riders. Anyone adding to the queue calls this after the
+    // add, so an order is never left waiting while a worker is idle.
+    private void pickUp() {
+        while (true) {
+            List<Ticket> tickets = new ArrayList<>(batchSize);
+            synchronized (this) {
+                if (!running || idleWorkers == 0 || queue.isEmpty()) {
+                    return;
+                }
+                idleWorkers--;
+                Ticket ticket;
+                while (tickets.size() < batchSize && (ticket = queue.poll()) != null) {
+                    tickets.add(ticket);
+                }
+                depth.addAndGet(-tickets.size());
+            }
+            begin(tickets);
+        }
+    }
+
+    // The worker is busy for the batch time without holding a thread; the clock brings it back
+    private void begin(List<Ticket> tickets) {
+        long start = System.nanoTime();
+        List<Order> batch = new ArrayList<>(tickets.size());
+        for (Ticket ticket : tickets) {
+            long waited = start - ticket.enqueuedNanos;
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            waitLatency.record(waited);
+            if (ticket.order.getStatus() != OrderStatus.CANCELLED) {
+                batch.add(ticket.order);
+            }
+        }
+        if (!batch.isEmpty()) {
+            try {
+                handler.begin(batch);
+            } catch (RuntimeException e) {
+                System.err.println(name + " stage failed on a batch: " + e);
+            }
+        }
+        long delay = batch.isEmpty() ? 0 : nominalBatchTime.toNanos();
+        try {
+            clock.schedule(() -> finish(batch, tickets.size(), start), delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // the pipeline has stopped
+        }
+    }
+
+    private void finish(List<Order> batch, int picked, long start) {
+        try {
+            if (!batch.isEmpty()) {
+                handler.finish(batch);
+            }
+        } catch (RuntimeException e) {
+            System.err.println(name + " stage failed on a batch: " + e);
+        } finally {
+            long took = System.nanoTime() - start;
+            serviceNanos.add(took);
+            batchLatency.record(took);
+            processed.add(picked);
+            batches.increment();
+            synchronized (this) {
+                idleWorkers++;
+            }
+        }
+        pickUp();
+    }
+
+    public String getName() { return name; }
+    public int getDepth() { return depth.get(); }
+    public long getProcessed() { return processed.sum(); }
+    public long getMaxWaitNanos() { return maxWaitNanos.get(); }
+
+    public long getAverageWaitNanos() {
+        long count = processed.sum();
+        return count == 0 ? 0 : waitNanos.sum() / count;
+    }
+
+    // Measured once batches have run, otherwise the configured time
+    public Duration getBatchTime() {
+        long count = batches.sum();
+        return count == 0 ? nominalBatchTime : Duration.ofNanos(serviceNanos.sum() / count);
+    }
+
+    // Time until an order submitted now would leave this stage
+    Duration estimateCompletion() {
+        long rounds = getDepth() / ((long) batchSize * workers) + 1;
+        return getBatchTime().multipliedBy(rounds);
+    }
+}
+
+class OrderPipeline {
+    private final OrderEventBus events;
+    private final OrderStage kitchen;
+    private final OrderStage dispatch;
+    private final ScheduledExecutorService clock;
+
+    OrderPipeline(OrderEventBus events, int cooks, Duration prepTime, int riders, Duration deliveryTime,
+                  int queueCapacity, int batchSize) {
+        this.events = events;
+        this.clock = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread t = new Thread(runnable, "order-pipeline-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        this.dispatch = new OrderStage("dispatch", queueCapacity, batchSize, riders, deliveryTime, clock,
+                new OrderStage.BatchHandler() {
+                    public void begin(List<Order> batch) {
+                        for (Order order : batch) {
+                            transitionUnlessCancelled(order, OrderStatus.OUT_FOR_DELIVERY);
+                        }
+                    }
+
+                    public void finish(List<Order> batch) {
+                        for (Order order : batch) {
+                            if (order.getStatus() == OrderStatus.OUT_FOR_DELIVERY) {
+                                events.transition(order, OrderStatus.DELIVERED);
+                            }
+                        }
+                    }
+                });
+        this.kitchen = new OrderStage("kitchen", queueCapacity, batchSize, cooks, prepTime, clock,
+                new OrderStage.BatchHandler() {
+                    public void begin(List<Order> batch) {
+                        for (Order order : batch) {
+                            transitionUnlessCancelled(order, OrderStatus.PREPARING);
+                        }
+                    }
+
+                    public void finish(List<Order> batch) {
+                        for (Order order : batch) {
+                            if (order.getStatus() == OrderStatus.PREPARING) {
+                                dispatch.submit(order);
+                            }
+                        }
+                    }
+                });
+        events.subscribe(OrderStatus.CONFIRMED, event -> accept(event.getOrder()));
+    }
+
+    public void start() {
+        kitchen.start();
+        dispatch.start();
+    }
+
+    public void stop() {
+        kitchen.stop();
+        dispatch.stop();
+        clock.shutdownNow();
+    }
+
+    private void accept(Order order) {
+        order.setEstimatedDelivery(estimateDelivery());
+        kitchen.submit(order);
+    }
+
+    // Checked before payment so a full kitchen turns new orders away instead of charging for them
+    public boolean isAcceptingOrders() {
+        return kitchen.hasRoom();
+    }
+
+    // Cancelling is allowed until a rider has picked the order up
+    public void cancel(Order order) {
+        events.transition(order, OrderStatus.CANCELLED);
+    }
+
+    public Duration estimateDelivery() {
+        return kitchen.estimateCompletion().plus(dispatch.estimateCompletion());
+    }
+
+    public OrderEventBus getEvents() { return events; }
+    public OrderStage getKitchen() { return kitchen; }
+    public OrderStage getDispatch() { return dispatch; }
+
+    private void transitionUnlessCancelled(Order order, OrderStatus next) {
+        try {
+            events.transition(order, next);
+        } catch (IllegalStateException e) {
+            // cancelled between being queued and being picked up
+        }
+    }
+}
@@ -0,0 +1,444 @@
+// Receipt, cart and menu rendering, shared by the console, the HTTP API and downstream consumers
+// such as receipt printers and notifications.
+//
+// Output is appended to a StringBuilder in plain text or JSON. Printing goes through a RenderBuffer:
+// each thread keeps one builder and one byte array and reuses them across calls, and the encoded
+// bytes go to the stream in a single write. Rules and labels are constants, and ids, dates and
+// amounts are appended digit by digit, so rendering a receipt builds no intermediate strings.
+
+package foodordering;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+enum RenderFormat {
+    TEXT("text/plain; charset=utf-8"),
+    JSON("application/json; charset=utf-8");
+
+    private final String contentType;
+
+    RenderFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() { return contentType; }
+
+    public static RenderFormat parse(String name, RenderFormat fallback) {
+        if (name == null || name.isEmpty()) {
+            return fallback;
+        }
+        for (RenderFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown format: " + name + ", expected text or json");
+    }
+}
+
+// A thread's reusable text and byte buffers. Buffers that grew past MAX_RETAINED for one large
+// render are dropped afterwards instead of being held by the thread for good.
+final class RenderBuffer {
+    private static final int INITIAL_CHARS = 2048;
+    private static final int MAX_RETAINED = 1 << 20;
+    private static final ThreadLocal<RenderBuffer> CURRENT = ThreadLocal.withInitial(RenderBuffer::new);
+    // What System.out encodes with: sun.stdout.encoding when the launcher sets it, else the default charset
+    static final Charset CONSOLE_CHARSET = consoleCharset();
+
+    private StringBuilder text = new StringBuilder(INITIAL_CHARS);
+    private byte[] bytes = new byte[INITIAL_CHARS * 2];
+    private int length;
+
+    private RenderBuffer() {}
+
+    // The calling thread's buffer, emptied; valid until the thread's next get()
+    static RenderBuffer get() {
+        RenderBuffer buffer = CURRENT.get();
+        if (buffer.text.capacity() > MAX_RETAINED) {
+            buffer.text = new StringBuilder(INITIAL_CHARS);
+        }
+        if (buffer.bytes.length > MAX_RETAINED * 3) {
+            buffer.bytes = new byte[INITIAL_CHARS * 2];
+        }
+        buffer.text.setLength(0);
+        buffer.length = 0;
+        return buffer;
+    }
+
+    StringBuilder text() { return text; }
+
+    // Encodes the text as UTF-8 into the reusable byte array; returns the number of bytes
+    int encode() {
+        int chars = text.length();
+        if (bytes.length < chars * 3) {
+            bytes = new byte[Math.max(chars * 3, bytes.length * 2)];
+        }
+        byte[] out = bytes;
+        int n = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | c >> 6);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                out[n++] = (byte) (0xF0 | cp >> 18);
+                out[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                out[n++] = '?'; // unpaired surrogate
+            } else {
+                out[n++] = (byte) (0xE0 | c >> 12);
+                out[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        length = n;
+        return n;
+    }
+
+    // One write of the whole rendering, in the console's charset. Anything other than UTF-8 goes
+    // through String.getBytes, which substitutes unmappable characters the way PrintStream does.
+    void writeTo(PrintStream out) {
+        if (CONSOLE_CHARSET == StandardCharsets.UTF_8) {
+            encode();
+            out.write(bytes, 0, length);
+        } else {
+            byte[] encoded = text.toString().getBytes(CONSOLE_CHARSET);
+            out.write(encoded, 0, encoded.length);
+        }
+        out.flush();
+    }
+
+    // A copy of the UTF-8 bytes, for callers that hold on to them (e.g. an HTTP response)
+    byte[] toByteArray() {
+        encode();
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static Charset consoleCharset() {
+        String name = System.getProperty("sun.stdout.encoding");
+        try {
+            return name != null ? Charset.forName(name) : Charset.defaultCharset();
+        } catch (IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+}
+
+// JSON string escaping shared by everything that writes JSON by hand
+final class Json {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Json() {}
+
+    static StringBuilder quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        return json.append('"');
+    }
+}
+
+final class OrderRenderer {
+    private static final String DOUBLE_RULE = "=".repeat(50);
+    private static final String RULE = "-".repeat(50);
+    private static final String CART_RULE = "-".repeat(30);
+
+    private OrderRenderer() {}
+
+    public static void printReceipt(Order order) {
+        RenderBuffer buffer = RenderBuffer.get();
+        receipt(buffer.text(), order, RenderFormat.TEXT);
+        buffer.writeTo(System.out);
+    }
+
+    public static void printCart(Order order) {
+        RenderBuffer buffer = RenderBuffer.get();
+        cart(buffer.text(), order, RenderFormat.TEXT);
+        buffer.writeTo(System.out);
+    }
+
+    public static void printItems(Order order) {
+        RenderBuffer buffer = RenderBuffer.get();
+        synchronized (order) {
+            items(buffer.text(), order);
+        }
+        buffer.writeTo(System.out);
+    }
+
+    // The snapshot keeps its encoded text, so this is one write of an existing array
+    public static void printMenu(MenuSnapshot menu) {
+        byte[] bytes = menu.renderedBytes();
+        System.out.write(bytes, 0, bytes.length);
+        System.out.flush();
+    }
+
+    public static StringBuilder receipt(StringBuilder out, Order order, RenderFormat format) {
+        synchronized (order) {
+            return format == RenderFormat.JSON ? receiptJson(out, order) : receiptText(out, order);
+        }
+    }
+
+    public static StringBuilder cart(StringBuilder out, Order order, RenderFormat format) {
+        synchronized (order) {
+            return format == RenderFormat.JSON ? cartJson(out, order) : cartText(out, order);
+        }
+    }
+
+    // Text is the numbered menu shown on the console; JSON groups items by category
+    public static StringBuilder menu(StringBuilder out, String restaurantName, MenuSnapshot menu, RenderFormat format) {
+        if (format == RenderFormat.TEXT) {
+            return out.append(menu.render());
+        }
+        out.append("{\"restaurant\":");
+        Json.quote(out, restaurantName).append(",\"version\":").append(menu.getVersion()).append(",\"categories\":[");
+        int number = 1;
+        boolean firstCategory = true;
+        for (Map.Entry<String, List<MenuItem>> category : menu.getCategories().entrySet()) {
+            if (!firstCategory) out.append(',');
+            firstCategory = false;
+            out.append("{\"name\":");
+            Json.quote(out, category.getKey()).append(",\"items\":[");
+            boolean firstItem = true;
+            for (MenuItem item : category.getValue()) {
+                if (!firstItem) out.append(',');
+                firstItem = false;
+                menuItemJson(out, item, number++);
+            }
+            out.append("]}");
+        }
+        return out.append("]}");
+    }
+
+    static StringBuilder menuItemJson(StringBuilder json, MenuItem item, int number) {
+        json.append("{\"id\":");
+        quotedId(json, item.getId()).append(",\"number\":").append(number).append(",\"name\":");
+        Json.quote(json, item.getName()).append(",\"category\":");
+        Json.quote(json, item.getCategory()).append(",\"price\":");
+        return Money.appendTo(json, item.getPrice()).append('}');
+    }
+
+    private static StringBuilder receiptText(StringBuilder out, Order order) {
+        long subtotal = order.calculateSubtotal();
+        long discount = order.getDiscount();
+        long deliveryCharge = order.getDeliveryCharge();
+        Customer customer = order.getCustomer();
+        out.append('\n').append(DOUBLE_RULE).append('\n')
+                .append("                ORDER RECEIPT\n")
+                .append(DOUBLE_RULE).append('\n');
+        IdGenerator.appendTo(out.append("Order ID: "), order.getOrderId()).append('\n');
+        appendDateTime(out.append("Date: "), order.getOrderTime()).append('\n');
+        out.append("Status: ").append(order.getStatus()).append('\n')
+                .append("Customer: ").append(customer.getName()).append('\n')
+                .append("Phone: ").append(customer.getPhone()).append('\n')
+                .append("Address: ").append(customer.getAddress()).append('\n')
+                .append(RULE).append('\n');
+        items(out, order);
+        out.append(RULE).append('\n');
+        Money.appendTo(out.append("Subtotal: Rs. "), subtotal).append('\n');
+        if (discount > 0) {
+            for (AppliedPromotion promotion : order.getAppliedPromotions()) {
+                out.append("Discount (").append(promotion.getName()).append("): -Rs. ");
+                Money.appendTo(out, promotion.getAmount()).append('\n');
+            }
+        }
+        if (deliveryCharge > 0) {
+            Money.appendTo(out.append("Delivery Charge: Rs. "), deliveryCharge).append('\n');
+        } else if (subtotal - discount > order.getFreeDeliveryAbove()) {
+            appendRupees(out.append("Delivery Charge: FREE (Order > Rs. "), order.getFreeDeliveryAbove()).append(")\n");
+        } else {
+            out.append("Delivery Charge: FREE\n");
+        }
+        Money.appendTo(out.append("TOTAL: Rs. "), subtotal - discount + deliveryCharge).append('\n');
+
+        Payment payment = order.getPayment();
+        if (payment != null) {
+            out.append(RULE).append('\n');
+            IdGenerator.appendTo(out.append("Payment ID: PAY"), payment.getPaymentId()).append('\n');
+            out.append("Payment Status: ").append(payment.getStatus()).append('\n');
+            appendDateTime(out.append("Payment Time: "), payment.getTimestamp()).append('\n');
+        }
+
+        out.append(DOUBLE_RULE).append('\n');
+        Duration eta = order.getEstimatedDelivery();
+        if (eta != null) {
+            out.append("Estimated Delivery Time: ").append(eta.toMinutes()).append(" minutes\n");
+        } else {
+            out.append("Estimated Delivery Time: 30-45 minutes\n");
+        }
+        return out.append("Thank you for your order! 🍽️\n")
+                .append(DOUBLE_RULE).append("\n\n");
+    }
+
+    private static StringBuilder receiptJson(StringBuilder json, Order order) {
+        long subtotal = order.calculateSubtotal();
+        long discount = order.getDiscount();
+        long deliveryCharge = order.getDeliveryCharge();
+        Customer customer = order.getCustomer();
+        json.append("{\"orderId\":");
+        quotedId(json, order.getOrderId()).append(",\"date\":\"");
+        appendIsoDateTime(json, order.getOrderTime()).append("\",\"status\":\"").append(order.getStatus())
+                .append("\",\"customer\":{\"name\":");
+        Json.quote(json, customer.getName()).append(",\"phone\":");
+        Json.quote(json, customer.getPhone()).append(",\"address\":");
+        Json.quote(json, customer.getAddress()).append("},\"items\":[");
+        itemsJson(json, order).append("],\"subtotal\":");
+        Money.appendTo(json, subtotal);
+        discountJson(json, order, discount).append(",\"deliveryCharge\":");
+        Money.appendTo(json, deliveryCharge).append(",\"total\":");
+        Money.appendTo(json, subtotal - discount + deliveryCharge);
+        if (order.getEstimatedDelivery() != null) {
+            json.append(",\"etaMinutes\":").append(order.getEstimatedDelivery().toMinutes());
+        }
+        Payment payment = order.getPayment();
+        if (payment != null) {
+            paymentJson(json, payment, true);
+        }
+        return json.append('}');
+    }
+
+    private static StringBuilder cartText(StringBuilder out, Order order) {
+        out.append("\n🛒 YOUR CART\n").append(CART_RULE).append('\n');
+        items(out, order);
+        out.append(CART_RULE).append('\n');
+        long discount = order.getDiscount();
+        if (discount > 0) {
+            Money.appendTo(out.append("Discount: -Rs. "), discount).append('\n');
+        }
+        return Money.appendTo(out.append("Total: Rs. "), order.calculateTotal()).append('\n');
+    }
+
+    private static StringBuilder cartJson(StringBuilder json, Order order) {
+        json.append("{\"orderId\":");
+        quotedId(json, order.getOrderId()).append(",\"status\":\"").append(order.getStatus()).append("\",\"items\":[");
+        itemsJson(json, order).append("],\"subtotal\":");
+        Money.appendTo(json, order.calculateSubtotal());
+        discountJson(json, order, order.getDiscount()).append(",\"deliveryCharge\":");
+        Money.appendTo(json, order.getDeliveryCharge()).append(",\"total\":");
+        Money.appendTo(json, order.calculateTotal());
+        if (order.getEstimatedDelivery() != null) {
+            json.append(",\"etaMinutes\":").append(order.getEstimatedDelivery().toMinutes());
+        }
+        Payment payment = order.getPayment();
+        if (payment != null) {
+            paymentJson(json, payment, false);
+        }
+        return json.append('}');
+    }
+
+    // One "name x quantity = Rs. subtotal" line per item
+    private static StringBuilder items(StringBuilder out, Order order) {
+        for (OrderItem item : order.getItems()) {
+            out.append(item.getMenuItem().getName()).append(" x ").append(item.getQuantity()).append(" = Rs. ");
+            Money.appendTo(out, item.getSubtotal()).append('\n');
+        }
+        return out;
+    }
+
+    private static StringBuilder itemsJson(StringBuilder json, Order order) {
+        boolean first = true;
+        for (OrderItem item : order.getItems()) {
+            if (!first) json.append(',');
+            first = false;
+            json.append("{\"itemId\":");
+            quotedId(json, item.getMenuItem().getId()).append(",\"name\":");
+            Json.quote(json, item.getMenuItem().getName()).append(",\"quantity\":").append(item.getQuantity()).append(",\"subtotal\":");
+            Money.appendTo(json, item.getSubtotal()).append('}');
+        }
+        return json;
+    }
+
+    // ,"coupon":..,"discount":..,"promotions":[..], each only when there is something to show
+    private static StringBuilder discountJson(StringBuilder json, Order order, long discount) {
+        if (order.getCouponCode() != null) {
+            Json.quote(json.append(",\"coupon\":"), order.getCouponCode());
+        }
+        if (discount > 0) {
+            Money.appendTo(json.append(",\"discount\":"), discount).append(",\"promotions\":[");
+            boolean first = true;
+            for (AppliedPromotion promotion : order.getAppliedPromotions()) {
+                if (!first) json.append(',');
+                first = false;
+                Json.quote(json.append("{\"name\":"), promotion.getName()).append(",\"amount\":");
+                Money.appendTo(json, promotion.getAmount()).append('}');
+            }
+            json.append(']');
+        }
+        return json;
+    }
+
+    private static StringBuilder paymentJson(StringBuilder json, Payment payment, boolean withTime) {
+        json.append(",\"payment\":{\"id\":\"PAY");
+        IdGenerator.appendTo(json, payment.getPaymentId()).append("\",\"method\":\"")
+                .append(payment.getMethod()).append("\",\"status\":\"").append(payment.getStatus()).append('"');
+        if (payment.getRefundedAmount() > 0) {
+            json.append(",\"refunded\":");
+            Money.appendTo(json, payment.getRefundedAmount()).append(",\"refundedTo\":");
+            Json.quote(json, payment.getRefundDestination());
+        }
+        if (withTime) {
+            json.append(",\"time\":\"");
+            appendIsoDateTime(json, payment.getTimestamp()).append('"');
+        }
+        return json.append('}');
+    }
+
+    // Base-36 ids contain only digits and letters, so they need no escaping
+    private static StringBuilder quotedId(StringBuilder json, long id) {
+        return IdGenerator.appendTo(json.append('"'), id).append('"');
+    }
+
+    // Whole rupees without the decimals, e.g. "500"
+    private static StringBuilder appendRupees(StringBuilder sb, long paisa) {
+        return paisa % Money.PAISA_PER_RUPEE == 0 ? sb.append(paisa / Money.PAISA_PER_RUPEE) : Money.appendTo(sb, paisa);
+    }
+
+    // dd-MM-yyyy HH:mm:ss, as on the printed receipt
+    static StringBuilder appendDateTime(StringBuilder sb, LocalDateTime time) {
+        twoDigits(sb, time.getDayOfMonth()).append('-');
+        twoDigits(sb, time.getMonthValue()).append('-').append(time.getYear()).append(' ');
+        return appendTime(sb, time);
+    }
+
+    // yyyy-MM-ddTHH:mm:ss (ISO-8601 local time) for machine consumers
+    static StringBuilder appendIsoDateTime(StringBuilder sb, LocalDateTime time) {
+        sb.append(time.getYear()).append('-');
+        twoDigits(sb, time.getMonthValue()).append('-');
+        twoDigits(sb, time.getDayOfMonth()).append('T');
+        return appendTime(sb, time);
+    }
+
+    private static StringBuilder appendTime(StringBuilder sb, LocalDateTime time) {
+        twoDigits(sb, time.getHour()).append(':');
+        twoDigits(sb, time.getMinute()).append(':');
+        return twoDigits(sb, time.getSecond());
+    }
+
+    private static StringBuilder twoDigits(StringBuilder sb, int value) {
+        return sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
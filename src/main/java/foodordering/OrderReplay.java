@@ -0,0 +1,623 @@
+// Batch mode: replays orders from a file through the same Order, Payment and checkout code
+//
+// One order per line, as JSON Lines or, for a file ending in .csv, CSV with a header row:
+//
+//   {"name":"Asha","phone":"9800000001","address":"Lalitpur","restaurant":"Tasty Bites",
+//    "items":{"Chicken Momo":2,"Coke":1},"method":"CARD","cardNumber":"4111111111111111",
+//    "cardHolderName":"Asha","coupon":"WELCOME50","distanceKm":2.5}
+//
+//   name,phone,address,restaurant,items,method,cardNumber,cardHolderName,upiId,coupon,distanceKm
+//   Asha,9800000001,Lalitpur,Tasty Bites,Chicken Momo:2|Coke:1,CARD,4111111111111111,Asha,,,2.5
+//
+// restaurant may be left out when there is only one; upiId is needed for UPI, the card fields
+// for CARD, and coupon and distanceKm are optional.
+//
+// The file is cut into segments of a few megabytes and worker threads take them in turn, each
+// mapping its segment into memory and reading lines straight out of the mapping. A line belongs
+// to the segment its first byte is in, so a worker skips the partial line it starts in and
+// finishes the one it ends in. Each line becomes an order for the customer it names and is
+// checked out as the console and the API do; payments complete asynchronously, with at most
+// maxInFlight outstanding at once. Each order's time from taking an in-flight slot to its payment
+// result is recorded; time spent waiting for a slot shows in the throughput instead.
+
+package foodordering;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// One line of a replay file
+class ReplayOrder {
+    String name;
+    String phone;
+    String address;
+    String restaurant; // null for the only restaurant there is
+    final Map<String, Integer> items = new LinkedHashMap<>();
+    PaymentMethod method;
+    final Map<String, String> details = new HashMap<>();
+    String coupon;
+    long distanceMeters;
+
+    // Throws IllegalArgumentException for a line that is not an order
+    void validate() {
+        if (name == null || phone == null || address == null) {
+            throw new IllegalArgumentException("name, phone and address are required");
+        }
+        if (method == null) {
+            throw new IllegalArgumentException("method is required");
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("An order needs at least one item");
+        }
+    }
+
+    void set(String field, String value) {
+        if (value == null || value.isEmpty()) return;
+        switch (field) {
+            case "name": name = value; break;
+            case "phone": phone = value; break;
+            case "address": address = value; break;
+            case "restaurant": restaurant = value; break;
+            case "method": method = PaymentMethod.valueOf(value.trim().toUpperCase()); break;
+            case "coupon": coupon = value; break;
+            case "distanceKm": distanceMeters = Math.round(Double.parseDouble(value) * 1000); break;
+            case "cardNumber":
+            case "cardHolderName":
+            case "upiId":
+                details.put(field, value);
+                break;
+            default:
+                break; // extra columns are allowed and ignored
+        }
+    }
+
+    void addItem(String item, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity of " + item + " must be greater than 0");
+        }
+        items.merge(item, quantity, Integer::sum);
+    }
+}
+
+enum ReplayFormat {
+    JSON_LINES, CSV;
+
+    static ReplayFormat of(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".csv") ? CSV : JSON_LINES;
+    }
+
+    // A JSON object per line: string fields, items as an object of item name to quantity
+    static ReplayOrder parseJson(String line) {
+        ReplayOrder order = new ReplayOrder();
+        JsonReader json = new JsonReader(line);
+        json.expect('{');
+        if (!json.consume('}')) {
+            do {
+                String field = json.string();
+                json.expect(':');
+                if (field.equals("items")) {
+                    json.expect('{');
+                    if (!json.consume('}')) {
+                        do {
+                            String item = json.string();
+                            json.expect(':');
+                            order.addItem(item, Integer.parseInt(json.scalar()));
+                        } while (json.consume(','));
+                        json.expect('}');
+                    }
+                } else {
+                    order.set(field, json.scalar());
+                }
+            } while (json.consume(','));
+            json.expect('}');
+        }
+        order.validate();
+        return order;
+    }
+
+    // columns are the header's field names; items are "name:quantity" separated by '|'
+    static ReplayOrder parseCsv(String line, String[] columns) {
+        ReplayOrder order = new ReplayOrder();
+        List<String> values = splitCsv(line);
+        for (int i = 0; i < columns.length && i < values.size(); i++) {
+            if (columns[i].equals("items")) {
+                for (String entry : values.get(i).split("\\|")) {
+                    int colon = entry.lastIndexOf(':');
+                    if (colon <= 0) {
+                        throw new IllegalArgumentException("Item " + entry + " is not name:quantity");
+                    }
+                    order.addItem(entry.substring(0, colon).trim(), Integer.parseInt(entry.substring(colon + 1).trim()));
+                }
+            } else {
+                order.set(columns[i], values.get(i));
+            }
+        }
+        order.validate();
+        return order;
+    }
+
+    static String[] parseHeader(String line) {
+        List<String> columns = splitCsv(line);
+        String[] header = new String[columns.size()];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = columns.get(i).trim();
+        }
+        return header;
+    }
+
+    // Fields may be quoted, with "" for a quote inside them
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Just enough JSON for a flat order line with one nested object
+    private static final class JsonReader {
+        private final String text;
+        private int pos;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("Expected '" + c + "' at column " + (pos + 1));
+            }
+        }
+
+        boolean consume(char c) {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        // A string, number, boolean or null; null comes back as null
+        String scalar() {
+            skipSpace();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return string();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}] \t".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException("Expected a value at column " + (pos + 1));
+            }
+            String value = text.substring(start, pos);
+            return value.equals("null") ? null : value;
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) break;
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw new IllegalArgumentException("Bad \\u escape at column " + pos);
+                        }
+                        value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: value.append(escaped); // \" \\ \/
+                }
+            }
+            throw new IllegalArgumentException("Unterminated string");
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+}
+
+// Outcome of a replay; counters are updated by the workers and payment callbacks as it runs
+class ReplaySummary {
+    static final int PROBLEMS_KEPT = 10;
+
+    final LongAdder lines = new LongAdder();
+    final LongAdder confirmed = new LongAdder();
+    final LongAdder declined = new LongAdder();   // the payment did not go through
+    final LongAdder rejected = new LongAdder();   // refused before paying: unknown item, sold out, bad details
+    final LongAdder malformed = new LongAdder();  // not an order at all
+    final LongAdder charged = new LongAdder();    // paisa, confirmed orders only
+    final EnumMap<PaymentMethod, LongAdder> confirmedBy = new EnumMap<>(PaymentMethod.class);
+    final EnumMap<PaymentMethod, LongAdder> declinedBy = new EnumMap<>(PaymentMethod.class);
+    final LatencyHistogram latency = new LatencyHistogram();
+    private final List<String> problems = Collections.synchronizedList(new ArrayList<>());
+    private final Path file;
+    private final ReplayFormat format;
+    private final long bytes;
+    private final int threads;
+    private long elapsedNanos;
+
+    ReplaySummary(Path file, ReplayFormat format, long bytes, int threads) {
+        this.file = file;
+        this.format = format;
+        this.bytes = bytes;
+        this.threads = threads;
+        for (PaymentMethod method : PaymentMethod.values()) {
+            confirmedBy.put(method, new LongAdder());
+            declinedBy.put(method, new LongAdder());
+        }
+    }
+
+    // Keeps the first few, so a bad file does not flood the summary
+    void problem(long offset, String message) {
+        if (problems.size() < PROBLEMS_KEPT) {
+            problems.add("byte " + offset + ": " + message);
+        }
+    }
+
+    void finish(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+
+    public long getLines() { return lines.sum(); }
+    public long getConfirmed() { return confirmed.sum(); }
+    public long getDeclined() { return declined.sum(); }
+    public long getRejected() { return rejected.sum(); }
+    public long getMalformed() { return malformed.sum(); }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    public double getOrdersPerSecond() {
+        return elapsedNanos == 0 ? 0 : getLines() * 1e9 / elapsedNanos;
+    }
+
+    public void print(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.println("\n===== Replay of " + file + " (" + format + ") =====");
+        out.printf("%,d lines, %.1f MB in %.2f s on %d threads%n", getLines(), bytes / 1e6, seconds, threads);
+        out.printf("Throughput: %,.0f orders/s, %.1f MB/s%n", getOrdersPerSecond(), seconds == 0 ? 0 : bytes / 1e6 / seconds);
+        out.printf("Confirmed: %,d  Declined: %,d  Rejected: %,d  Malformed: %,d%n",
+                getConfirmed(), getDeclined(), getRejected(), getMalformed());
+        out.println("Charged: Rs. " + Money.format(charged.sum()));
+        for (PaymentMethod method : PaymentMethod.values()) {
+            long ok = confirmedBy.get(method).sum();
+            long failed = declinedBy.get(method).sum();
+            if (ok + failed > 0) {
+                out.printf("  %-16s %,d confirmed, %,d declined%n", method, ok, failed);
+            }
+        }
+        out.printf("Latency (ms): p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                millis(latency.getValueAtQuantile(0.5)), millis(latency.getValueAtQuantile(0.9)),
+                millis(latency.getValueAtQuantile(0.99)), millis(latency.getValueAtQuantile(0.999)),
+                millis(latency.getMaxNanos()));
+        if (!problems.isEmpty()) {
+            out.println("First problems:");
+            synchronized (problems) {
+                for (String problem : problems) {
+                    out.println("  " + problem);
+                }
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
+
+class OrderReplay {
+    // Longest line accepted; a segment maps this much past its end to finish its last line
+    static final int MAX_LINE = 1 << 20;
+    static final long MIN_SEGMENT = 4L << 20;
+    static final long MAX_SEGMENT = 256L << 20;
+
+    private final OrderingService service;
+    private final RestaurantRegistry restaurants;
+    private final int threads;
+    private final int maxInFlight;
+
+    OrderReplay(OrderingService service, RestaurantRegistry restaurants, int threads, int maxInFlight) {
+        if (threads <= 0 || maxInFlight <= 0) {
+            throw new IllegalArgumentException("threads and maxInFlight must be greater than 0");
+        }
+        this.service = service;
+        this.restaurants = restaurants;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+    }
+
+    // Returns once every line has been read and every payment has a result
+    public ReplaySummary run(Path file) throws IOException {
+        ReplayFormat format = ReplayFormat.of(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ReplaySummary summary = new ReplaySummary(file, format, size, threads);
+            long start = System.nanoTime();
+
+            String[] columns = null;
+            long dataStart = 0;
+            if (format == ReplayFormat.CSV && size > 0) {
+                MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAX_LINE));
+                int end = indexOf(head, (byte) '\n', 0, head.limit());
+                if (end < 0 && head.limit() < size) {
+                    throw new IOException("CSV header is longer than " + MAX_LINE + " bytes");
+                }
+                int length = end < 0 ? head.limit() : end;
+                byte[] header = new byte[length];
+                head.get(0, header);
+                columns = ReplayFormat.parseHeader(stripCr(new String(header, StandardCharsets.UTF_8)));
+                dataStart = end < 0 ? size : end + 1;
+            }
+
+            long data = size - dataStart;
+            long segment = Math.max(MIN_SEGMENT, Math.min(MAX_SEGMENT, data / (threads * 8L) + 1));
+            int segments = (int) ((data + segment - 1) / segment);
+            AtomicInteger next = new AtomicInteger();
+            Semaphore inFlight = new Semaphore(maxInFlight);
+            String[] header = columns;
+            long first = dataStart;
+
+            ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "replay-worker");
+                t.setDaemon(true);
+                return t;
+            });
+            List<Future<?>> running = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                running.add(workers.submit(() -> {
+                    Worker worker = new Worker(summary, format, header, inFlight);
+                    for (int s; (s = next.getAndIncrement()) < segments; ) {
+                        long from = first + s * segment;
+                        worker.readSegment(channel, from, Math.min(size, from + segment), from > first, size);
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<?> worker : running) {
+                    worker.get();
+                }
+                inFlight.acquire(maxInFlight); // every payment has completed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying " + file, e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException("Replay failed", cause);
+            } finally {
+                workers.shutdownNow();
+            }
+            summary.finish(System.nanoTime() - start);
+            return summary;
+        }
+    }
+
+    // Reads lines into orders on one thread; byte[] and state are reused across segments
+    private final class Worker {
+        private final ReplaySummary summary;
+        private final ReplayFormat format;
+        private final String[] columns;
+        private final Semaphore inFlight;
+        private byte[] line = new byte[256];
+
+        Worker(ReplaySummary summary, ReplayFormat format, String[] columns, Semaphore inFlight) {
+            this.summary = summary;
+            this.format = format;
+            this.columns = columns;
+            this.inFlight = inFlight;
+        }
+
+        // Lines starting in [from, to); skipFirst when from may be in the middle of a line
+        void readSegment(FileChannel channel, long from, long to, boolean skipFirst, long size)
+                throws IOException, InterruptedException {
+            // One byte earlier, to see whether `from` starts a line
+            long mapFrom = skipFirst ? from - 1 : from;
+            long mapTo = Math.min(size, to + MAX_LINE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapFrom, mapTo - mapFrom);
+            int limit = buffer.limit();
+            int end = (int) (to - mapFrom);
+            int pos = 0;
+            if (skipFirst) {
+                int newline = indexOf(buffer, (byte) '\n', 0, limit);
+                if (newline < 0) return;
+                pos = newline + 1;
+            }
+            while (pos < end) {
+                int newline = indexOf(buffer, (byte) '\n', pos, limit);
+                if (newline < 0 && mapTo < size) {
+                    summary.malformed.increment();
+                    summary.problem(mapFrom + pos, "line longer than " + MAX_LINE + " bytes");
+                    return; // the lines after it start in later segments
+                }
+                int lineEnd = newline < 0 ? limit : newline;
+                process(buffer, pos, lineEnd - pos, mapFrom + pos);
+                pos = lineEnd + 1;
+            }
+        }
+
+        private void process(MappedByteBuffer buffer, int offset, int length, long fileOffset) throws InterruptedException {
+            if (length > line.length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            buffer.get(offset, line, 0, length);
+            String text = stripCr(new String(line, 0, length, StandardCharsets.UTF_8));
+            if (text.isBlank()) return;
+            summary.lines.increment();
+            ReplayOrder parsed;
+            try {
+                parsed = format == ReplayFormat.CSV ? ReplayFormat.parseCsv(text, columns) : ReplayFormat.parseJson(text);
+            } catch (RuntimeException e) {
+                summary.malformed.increment();
+                summary.problem(fileOffset, e.getMessage());
+                return;
+            }
+            inFlight.acquire();
+            long start = System.nanoTime();
+            CompletableFuture<Boolean> checkout;
+            Order order;
+            try {
+                order = place(parsed);
+                Payment payment = PaymentProcessor.createPayment(parsed.method, order.lockTotal(),
+                        order.getCustomer().getWallet(), parsed.details);
+                checkout = service.checkout(order, payment);
+            } catch (RuntimeException e) {
+                inFlight.release();
+                summary.rejected.increment();
+                summary.problem(fileOffset, e.getMessage());
+                return;
+            }
+            checkout.whenComplete((confirmed, error) -> {
+                summary.latency.recordSince(start);
+                if (error == null && confirmed) {
+                    summary.confirmed.increment();
+                    summary.confirmedBy.get(parsed.method).increment();
+                    summary.charged.add(order.getPayment().getAmount());
+                } else {
+                    summary.declined.increment();
+                    summary.declinedBy.get(parsed.method).increment();
+                    if (error != null) {
+                        summary.problem(fileOffset, error.getMessage());
+                    }
+                }
+                inFlight.release();
+            });
+        }
+    }
+
+    // A new order for the line's customer, filled the way the console fills a cart
+    private Order place(ReplayOrder line) {
+        Restaurant restaurant = restaurant(line.restaurant);
+        MenuSnapshot menu = restaurant.getMenuSnapshot();
+        CustomerSession session = service.signIn(line.name, line.phone, line.address);
+        Order order = new Order(session.getCustomer(), restaurant);
+        for (Map.Entry<String, Integer> entry : line.items.entrySet()) {
+            MenuItem item = menu.findByName(entry.getKey());
+            if (item == null) {
+                throw new NoSuchElementException("No menu item " + entry.getKey() + " at " + restaurant.getName());
+            }
+            order.addItem(item, entry.getValue());
+        }
+        if (line.distanceMeters > 0) {
+            order.setDeliveryDistanceMeters(line.distanceMeters);
+        }
+        if (line.coupon != null) {
+            order.applyCoupon(line.coupon);
+        }
+        return order;
+    }
+
+    private Restaurant restaurant(String name) {
+        if (name == null) {
+            if (restaurants.size() != 1) {
+                throw new IllegalArgumentException("restaurant is required when there are " + restaurants.size());
+            }
+            return restaurants.getRestaurants().iterator().next();
+        }
+        Restaurant restaurant = restaurants.findByName(name);
+        if (restaurant == null) {
+            throw new NoSuchElementException("No restaurant " + name);
+        }
+        return restaurant;
+    }
+
+    // Writes count orders against the given restaurants' menus; the same seed gives the same file
+    public static void generate(Path file, Collection<Restaurant> restaurants, long count, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<Restaurant> choices = new ArrayList<>(restaurants);
+        PaymentMethod[] methods = PaymentMethod.values();
+        StringBuilder line = new StringBuilder(256);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (long i = 0; i < count; i++) {
+                Restaurant restaurant = choices.get(random.nextInt(choices.size()));
+                List<MenuItem> menu = restaurant.getMenu();
+                // A few thousand regulars place most orders, as in production
+                long customer = random.nextInt(10) < 8 ? random.nextInt(5_000) : random.nextInt(1_000_000);
+                String phone = String.valueOf(9_800_000_000L + customer);
+                line.setLength(0);
+                line.append("{\"name\":");
+                Json.quote(line, "Customer " + customer).append(",\"phone\":");
+                Json.quote(line, phone).append(",\"address\":");
+                Json.quote(line, "Street " + customer % 500).append(",\"restaurant\":");
+                Json.quote(line, restaurant.getName()).append(",\"items\":{");
+                int lines = 1 + random.nextInt(4);
+                Set<String> picked = new HashSet<>();
+                for (int j = 0; j < lines; j++) {
+                    String item = menu.get(random.nextInt(menu.size())).getName();
+                    if (!picked.add(item)) continue;
+                    if (picked.size() > 1) line.append(',');
+                    Json.quote(line, item).append(':').append(1 + random.nextInt(3));
+                }
+                PaymentMethod method = methods[random.nextInt(methods.length)];
+                line.append("},\"method\":\"").append(method.name()).append('"');
+                if (method == PaymentMethod.CARD) {
+                    line.append(",\"cardNumber\":\"4111").append(String.format("%012d", customer))
+                            .append("\",\"cardHolderName\":");
+                    Json.quote(line, "Customer " + customer);
+                } else if (method == PaymentMethod.UPI) {
+                    line.append(",\"upiId\":\"").append(phone).append("@upi\"");
+                }
+                line.append(",\"distanceKm\":").append(1 + random.nextInt(8)).append("}\n");
+                out.append(line);
+            }
+        }
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String stripCr(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+}
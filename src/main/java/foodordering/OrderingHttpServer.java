@@ -0,0 +1,552 @@
+// Headless HTTP API over OrderingService, served by the JDK's built-in HttpServer
+//
+// Requests take their parameters from the query string or a form-encoded body; responses are JSON.
+// Ids are the base-36 strings shown on receipts and amounts are rupees with two decimals.
+//
+//   GET    /restaurants
+//   GET    /restaurants/{id}/menu
+//   GET    /restaurants/{id}/search?q=&category=&minPrice=&maxPrice=&limit=
+//   GET    /restaurants/{id}/stock     units left of each stocked item (others are unlimited)
+//   POST   /restaurants/{id}/stock     itemId, quantity (restocks) or units (sets the count)
+//   POST   /carts                      restaurantId, name, phone, address, distanceKm
+//                                       (returns the customer's open cart there if they have one)
+//   GET    /carts/{id}
+//   POST   /carts/{id}/items           itemId, quantity
+//   DELETE /carts/{id}/items/{itemId}
+//   POST   /carts/{id}/coupon          code
+//   DELETE /carts/{id}/coupon
+//   POST   /carts/{id}/checkout        method, cardNumber, cardHolderName, upiId
+//                                       (an Idempotency-Key header makes retries safe)
+//   GET    /orders/{id}
+//   GET    /orders/{id}/receipt        format=json (default) or text
+//   POST   /orders/{id}/cancel
+//   POST   /orders/{id}/refund         amount (defaults to everything not yet refunded)
+//   GET    /ledger                     reconciliation of the double-entry ledger
+//   GET    /analytics/categories       gross sales per category     from, to (yyyy-MM-ddTHH:mm, optional)
+//   GET    /analytics/items            best-selling items           from, to, limit
+//   GET    /analytics/payments         orders and amount per payment method   from, to
+//   GET    /analytics/hourly           orders per hour of the day   from, to
+//   GET    /live                       orders, payments and best sellers over the last 5, 15 and
+//                                       60 minutes; minutes (1 to 60) asks for one window, limit
+//   GET    /metrics                    Prometheus text format
+//   GET    /customers/{phone}          profile, wallet balance and open cart
+//   GET    /wallets/{phone}            404 until the customer has a wallet
+//   POST   /wallets/{phone}/topup      amount
+
+package foodordering;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+
+class OrderingHttpServer {
+    static {
+        // The JDK server writes a response's headers and body separately. With Nagle's algorithm on,
+        // the body waits for the client to acknowledge the headers, and a delayed ACK adds about
+        // 40 ms to every request. Read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final OrderingService service;
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+    // Menu JSON is built once per MenuSnapshot and reused until the catalog changes
+    private final ConcurrentHashMap<Long, CachedMenu> menuCache = new ConcurrentHashMap<>();
+
+    private static final class CachedMenu {
+        final MenuSnapshot snapshot;
+        final byte[] json;
+
+        CachedMenu(MenuSnapshot snapshot, byte[] json) {
+            this.snapshot = snapshot;
+            this.json = json;
+        }
+    }
+
+    // Handlers run on a bounded pool; when its queue is full the accepting thread runs the
+    // request itself, which slows down accepting new connections instead of dropping them.
+    public OrderingHttpServer(OrderingService service, int port, int threads) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 64), r -> {
+                    Thread t = new Thread(r, "http-worker");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            Map<String, String> params = params(exchange);
+            String method = exchange.getRequestMethod();
+            switch (path[0]) {
+                case "restaurants":
+                    handleRestaurants(exchange, method, path, params);
+                    break;
+                case "carts":
+                    handleCarts(exchange, method, path, params);
+                    break;
+                case "orders":
+                    handleOrders(exchange, method, path, params);
+                    break;
+                case "customers":
+                    handleCustomers(exchange, method, path);
+                    break;
+                case "wallets":
+                    handleWallets(exchange, method, path, params);
+                    break;
+                case "ledger":
+                    handleLedger(exchange, method, path);
+                    break;
+                case "analytics":
+                    handleAnalytics(exchange, method, path, params);
+                    break;
+                case "live":
+                    handleLive(exchange, method, path, params);
+                    break;
+                case "metrics":
+                    requireMethod(method, "GET");
+                    send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8",
+                            Metrics.DEFAULT.render().getBytes(StandardCharsets.UTF_8));
+                    break;
+                default:
+                    throw new NoSuchElementException("Unknown resource");
+            }
+        } catch (Exception e) {
+            sendError(exchange, e);
+        }
+    }
+
+    private void handleRestaurants(HttpExchange exchange, String method, String[] path, Map<String, String> params) {
+        if (path.length == 3 && path[2].equals("stock")) {
+            handleStock(exchange, method, IdGenerator.parse(path[1]), params);
+            return;
+        }
+        requireMethod(method, "GET");
+        if (path.length == 1) {
+            StringBuilder json = new StringBuilder("[");
+            for (Restaurant restaurant : service.getRestaurants()) {
+                if (json.length() > 1) json.append(',');
+                json.append("{\"id\":");
+                Json.quote(json, IdGenerator.format(restaurant.getId())).append(",\"name\":");
+                Json.quote(json, restaurant.getName()).append('}');
+            }
+            send(exchange, 200, json.append(']'));
+            return;
+        }
+        Restaurant restaurant = service.getRestaurant(IdGenerator.parse(path[1]));
+        if (path.length == 3 && path[2].equals("menu")) {
+            send(exchange, 200, menuJson(restaurant));
+        } else if (path.length == 3 && path[2].equals("search")) {
+            SearchResult result = restaurant.search(params.getOrDefault("q", ""), params.get("category"),
+                    params.containsKey("minPrice") ? Money.parse(params.get("minPrice")) : 0,
+                    params.containsKey("maxPrice") ? Money.parse(params.get("maxPrice")) : Long.MAX_VALUE,
+                    Integer.parseInt(params.getOrDefault("limit", "20")));
+            MenuSnapshot menu = restaurant.getMenuSnapshot();
+            StringBuilder json = new StringBuilder("{\"totalHits\":").append(result.getTotalHits()).append(",\"items\":[");
+            boolean first = true;
+            for (MenuItem item : result.getItems()) {
+                if (!first) json.append(',');
+                first = false;
+                OrderRenderer.menuItemJson(json, item, menu.numberOf(item));
+            }
+            json.append("],\"categories\":{");
+            first = true;
+            for (Map.Entry<String, Integer> facet : result.getCategoryCounts().entrySet()) {
+                if (!first) json.append(',');
+                first = false;
+                Json.quote(json, facet.getKey()).append(':').append(facet.getValue());
+            }
+            send(exchange, 200, json.append("}}"));
+        } else {
+            throw new NoSuchElementException("Unknown resource");
+        }
+    }
+
+    private void handleStock(HttpExchange exchange, String method, long restaurantId, Map<String, String> params) {
+        Inventory inventory = service.getInventory();
+        if (method.equals("POST")) {
+            MenuItem item = service.getMenuItem(restaurantId, IdGenerator.parse(required(params, "itemId")));
+            if (params.containsKey("units")) {
+                inventory.setStock(item, Long.parseLong(params.get("units")));
+            } else {
+                inventory.restock(item, Long.parseLong(required(params, "quantity")));
+            }
+        } else {
+            requireMethod(method, "GET");
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (MenuItem item : service.getRestaurant(restaurantId).getMenu()) {
+            if (!inventory.isTracked(item)) continue;
+            if (json.length() > 1) json.append(',');
+            json.append("{\"itemId\":");
+            Json.quote(json, IdGenerator.format(item.getId())).append(",\"name\":");
+            Json.quote(json, item.getName()).append(",\"available\":").append(inventory.getAvailable(item)).append('}');
+        }
+        send(exchange, 200, json.append(']'));
+    }
+
+    private void handleCarts(HttpExchange exchange, String method, String[] path, Map<String, String> params) {
+        if (path.length == 1) {
+            requireMethod(method, "POST");
+            long distanceMeters = params.containsKey("distanceKm")
+                    ? Math.round(Double.parseDouble(params.get("distanceKm")) * 1000) : 0;
+            Order order = service.openCart(IdGenerator.parse(required(params, "restaurantId")),
+                    required(params, "name"), required(params, "phone"), params.getOrDefault("address", ""), distanceMeters);
+            send(exchange, 201, cartJson(order));
+            return;
+        }
+        long orderId = IdGenerator.parse(path[1]);
+        if (path.length == 2) {
+            requireMethod(method, "GET");
+            send(exchange, 200, cartJson(service.getCart(orderId)));
+        } else if (path[2].equals("items") && path.length == 3) {
+            requireMethod(method, "POST");
+            Order order = service.addToCart(orderId, IdGenerator.parse(required(params, "itemId")),
+                    Integer.parseInt(params.getOrDefault("quantity", "1")));
+            send(exchange, 200, cartJson(order));
+        } else if (path[2].equals("items") && path.length == 4) {
+            requireMethod(method, "DELETE");
+            send(exchange, 200, cartJson(service.removeFromCart(orderId, IdGenerator.parse(path[3]))));
+        } else if (path[2].equals("coupon") && path.length == 3) {
+            if (method.equals("DELETE")) {
+                send(exchange, 200, cartJson(service.removeCoupon(orderId)));
+            } else {
+                requireMethod(method, "POST");
+                send(exchange, 200, cartJson(service.applyCoupon(orderId, required(params, "code"))));
+            }
+        } else if (path[2].equals("checkout") && path.length == 3) {
+            requireMethod(method, "POST");
+            PaymentMethod paymentMethod = PaymentMethod.valueOf(required(params, "method").toUpperCase());
+            String idempotencyKey = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            Order order;
+            CompletableFuture<Boolean> result;
+            if (idempotencyKey == null) {
+                order = service.getCart(orderId);
+                result = service.checkout(orderId, paymentMethod, params);
+            } else {
+                OrderingService.Checkout checkout = service.checkout(orderId, paymentMethod, params, idempotencyKey);
+                order = checkout.getOrder();
+                result = checkout.getResult();
+            }
+            // Answered from whichever thread completes the payment; no worker waits on the gateway
+            result.whenComplete((confirmed, error) -> {
+                if (error != null) {
+                    sendError(exchange, error instanceof CompletionException ? error.getCause() : error);
+                } else {
+                    send(exchange, confirmed ? 200 : 402, cartJson(order));
+                }
+            });
+        } else {
+            throw new NoSuchElementException("Unknown resource");
+        }
+    }
+
+    private void handleOrders(HttpExchange exchange, String method, String[] path, Map<String, String> params) {
+        if (path.length == 2) {
+            requireMethod(method, "GET");
+            send(exchange, 200, cartJson(service.getOrder(IdGenerator.parse(path[1]))));
+        } else if (path.length == 3 && path[2].equals("receipt")) {
+            requireMethod(method, "GET");
+            RenderFormat format = RenderFormat.parse(params.get("format"), RenderFormat.JSON);
+            RenderBuffer buffer = RenderBuffer.get();
+            OrderRenderer.receipt(buffer.text(), service.getOrder(IdGenerator.parse(path[1])), format);
+            send(exchange, 200, format.getContentType(), buffer.toByteArray());
+        } else if (path.length == 3 && path[2].equals("cancel")) {
+            requireMethod(method, "POST");
+            send(exchange, 200, cartJson(service.cancelOrder(IdGenerator.parse(path[1]))));
+        } else if (path.length == 3 && path[2].equals("refund")) {
+            requireMethod(method, "POST");
+            long orderId = IdGenerator.parse(path[1]);
+            long amount = params.containsKey("amount")
+                    ? Money.parse(params.get("amount"))
+                    : service.getOrder(orderId).getPayment().getRefundableAmount();
+            send(exchange, 200, cartJson(service.refund(orderId, amount)));
+        } else {
+            throw new NoSuchElementException("Unknown resource");
+        }
+    }
+
+    private void handleLedger(HttpExchange exchange, String method, String[] path) {
+        if (path.length != 1) {
+            throw new NoSuchElementException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        LedgerReconciliation result = service.reconcileLedger();
+        StringBuilder json = new StringBuilder("{\"balanced\":").append(result.isBalanced())
+                .append(",\"entries\":").append(result.getEntries())
+                .append(",\"accounts\":").append(result.getAccounts())
+                .append(",\"imbalance\":");
+        Money.appendTo(json, result.getImbalance());
+        json.append(",\"mismatchedAccounts\":[");
+        for (int i = 0; i < result.getMismatchedAccounts().size(); i++) {
+            if (i > 0) json.append(',');
+            Json.quote(json, result.getMismatchedAccounts().get(i));
+        }
+        json.append("],\"millis\":").append(result.getNanos() / 1_000_000.0).append('}');
+        send(exchange, 200, json);
+    }
+
+    private void handleAnalytics(HttpExchange exchange, String method, String[] path, Map<String, String> params) {
+        if (path.length != 2) {
+            throw new NoSuchElementException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        OrderAnalytics analytics = service.getAnalytics();
+        LocalDateTime from = dateTime(params, "from");
+        LocalDateTime to = dateTime(params, "to");
+        StringBuilder json = new StringBuilder(256);
+        switch (path[1]) {
+            case "categories":
+                json.append('{');
+                for (Map.Entry<String, Long> category : analytics.revenueByCategory(from, to).entrySet()) {
+                    if (json.length() > 1) json.append(',');
+                    Json.quote(json, category.getKey()).append(':');
+                    Money.appendTo(json, category.getValue());
+                }
+                json.append('}');
+                break;
+            case "items":
+                json.append('[');
+                for (ItemSales item : analytics.topItems(Integer.parseInt(params.getOrDefault("limit", "10")), from, to)) {
+                    if (json.length() > 1) json.append(',');
+                    json.append("{\"name\":");
+                    Json.quote(json, item.getName()).append(",\"category\":");
+                    Json.quote(json, item.getCategory()).append(",\"quantity\":").append(item.getQuantity()).append(",\"revenue\":");
+                    Money.appendTo(json, item.getRevenue()).append('}');
+                }
+                json.append(']');
+                break;
+            case "payments":
+                PaymentMix mix = analytics.paymentMix(from, to);
+                json.append('{');
+                for (PaymentMethod paymentMethod : PaymentMethod.values()) {
+                    if (json.length() > 1) json.append(',');
+                    Json.quote(json, paymentMethod.name()).append(":{\"orders\":").append(mix.getOrders(paymentMethod))
+                            .append(",\"amount\":");
+                    Money.appendTo(json, mix.getAmount(paymentMethod)).append('}');
+                }
+                json.append('}');
+                break;
+            case "hourly":
+                json.append(Arrays.toString(analytics.ordersByHour(from, to)).replace(" ", ""));
+                break;
+            default:
+                throw new NoSuchElementException("Unknown report " + path[1]);
+        }
+        send(exchange, 200, json);
+    }
+
+    private void handleLive(HttpExchange exchange, String method, String[] path, Map<String, String> params) {
+        if (path.length != 1) {
+            throw new NoSuchElementException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        int limit = Integer.parseInt(params.getOrDefault("limit", "10"));
+        int[] windows = params.containsKey("minutes")
+                ? new int[] {Integer.parseInt(params.get("minutes"))}
+                : LiveStats.WINDOWS;
+        StringBuilder json = new StringBuilder(1024).append('[');
+        for (int minutes : windows) {
+            LiveWindow window = service.getLiveStats().window(minutes, limit);
+            if (json.length() > 1) json.append(',');
+            json.append("{\"minutes\":").append(minutes)
+                    .append(",\"orders\":").append(window.getOrders())
+                    .append(",\"ordersPerMinute\":").append(Math.round(window.getOrdersPerMinute() * 100) / 100.0)
+                    .append(",\"averageBasket\":");
+            Money.appendTo(json, window.getAverageBasket()).append(",\"payments\":{");
+            for (PaymentMethod paymentMethod : PaymentMethod.values()) {
+                if (paymentMethod.ordinal() > 0) json.append(',');
+                Json.quote(json, paymentMethod.name()).append(":{\"attempts\":").append(window.getAttempts(paymentMethod))
+                        .append(",\"failures\":").append(window.getFailures(paymentMethod))
+                        .append(",\"failureRate\":").append(Math.round(window.getFailureRate(paymentMethod) * 10_000) / 10_000.0)
+                        .append('}');
+            }
+            json.append("},\"topItems\":[");
+            int first = json.length();
+            for (TrendingItem item : window.getTopItems()) {
+                if (json.length() > first) json.append(',');
+                json.append("{\"name\":");
+                Json.quote(json, item.getName()).append(",\"quantity\":").append(item.getQuantity()).append('}');
+            }
+            json.append("]}");
+        }
+        json.append(']');
+        send(exchange, 200, json);
+    }
+
+    private void handleCustomers(HttpExchange exchange, String method, String[] path) {
+        if (path.length != 2) {
+            throw new NoSuchElementException("Unknown resource");
+        }
+        requireMethod(method, "GET");
+        CustomerSession session = service.getCustomer(path[1]);
+        Customer customer = session.getCustomer();
+        Order cart = session.getCart();
+        StringBuilder json = new StringBuilder("{\"phone\":");
+        Json.quote(json, customer.getPhone()).append(",\"name\":");
+        Json.quote(json, customer.getName()).append(",\"address\":");
+        Json.quote(json, customer.getAddress()).append(",\"balance\":");
+        Money.appendTo(json, customer.getWallet().getBalance());
+        json.append(",\"cartId\":");
+        if (cart == null) {
+            json.append("null");
+        } else {
+            Json.quote(json, IdGenerator.format(cart.getOrderId()));
+        }
+        send(exchange, 200, json.append('}'));
+    }
+
+    private void handleWallets(HttpExchange exchange, String method, String[] path, Map<String, String> params) {
+        if (path.length < 2) {
+            throw new NoSuchElementException("Unknown resource");
+        }
+        String phone = path[1];
+        long balance;
+        if (path.length == 2) {
+            requireMethod(method, "GET");
+            balance = service.getWallet(phone).getBalance();
+        } else if (path.length == 3 && path[2].equals("topup")) {
+            requireMethod(method, "POST");
+            balance = service.topUp(phone, Money.parse(required(params, "amount")));
+        } else {
+            throw new NoSuchElementException("Unknown resource");
+        }
+        StringBuilder json = new StringBuilder("{\"phone\":");
+        Json.quote(json, phone).append(",\"balance\":");
+        Money.appendTo(json, balance);
+        send(exchange, 200, json.append('}'));
+    }
+
+    private byte[] menuJson(Restaurant restaurant) {
+        MenuSnapshot menu = restaurant.getMenuSnapshot();
+        CachedMenu cached = menuCache.get(restaurant.getId());
+        if (cached != null && cached.snapshot == menu) {
+            return cached.json;
+        }
+        RenderBuffer buffer = RenderBuffer.get();
+        OrderRenderer.menu(buffer.text(), restaurant.getName(), menu, RenderFormat.JSON);
+        byte[] bytes = buffer.toByteArray();
+        menuCache.put(restaurant.getId(), new CachedMenu(menu, bytes));
+        return bytes;
+    }
+
+    private static StringBuilder cartJson(Order order) {
+        return OrderRenderer.cart(new StringBuilder(256), order, RenderFormat.JSON);
+    }
+
+    private static void requireMethod(String actual, String expected) {
+        if (!actual.equals(expected)) {
+            throw new UnsupportedOperationException(actual + " not allowed, expected " + expected);
+        }
+    }
+
+    private static String required(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(key + " is required");
+        }
+        return value;
+    }
+
+    private static LocalDateTime dateTime(Map<String, String> params, String key) {
+        String value = params.get(key);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(key + " must look like 2024-01-31T18:00");
+        }
+    }
+
+    private static Map<String, String> params(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readAllBytes();
+            if (bytes.length > 0) {
+                parseForm(new String(bytes, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> into) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            into.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, Throwable error) {
+        int status;
+        if (error instanceof NoSuchElementException) {
+            status = 404;
+        } else if (error instanceof UnsupportedOperationException) {
+            status = 405;
+        } else if (error instanceof IllegalStateException) {
+            status = 409;
+        } else if (error instanceof IllegalArgumentException) {
+            status = 400; // includes NumberFormatException and bad enum names
+        } else {
+            status = 500;
+        }
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.quote(json, String.valueOf(error.getMessage()));
+        send(exchange, status, json.append('}'));
+    }
+
+    private static void send(HttpExchange exchange, int status, CharSequence json) {
+        send(exchange, status, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) {
+        send(exchange, status, "application/json; charset=utf-8", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            exchange.close(); // client went away
+        }
+    }
+}
@@ -0,0 +1,465 @@
+// Ordering operations shared by the console and the HTTP API
+//
+// Nothing here reads from System.in: customer and payment details arrive as arguments, and open
+// carts are kept with their customer's session and found by order id, so any number of customers
+// can be served at the same time.
+
+package foodordering;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+class OrderingService {
+    static final int IDEMPOTENCY_CAPACITY = 100_000;
+    static final Duration IDEMPOTENCY_TTL = Duration.ofHours(24);
+    // Well past any payment's deadline, so a reservation only expires if its payment is lost
+    static final Duration STOCK_HOLD = Duration.ofMinutes(2);
+    private static final EnumMap<PaymentMethod, LatencyHistogram> CHECKOUT_LATENCY =
+            Metrics.DEFAULT.histograms("checkout_seconds", "method", PaymentMethod.class);
+    // Where checkout time goes: the payment itself, saving the order, handing it to the restaurant
+    private static final LatencyHistogram PAYMENT_STAGE = Metrics.DEFAULT.histogram(Metrics.key("checkout_stage_seconds", "stage", "payment"));
+    private static final LatencyHistogram PERSIST_STAGE = Metrics.DEFAULT.histogram(Metrics.key("checkout_stage_seconds", "stage", "persist"));
+    private static final LatencyHistogram DISPATCH_STAGE = Metrics.DEFAULT.histogram(Metrics.key("checkout_stage_seconds", "stage", "dispatch"));
+    private static final Counter CONFIRMED = Metrics.DEFAULT.counter(Metrics.key("checkouts_total", "result", "confirmed"));
+    private static final Counter DECLINED = Metrics.DEFAULT.counter(Metrics.key("checkouts_total", "result", "declined"));
+    private static final Counter PERSIST_FAILURES = Metrics.DEFAULT.counter(Metrics.key("checkouts_total", "result", "not_saved"));
+    private static final EnumMap<PaymentMethod, Counter> REFUNDS = Metrics.DEFAULT.counters("refunds_total", "method", PaymentMethod.class);
+
+    // Delivered and cancelled orders kept around for tracking and late refunds
+    static final int RECENT_ORDERS = 10_000;
+    // Confirming a paid order waits on the log's fsync, so more threads make bigger group commits
+    static final int CONFIRMATION_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    // A keyed checkout, shared by every request that repeats the key
+    static final class Checkout {
+        private final Order order;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Checkout(Order order) {
+            this.order = order;
+        }
+
+        public Order getOrder() { return order; }
+        public CompletableFuture<Boolean> getResult() { return result; }
+    }
+
+    private final RestaurantRegistry restaurants;
+    private final WalletStore wallets;
+    private final PaymentProcessor payments;
+    private final DurableStore store; // null when running without persistence
+    private final OrderPipeline pipeline;
+    private final Ledger ledger;
+    private final CustomerSessionStore sessions;
+    private final OrderAnalytics analytics = new OrderAnalytics();
+    private final LiveStats liveStats = new LiveStats();
+    private final Inventory inventory = new Inventory(STOCK_HOLD);
+    private final Set<Long> checkoutsInFlight = ConcurrentHashMap.newKeySet();
+    // Confirmed orders until they are delivered or cancelled
+    private final ConcurrentHashMap<Long, Order> activeOrders = new ConcurrentHashMap<>();
+    private final Map<Long, Order> recentOrders = Collections.synchronizedMap(new LinkedHashMap<Long, Order>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Order> eldest) {
+            return size() > RECENT_ORDERS;
+        }
+    });
+    private final IdempotencyCache<Checkout> checkoutsByKey = new IdempotencyCache<>(IDEMPOTENCY_CAPACITY, IDEMPOTENCY_TTL);
+    // Runs everything after a successful payment, off the thread that completed the payment
+    private final ExecutorService confirmations = Executors.newFixedThreadPool(CONFIRMATION_THREADS, runnable -> {
+        Thread t = new Thread(runnable, "checkout-confirm");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public OrderingService(RestaurantRegistry restaurants, WalletStore wallets, PaymentProcessor payments,
+                           DurableStore store, OrderPipeline pipeline, Ledger ledger) {
+        this(restaurants, wallets, payments, store, pipeline, ledger, null);
+    }
+
+    // Sessions beyond CustomerSessionStore.DEFAULT_CAPACITY are written back to sessionFiles;
+    // without it every session stays in memory
+    public OrderingService(RestaurantRegistry restaurants, WalletStore wallets, PaymentProcessor payments,
+                           DurableStore store, OrderPipeline pipeline, Ledger ledger, FileSessionStore sessionFiles) {
+        this.sessions = new CustomerSessionStore(restaurants, wallets, sessionFiles, CustomerSessionStore.DEFAULT_CAPACITY,
+                order -> checkoutsInFlight.contains(order.getOrderId()));
+        this.restaurants = restaurants;
+        this.wallets = wallets;
+        this.payments = payments;
+        this.store = store;
+        this.pipeline = pipeline;
+        this.ledger = ledger;
+        pipeline.getEvents().subscribe(OrderStatus.CONFIRMED, event -> analytics.record(event.getOrder()));
+        pipeline.getEvents().subscribe(OrderStatus.CONFIRMED, event -> liveStats.recordOrder(event.getOrder()));
+        payments.onAttempt(liveStats::recordPayment);
+        pipeline.getEvents().subscribe(OrderStatus.DELIVERED, event -> retire(event.getOrder()));
+        pipeline.getEvents().subscribe(OrderStatus.CANCELLED, event -> retire(event.getOrder()));
+    }
+
+    public Collection<Restaurant> getRestaurants() {
+        return restaurants.getRestaurants();
+    }
+
+    public Restaurant getRestaurant(long restaurantId) {
+        Restaurant restaurant = restaurants.get(restaurantId);
+        if (restaurant == null) {
+            throw new NoSuchElementException("No restaurant " + IdGenerator.format(restaurantId));
+        }
+        return restaurant;
+    }
+
+    public Order openCart(long restaurantId, String name, String phone, String address) {
+        return openCart(restaurantId, name, phone, address, 0);
+    }
+
+    // A customer has one open cart: opening another at the same restaurant resumes it, including
+    // a cart parked on disk since their last visit
+    public Order openCart(long restaurantId, String name, String phone, String address, long deliveryDistanceMeters) {
+        Restaurant restaurant = getRestaurant(restaurantId);
+        Order order = sessions.openCart(name, phone, address, restaurant);
+        if (deliveryDistanceMeters > 0 || order.isEmpty()) {
+            synchronized (order) {
+                order.setDeliveryDistanceMeters(deliveryDistanceMeters);
+            }
+        }
+        return order;
+    }
+
+    // Returns the customer's session, starting one for a new customer
+    public CustomerSession signIn(String name, String phone, String address) {
+        return sessions.signIn(name, phone, address);
+    }
+
+    public CustomerSession getCustomer(String phone) {
+        CustomerSession session = sessions.find(phone);
+        if (session == null) {
+            throw new NoSuchElementException("No customer " + phone);
+        }
+        return session;
+    }
+
+    public Order getCart(long orderId) {
+        Order order = sessions.getCart(orderId);
+        if (order == null) {
+            throw new NoSuchElementException("No open cart " + IdGenerator.format(orderId));
+        }
+        return order;
+    }
+
+    public void discardCart(long orderId) {
+        Order order = getCart(orderId);
+        requireEditable(order);
+        sessions.closeCart(order);
+    }
+
+    public Order addToCart(long orderId, long itemId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be greater than 0");
+        }
+        return editCart(orderId, order -> {
+            MenuItem item = findItem(order, itemId);
+            inventory.checkAvailable(item, order.getQuantity(item) + quantity);
+            order.addItem(item, quantity);
+        });
+    }
+
+    public Order removeFromCart(long orderId, long itemId) {
+        return editCart(orderId, order -> order.removeItem(findItem(order, itemId)));
+    }
+
+    public Order applyCoupon(long orderId, String code) {
+        return editCart(orderId, order -> order.applyCoupon(code));
+    }
+
+    public Order removeCoupon(long orderId) {
+        return editCart(orderId, Order::removeCoupon);
+    }
+
+    public CompletableFuture<Boolean> checkout(long orderId, PaymentMethod method, Map<String, String> details) {
+        while (true) {
+            Order order = getCart(orderId);
+            Payment payment;
+            StockReservation reservation;
+            synchronized (order) {
+                if (!sessions.isOpen(order)) continue; // parked since the lookup
+                if (order.isEmpty()) {
+                    throw new IllegalStateException("Cart is empty");
+                }
+                // Marked in flight under the cart's lock, so it cannot be parked while it is paid for
+                reservation = beginCheckout(order, method);
+                try {
+                    payment = PaymentProcessor.createPayment(method, order.lockTotal(), order.getCustomer().getWallet(), details);
+                } catch (RuntimeException e) {
+                    reservation.release();
+                    checkoutsInFlight.remove(orderId);
+                    throw e;
+                }
+            }
+            return runCheckout(order, payment, reservation);
+        }
+    }
+
+    // Repeats of idempotencyKey get the first request's checkout back, even after the cart has closed,
+    // so a client retrying a slow payment is never charged twice
+    public Checkout checkout(long orderId, PaymentMethod method, Map<String, String> details, String idempotencyKey) {
+        Checkout original = checkoutsByKey.get(idempotencyKey);
+        if (original == null) {
+            Checkout checkout = new Checkout(getCart(orderId));
+            original = checkoutsByKey.putIfAbsent(idempotencyKey, checkout);
+            if (original == null) {
+                try {
+                    checkout(orderId, method, details).whenComplete((confirmed, error) -> {
+                        if (error != null) {
+                            checkout.result.completeExceptionally(error);
+                        } else {
+                            checkout.result.complete(confirmed);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // Rejected before any payment started; repeats already holding this checkout get
+                    // the same rejection, and the key may be used again
+                    checkout.result.completeExceptionally(e);
+                    checkoutsByKey.remove(idempotencyKey, checkout);
+                    throw e;
+                }
+                return checkout;
+            }
+        }
+        if (original.order.getOrderId() != orderId) {
+            throw new IllegalArgumentException("Idempotency key was already used for order "
+                    + IdGenerator.format(original.order.getOrderId()));
+        }
+        return original;
+    }
+
+    // Runs the payment; once it succeeds the order is persisted, closed as a cart, sent to its
+    // restaurant and announced as CONFIRMED so the kitchen picks it up
+    public CompletableFuture<Boolean> checkout(Order order, Payment payment) {
+        StockReservation reservation;
+        synchronized (order) {
+            reservation = beginCheckout(order, payment.getMethod());
+        }
+        return runCheckout(order, payment, reservation);
+    }
+
+    // Stocked items are reserved last, once nothing else can turn the checkout away
+    private StockReservation beginCheckout(Order order, PaymentMethod method) {
+        if (!payments.isAvailable(method)) {
+            throw new IllegalStateException(method + " payments are temporarily unavailable; try " + payments.fallbacksFor(method));
+        }
+        if (!pipeline.isAcceptingOrders()) {
+            throw new IllegalStateException("The kitchen is full right now; try again in a few minutes");
+        }
+        if (!checkoutsInFlight.add(order.getOrderId())) {
+            throw new IllegalStateException("Checkout already in progress for order " + IdGenerator.format(order.getOrderId()));
+        }
+        try {
+            return inventory.reserve(order);
+        } catch (RuntimeException e) {
+            checkoutsInFlight.remove(order.getOrderId());
+            throw e;
+        }
+    }
+
+    // The reservation is committed once the paid order is saved, and released if it is not.
+    // Saving and announcing the order block on disk, so they run on the confirmation pool and the
+    // payment and settlement threads are free for the next payment.
+    private CompletableFuture<Boolean> runCheckout(Order order, Payment payment, StockReservation reservation) {
+        long orderId = order.getOrderId();
+        PaymentMethod method = payment.getMethod();
+        long start = Metrics.startTimer();
+        return order.processPaymentAsync(payment, payments)
+                .thenApplyAsync(confirmed -> {
+                    PAYMENT_STAGE.recordSince(start);
+                    if (confirmed) {
+                        long persistStart = Metrics.startTimer();
+                        persist(order, payment);
+                        PERSIST_STAGE.recordSince(persistStart);
+                        reservation.commit();
+                        ledger.post(LedgerEntryType.PAYMENT, orderId, paymentAccount(order), Ledger.SALES, payment.getAmount());
+                        long dispatchStart = Metrics.startTimer();
+                        sessions.closeCart(order);
+                        activeOrders.put(orderId, order);
+                        restaurants.route(order);
+                        pipeline.getEvents().publish(new OrderEvent(order, OrderStatus.PENDING, OrderStatus.CONFIRMED));
+                        DISPATCH_STAGE.recordSince(dispatchStart);
+                    } else if (payment.getStatus() == PaymentStatus.OVERLOADED) {
+                        // Never reached the gateway, so this is not a decline; the cart can be paid again
+                        throw new IllegalStateException(method + " payments are busy right now; try again in a moment");
+                    }
+                    (confirmed ? CONFIRMED : DECLINED).increment();
+                    CHECKOUT_LATENCY.get(method).recordSince(start);
+                    return confirmed;
+                }, confirmations)
+                .whenComplete((confirmed, error) -> {
+                    if (error != null || !confirmed) {
+                        reservation.release();
+                        synchronized (order) {
+                            order.unlockTotal();
+                        }
+                    }
+                    checkoutsInFlight.remove(orderId);
+                });
+    }
+
+    public Order getOrder(long orderId) {
+        Order order = activeOrders.get(orderId);
+        if (order == null) {
+            order = recentOrders.get(orderId);
+        }
+        if (order == null) {
+            throw new NoSuchElementException("No order " + IdGenerator.format(orderId));
+        }
+        return order;
+    }
+
+    // Cancelling returns whatever has not been refunded yet
+    public Order cancelOrder(long orderId) {
+        Order order = getOrder(orderId);
+        pipeline.cancel(order);
+        long remaining = order.getPayment().getRefundableAmount();
+        if (remaining > 0) {
+            refund(order, remaining);
+        }
+        return order;
+    }
+
+    // Full or partial refund through the order's original payment method
+    public Order refund(long orderId, long amount) {
+        Order order = getOrder(orderId);
+        refund(order, amount);
+        return order;
+    }
+
+    private void refund(Order order, long amount) {
+        order.getPayment().refund(amount);
+        ledger.post(LedgerEntryType.REFUND, order.getOrderId(), Ledger.SALES, paymentAccount(order), amount);
+        REFUNDS.get(order.getPayment().getMethod()).increment();
+    }
+
+    public LedgerReconciliation reconcileLedger() {
+        return ledger.reconcile();
+    }
+
+    // Sales reports over every order confirmed since startup, plus those recovered from storage
+    public OrderAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    // Stock counts and reservations; items without a count are unlimited
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    public MenuItem getMenuItem(long restaurantId, long itemId) {
+        MenuItem item = getRestaurant(restaurantId).getMenuSnapshot().findById(itemId);
+        if (item == null) {
+            throw new NoSuchElementException("No menu item " + IdGenerator.format(itemId));
+        }
+        return item;
+    }
+
+    // Orders, payments and best sellers over the last hour, minute by minute
+    public LiveStats getLiveStats() {
+        return liveStats;
+    }
+
+    // Looking a wallet up never opens one; only a customer's first cart or top-up does
+    public Wallet getWallet(String phone) {
+        Wallet wallet = wallets.find(phone);
+        if (wallet == null) {
+            throw new NoSuchElementException("No wallet for " + phone);
+        }
+        return wallet;
+    }
+
+    public long topUp(String phone, long amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("Amount must be greater than 0");
+        }
+        Wallet wallet = wallets.walletFor(phone);
+        wallet.addBalance(amount);
+        return wallet.getBalance();
+    }
+
+    // Lets confirmations already under way finish, then stops the stock hold timer
+    public void shutdown() {
+        confirmations.shutdown();
+        try {
+            confirmations.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inventory.shutdown();
+    }
+
+    // Writes sessions still in memory to disk; on shutdown
+    public void closeSessions() {
+        sessions.flush();
+    }
+
+    public CustomerSessionStore getSessions() {
+        return sessions;
+    }
+
+    private void retire(Order order) {
+        recentOrders.put(order.getOrderId(), order);
+        activeOrders.remove(order.getOrderId());
+        restaurants.complete(order);
+    }
+
+    private static String paymentAccount(Order order) {
+        PaymentMethod method = order.getPayment().getMethod();
+        return method == PaymentMethod.WALLET
+                ? Ledger.walletAccount(order.getCustomer().getPhone())
+                : Ledger.settlementAccount(method);
+    }
+
+    // Runs an edit under the cart's lock. Eviction can park an idle cart between the lookup and the
+    // lock; the edit then goes to the cart brought back by the next lookup.
+    private Order editCart(long orderId, Consumer<Order> edit) {
+        while (true) {
+            Order order = getCart(orderId);
+            synchronized (order) {
+                if (!sessions.isOpen(order)) continue;
+                requireEditable(order);
+                edit.accept(order);
+                return order;
+            }
+        }
+    }
+
+    private void requireEditable(Order order) {
+        if (checkoutsInFlight.contains(order.getOrderId())) {
+            throw new IllegalStateException("Cart is being checked out");
+        }
+    }
+
+    private MenuItem findItem(Order order, long itemId) {
+        return getMenuItem(order.getRestaurantId(), itemId);
+    }
+
+    // A paid order that cannot be saved would be lost on restart, so it is not kept: the payment
+    // is refunded, the order cancelled and the checkout fails with the error
+    private void persist(Order order, Payment payment) {
+        if (store == null) return;
+        try {
+            store.orderConfirmed(order);
+        } catch (IOException e) {
+            UncheckedIOException failure = new UncheckedIOException("Order " + IdGenerator.format(order.getOrderId())
+                    + " could not be saved; the payment has been refunded", e);
+            try {
+                payment.refund(payment.getAmount());
+                REFUNDS.get(payment.getMethod()).increment();
+            } catch (RuntimeException refundFailure) {
+                failure.addSuppressed(refundFailure);
+            }
+            order.transitionTo(OrderStatus.CANCELLED);
+            sessions.closeCart(order);
+            PERSIST_FAILURES.increment();
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+// Protection around external payment gateways
+//
+// PaymentProcessor keeps one CircuitBreaker and one AdaptiveConcurrencyLimit per gateway-backed
+// payment method:
+//
+//   - the breaker watches the outcome of recent calls and, once too many of them fail, rejects
+//     new payments for that method straight away for a cool-down period, then lets a few probe
+//     calls through to decide whether to close again;
+//   - the limit caps how many payments may be waiting on the gateway at once. It grows by about
+//     one for every limit's worth of fast answers and halves on a timeout or a slow answer
+//     (additive increase, multiplicative decrease), so a gateway that slows down gets less
+//     traffic instead of holding on to ever more in-flight work. Payments over the limit wait
+//     in line for a permit until their deadline, and are only shed as OVERLOADED if it passes.
+//
+// A breaker opening or closing again is counted and passed to its BreakerListeners; printing it
+// is up to the console.
+
+package foodordering;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+enum CircuitState {
+    CLOSED, OPEN, HALF_OPEN
+}
+
+interface BreakerListener {
+    // state is OPEN when the breaker starts turning calls away and CLOSED when it lets them through again
+    void onStateChange(String breaker, CircuitState state);
+}
+
+class CircuitBreaker {
+    private final String name;
+    private final Counter opened;
+    private final Counter closed;
+    private final List<BreakerListener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean[] window; // true marks a failure
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+
+    // Guarded by this
+    private CircuitState state = CircuitState.CLOSED;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   long openMillis, int halfOpenProbes) {
+        this.name = name;
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openMillis * 1_000_000;
+        this.halfOpenProbes = halfOpenProbes;
+        this.opened = Metrics.DEFAULT.counter(Metrics.key("payment_breaker_opened_total", "method", name));
+        this.closed = Metrics.DEFAULT.counter(Metrics.key("payment_breaker_closed_total", "method", name));
+    }
+
+    public void addListener(BreakerListener listener) {
+        listeners.add(listener);
+    }
+
+    // Whether a call may go ahead; every permitted call must be followed by record()
+    public synchronized boolean tryAcquire() {
+        if (state == CircuitState.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = CircuitState.HALF_OPEN;
+            probesStarted = 0;
+            probesSucceeded = 0;
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            if (probesStarted == halfOpenProbes) {
+                return false;
+            }
+            probesStarted++;
+        }
+        return true;
+    }
+
+    // Listeners hear about a change after the breaker's lock is released
+    public void record(boolean success) {
+        CircuitState changed;
+        synchronized (this) {
+            changed = update(success);
+        }
+        if (changed != null) {
+            (changed == CircuitState.OPEN ? opened : closed).increment();
+            for (BreakerListener listener : listeners) {
+                listener.onStateChange(name, changed);
+            }
+        }
+    }
+
+    // Caller holds this; returns the state the breaker moved to, or null if it opened or closed neither
+    private CircuitState update(boolean success) {
+        if (state == CircuitState.HALF_OPEN) {
+            if (!success) {
+                open();
+                return CircuitState.OPEN;
+            } else if (++probesSucceeded == halfOpenProbes) {
+                state = CircuitState.CLOSED;
+                recorded = 0;
+                failures = 0;
+                next = 0;
+                return CircuitState.CLOSED;
+            }
+            return null;
+        }
+        if (state == CircuitState.OPEN) {
+            return null; // a call that started before the breaker opened
+        }
+        if (recorded == window.length) {
+            if (window[next]) failures--;
+        } else {
+            recorded++;
+        }
+        window[next] = !success;
+        if (!success) failures++;
+        next = (next + 1) % window.length;
+        if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+            open();
+            return CircuitState.OPEN;
+        }
+        return null;
+    }
+
+    // Caller holds this
+    private void open() {
+        state = CircuitState.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    // Reports OPEN until the cool-down has passed, even before a probe moves it to HALF_OPEN
+    public synchronized CircuitState getState() {
+        if (state == CircuitState.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return CircuitState.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : (double) failures / recorded;
+    }
+}
+
+class AdaptiveConcurrencyLimit {
+    private final int minLimit;
+    private final int maxLimit;
+    private final long slowNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<CompletableFuture<Void>> waiting = new ConcurrentLinkedQueue<>();
+    private volatile double limit; // written under this
+
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long slowMillis) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.slowNanos = slowMillis * 1_000_000;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Completes once a permit is held: at once if one is free, else when a call in flight ends.
+    // A caller that stops waiting completes the future itself (e.g. with orTimeout) and the permit
+    // it would have got goes to the next in line.
+    public CompletableFuture<Void> acquire() {
+        if (waiting.isEmpty() && tryAcquire()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        waiting.add(permit);
+        handOut(); // a permit may have been freed before this one joined the line
+        return permit;
+    }
+
+    // For a permit that ended up not being used
+    public void cancel() {
+        inFlight.decrementAndGet();
+        handOut();
+    }
+
+    // Declines count as answers: only timeouts and slow responses signal an overloaded gateway
+    public void release(long latencyNanos, boolean timedOut) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            if (timedOut || latencyNanos > slowNanos) {
+                limit = Math.max(minLimit, limit / 2);
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+        handOut();
+    }
+
+    // Passes free permits to callers waiting for one, oldest first
+    private void handOut() {
+        while (!waiting.isEmpty() && tryAcquire()) {
+            CompletableFuture<Void> permit = waiting.poll();
+            if (permit == null || !permit.complete(null)) {
+                // Nobody left to take it, or that caller gave up waiting
+                inFlight.decrementAndGet();
+                if (permit == null) {
+                    return; // whoever joins the line next hands out again
+                }
+            }
+        }
+    }
+
+    public int getLimit() { return (int) limit; }
+    public int getInFlight() { return inFlight.get(); }
+    public int getWaiting() { return waiting.size(); }
+}
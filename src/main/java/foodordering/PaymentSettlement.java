@@ -0,0 +1,180 @@
+// Batched settlement of card and UPI payments
+//
+// Instead of one gateway round trip per payment, the SettlementEngine collects pending payments
+// and sends them to the PaymentGateway together. A batch is sent as soon as it reaches
+// maxBatchSize, or when the oldest payment in it has waited maxWait, whichever comes first.
+// The gateway answers with one decision per payment, which completes that payment's future; the
+// PaymentProcessor applies it to the attempt that asked for it. Each future is completed on its
+// own task in a completion pool, so what follows a payment (the rest of its checkout) runs
+// alongside the others in the batch instead of one after another on the thread that got the reply.
+
+package foodordering;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+interface PaymentGateway {
+    // One call per batch; completes with an approval per payment, in the order given
+    CompletableFuture<boolean[]> settle(List<GatewayPayment> batch);
+}
+
+// Local stand-in for a real gateway. Each call costs a fixed round trip plus a small amount
+// per payment, and approves payments at their method's simulated approval rate.
+class StubPaymentGateway implements PaymentGateway {
+    private final Duration callLatency;
+    private final Duration perPaymentLatency;
+
+    StubPaymentGateway(Duration callLatency, Duration perPaymentLatency) {
+        this.callLatency = callLatency;
+        this.perPaymentLatency = perPaymentLatency;
+    }
+
+    @Override
+    public CompletableFuture<boolean[]> settle(List<GatewayPayment> batch) {
+        long delay = callLatency.plus(perPaymentLatency.multipliedBy(batch.size())).toNanos();
+        // The round trip is a timer, not a sleeping thread
+        Executor reply = CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS);
+        return CompletableFuture.supplyAsync(() -> {
+            boolean[] approvals = new boolean[batch.size()];
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < approvals.length; i++) {
+                approvals[i] = random.nextDouble() < batch.get(i).approvalRate();
+            }
+            return approvals;
+        }, reply);
+    }
+}
+
+class SettlementEngine {
+    private static final class Pending {
+        final GatewayPayment payment;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Pending(GatewayPayment payment) {
+            this.payment = payment;
+        }
+    }
+
+    private final PaymentGateway gateway;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService completions;
+    private final Object lock = new Object();
+    private List<Pending> pending;
+    private long generation; // bumped whenever a batch is sent, so a stale timer does nothing
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder settled = new LongAdder();
+
+    SettlementEngine(PaymentGateway gateway, int maxBatchSize, Duration maxWait) {
+        this.gateway = gateway;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.pending = new ArrayList<>(maxBatchSize);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "settlement-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.completions = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "settlement-completion");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Completes with the gateway's decision: true when the payment is approved
+    public CompletableFuture<Boolean> submit(GatewayPayment payment) {
+        Pending entry = new Pending(payment);
+        List<Pending> full = null;
+        synchronized (lock) {
+            pending.add(entry);
+            if (pending.size() >= maxBatchSize) {
+                full = takeBatch();
+            } else if (pending.size() == 1) {
+                long batchGeneration = generation;
+                timer.schedule(() -> flush(batchGeneration), maxWaitNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return entry.result;
+    }
+
+    // Sends whatever is pending right away
+    public void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = pending.isEmpty() ? null : takeBatch();
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    private void flush(long batchGeneration) {
+        List<Pending> batch = null;
+        synchronized (lock) {
+            if (generation == batchGeneration && !pending.isEmpty()) {
+                batch = takeBatch();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    // Caller holds lock
+    private List<Pending> takeBatch() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        generation++;
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        List<GatewayPayment> payments = new ArrayList<>(batch.size());
+        for (Pending entry : batch) {
+            payments.add(entry.payment);
+        }
+        batches.increment();
+        CompletableFuture<boolean[]> reply;
+        try {
+            reply = gateway.settle(payments);
+        } catch (RuntimeException e) {
+            reply = CompletableFuture.failedFuture(e);
+        }
+        reply.whenComplete((approvals, error) -> {
+            for (int i = 0; i < batch.size(); i++) {
+                Pending entry = batch.get(i);
+                // A failed call or a short answer declines the payments it did not cover
+                boolean approved = error == null && i < approvals.length && approvals[i];
+                try {
+                    entry.result.completeAsync(() -> approved, completions);
+                } catch (RejectedExecutionException e) {
+                    entry.result.complete(approved); // shut down since the batch was sent
+                }
+            }
+            settled.add(batch.size());
+        });
+    }
+
+    public long getBatches() { return batches.sum(); }
+    public long getSettled() { return settled.sum(); }
+
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) settled.sum() / count;
+    }
+
+    // Sends anything still waiting, then stops the batch timer; replies that arrive later complete
+    // their payments on the thread that received them
+    public void shutdown() {
+        flush();
+        timer.shutdown();
+        completions.shutdown();
+    }
+}
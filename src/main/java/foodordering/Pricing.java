@@ -0,0 +1,551 @@
+// Promotions and delivery pricing
+//
+// A restaurant's rules are compiled once into a PricingPlan against its menu:
+//   - item, category and happy-hour discounts become a short candidate list per menu item
+//   - combos are resolved to the menu items they need
+//   - coupons are looked up by code
+//   - the day is cut into segments at every happy-hour start and end, with each rule's on/off
+//     state precomputed per segment
+// Each cart carries a CartPricing with the discount of every line and the number of complete sets
+// of every combo. A cart change re-evaluates only the rules that mention that item, so the cost of
+// pricing a cart does not grow with the number of promotions on offer.
+//
+// Stacking: a line gets the best of its item discounts; combo discounts come on top; a coupon then
+// applies to what is left. Free delivery is judged on the subtotal after discounts.
+
+package foodordering;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+abstract class PricingRule {
+    private final String name;
+
+    PricingRule(String name) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Pricing rule needs a name");
+        }
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public static ItemDiscountRule categoryDiscount(String name, String category, int percentOff) {
+        return new ItemDiscountRule(name, Objects.requireNonNull(category), null, percentOff, null, null);
+    }
+
+    public static ItemDiscountRule itemDiscount(String name, String itemName, int percentOff) {
+        return new ItemDiscountRule(name, null, Objects.requireNonNull(itemName), percentOff, null, null);
+    }
+
+    // category may be null for the whole menu; the window wraps past midnight when until < from
+    public static ItemDiscountRule happyHour(String name, String category, int percentOff, LocalTime from, LocalTime until) {
+        return new ItemDiscountRule(name, category, null, percentOff, Objects.requireNonNull(from), Objects.requireNonNull(until));
+    }
+
+    // discount is taken off once per complete set of the items
+    public static ComboRule combo(String name, long discount, String... itemNames) {
+        return new ComboRule(name, discount, Arrays.asList(itemNames));
+    }
+
+    // maxDiscount of 0 means no cap
+    public static CouponRule coupon(String code, int percentOff, long flatOff, long minSubtotal, long maxDiscount) {
+        return new CouponRule(code, percentOff, flatOff, minSubtotal, maxDiscount);
+    }
+
+    // perKm is charged for every started kilometre beyond includedKm; freeAbove of Long.MAX_VALUE means never free
+    public static DeliveryFeeRule deliveryFee(long baseFee, long perKm, int includedKm, long freeAbove) {
+        return new DeliveryFeeRule(baseFee, perKm, includedKm, freeAbove);
+    }
+}
+
+class ItemDiscountRule extends PricingRule {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final String category;
+    private final String itemName;
+    private final int basisPoints;
+    private final int fromMinute;  // -1 when the rule is not timed
+    private final int untilMinute;
+
+    ItemDiscountRule(String name, String category, String itemName, int percentOff, LocalTime from, LocalTime until) {
+        super(name);
+        if (percentOff <= 0 || percentOff > 100) {
+            throw new IllegalArgumentException("Discount must be between 1 and 100 percent");
+        }
+        this.category = category;
+        this.itemName = itemName;
+        this.basisPoints = percentOff * 100;
+        this.fromMinute = from == null ? -1 : from.getHour() * 60 + from.getMinute();
+        this.untilMinute = until == null ? -1 : until.getHour() * 60 + until.getMinute();
+        if (from != null && fromMinute == untilMinute) {
+            throw new IllegalArgumentException("Happy hour must not start and end at the same minute");
+        }
+    }
+
+    public String getCategory() { return category; }
+    public String getItemName() { return itemName; }
+    public int getBasisPoints() { return basisPoints; }
+    public boolean isTimed() { return fromMinute >= 0; }
+    int getFromMinute() { return fromMinute; }
+    int getUntilMinute() { return untilMinute; }
+
+    boolean isActiveAt(int minuteOfDay) {
+        if (!isTimed()) {
+            return true;
+        }
+        minuteOfDay %= MINUTES_PER_DAY;
+        return fromMinute < untilMinute
+                ? minuteOfDay >= fromMinute && minuteOfDay < untilMinute
+                : minuteOfDay >= fromMinute || minuteOfDay < untilMinute;
+    }
+}
+
+class ComboRule extends PricingRule {
+    private final long discount;
+    private final List<String> itemNames;
+
+    ComboRule(String name, long discount, List<String> itemNames) {
+        super(name);
+        if (discount <= 0) {
+            throw new IllegalArgumentException("Combo discount must be positive");
+        }
+        if (itemNames.size() < 2 || new HashSet<>(itemNames).size() != itemNames.size()) {
+            throw new IllegalArgumentException("A combo needs at least two different items");
+        }
+        this.discount = discount;
+        this.itemNames = List.copyOf(itemNames);
+    }
+
+    public long getDiscount() { return discount; }
+    public List<String> getItemNames() { return itemNames; }
+}
+
+class CouponRule extends PricingRule {
+    private final int basisPoints;
+    private final long flatOff;
+    private final long minSubtotal;
+    private final long maxDiscount;
+
+    CouponRule(String code, int percentOff, long flatOff, long minSubtotal, long maxDiscount) {
+        super(code.toUpperCase());
+        if (percentOff < 0 || percentOff > 100 || flatOff < 0 || (percentOff == 0 && flatOff == 0)) {
+            throw new IllegalArgumentException("Coupon " + code + " must take off a percentage or a flat amount");
+        }
+        this.basisPoints = percentOff * 100;
+        this.flatOff = flatOff;
+        this.minSubtotal = minSubtotal;
+        this.maxDiscount = maxDiscount;
+    }
+
+    public String getCode() { return getName(); }
+    public long getMinSubtotal() { return minSubtotal; }
+
+    // Discount on an amount already reduced by item and combo discounts; 0 below the minimum
+    long discountOn(long amount) {
+        if (amount < minSubtotal) {
+            return 0;
+        }
+        long discount = flatOff + amount * basisPoints / 10_000;
+        if (maxDiscount > 0) {
+            discount = Math.min(discount, maxDiscount);
+        }
+        return Math.min(discount, amount);
+    }
+}
+
+class DeliveryFeeRule extends PricingRule {
+    // Rs. 50, free for orders above Rs. 500
+    static final DeliveryFeeRule STANDARD = new DeliveryFeeRule(Money.ofRupees(50), 0, 0, Money.ofRupees(500));
+
+    private final long baseFee;
+    private final long perKm;
+    private final int includedKm;
+    private final long freeAbove;
+
+    DeliveryFeeRule(long baseFee, long perKm, int includedKm, long freeAbove) {
+        super("Delivery");
+        if (baseFee < 0 || perKm < 0 || includedKm < 0) {
+            throw new IllegalArgumentException("Delivery fees must not be negative");
+        }
+        this.baseFee = baseFee;
+        this.perKm = perKm;
+        this.includedKm = includedKm;
+        this.freeAbove = freeAbove;
+    }
+
+    public long getFreeAbove() { return freeAbove; }
+
+    long feeFor(long itemsAfterDiscount, long distanceMeters) {
+        if (itemsAfterDiscount > freeAbove) {
+            return 0;
+        }
+        long extraMeters = distanceMeters - includedKm * 1000L;
+        long extraKm = extraMeters > 0 ? (extraMeters + 999) / 1000 : 0;
+        return baseFee + extraKm * perKm;
+    }
+}
+
+// A promotion as it applied to a cart, for receipts
+final class AppliedPromotion {
+    private final String name;
+    private final long amount;
+
+    AppliedPromotion(String name, long amount) {
+        this.name = name;
+        this.amount = amount;
+    }
+
+    public String getName() { return name; }
+    public long getAmount() { return amount; }
+}
+
+// Immutable apart from the cached time segment. Items added to the menu after compilation get no
+// item or combo discounts until the plan is compiled again (Restaurant does so on the next cart).
+final class PricingPlan {
+    private static final int[] NONE = new int[0];
+
+    private final long menuVersion;
+    private final ItemDiscountRule[] itemRules;
+    private final Map<MenuItem, int[]> itemRulesByItem;
+    private final ComboRule[] combos;
+    private final MenuItem[][] comboItems;
+    private final Map<MenuItem, int[]> combosByItem;
+    private final Map<String, CouponRule> coupons;
+    private final DeliveryFeeRule delivery;
+    private final int[] boundaries;             // minutes of the day where a happy hour starts or ends, sorted
+    private final boolean[][] activeBySegment;  // [segment][item rule]
+    private final ZoneId zone;
+    private volatile Segment cached;
+
+    // The segment containing one wall-clock minute
+    private static final class Segment {
+        final int index;
+        final long fromMillis;
+        final long untilMillis;
+
+        Segment(int index, long fromMillis, long untilMillis) {
+            this.index = index;
+            this.fromMillis = fromMillis;
+            this.untilMillis = untilMillis;
+        }
+    }
+
+    private PricingPlan(long menuVersion, ItemDiscountRule[] itemRules, Map<MenuItem, int[]> itemRulesByItem,
+                        ComboRule[] combos, MenuItem[][] comboItems, Map<MenuItem, int[]> combosByItem,
+                        Map<String, CouponRule> coupons, DeliveryFeeRule delivery, int[] boundaries,
+                        boolean[][] activeBySegment, ZoneId zone) {
+        this.menuVersion = menuVersion;
+        this.itemRules = itemRules;
+        this.itemRulesByItem = itemRulesByItem;
+        this.combos = combos;
+        this.comboItems = comboItems;
+        this.combosByItem = combosByItem;
+        this.coupons = coupons;
+        this.delivery = delivery;
+        this.boundaries = boundaries;
+        this.activeBySegment = activeBySegment;
+        this.zone = zone;
+    }
+
+    public static PricingPlan compile(List<? extends PricingRule> rules, MenuSnapshot menu) {
+        return compile(rules, menu, ZoneId.systemDefault());
+    }
+
+    public static PricingPlan compile(List<? extends PricingRule> rules, MenuSnapshot menu, ZoneId zone) {
+        List<ItemDiscountRule> itemRules = new ArrayList<>();
+        List<ComboRule> comboRules = new ArrayList<>();
+        Map<String, CouponRule> coupons = new HashMap<>();
+        DeliveryFeeRule delivery = DeliveryFeeRule.STANDARD;
+        for (PricingRule rule : rules) {
+            if (rule instanceof ItemDiscountRule) {
+                itemRules.add((ItemDiscountRule) rule);
+            } else if (rule instanceof ComboRule) {
+                comboRules.add((ComboRule) rule);
+            } else if (rule instanceof CouponRule) {
+                if (coupons.putIfAbsent(rule.getName(), (CouponRule) rule) != null) {
+                    throw new IllegalArgumentException("Duplicate coupon " + rule.getName());
+                }
+            } else if (rule instanceof DeliveryFeeRule) {
+                delivery = (DeliveryFeeRule) rule; // the last one wins
+            }
+        }
+
+        // Item rules, indexed by what they target so each menu item only looks at its own
+        Map<String, List<Integer>> byCategory = new HashMap<>();
+        Map<String, List<Integer>> byName = new HashMap<>();
+        List<Integer> wholeMenu = new ArrayList<>();
+        for (int r = 0; r < itemRules.size(); r++) {
+            ItemDiscountRule rule = itemRules.get(r);
+            if (rule.getItemName() != null) {
+                byName.computeIfAbsent(rule.getItemName().toLowerCase(), k -> new ArrayList<>()).add(r);
+            } else if (rule.getCategory() != null) {
+                byCategory.computeIfAbsent(rule.getCategory().toLowerCase(), k -> new ArrayList<>()).add(r);
+            } else {
+                wholeMenu.add(r);
+            }
+        }
+        Map<MenuItem, int[]> itemRulesByItem = new HashMap<>();
+        for (MenuItem item : menu.getItems()) {
+            List<Integer> forCategory = byCategory.getOrDefault(item.getCategory().toLowerCase(), Collections.emptyList());
+            List<Integer> forName = byName.getOrDefault(item.getName().toLowerCase(), Collections.emptyList());
+            int count = forCategory.size() + forName.size() + wholeMenu.size();
+            if (count == 0) {
+                continue;
+            }
+            int[] candidates = new int[count];
+            int i = 0;
+            for (int r : forName) candidates[i++] = r;
+            for (int r : forCategory) candidates[i++] = r;
+            for (int r : wholeMenu) candidates[i++] = r;
+            itemRulesByItem.put(item, candidates);
+        }
+
+        // Combos whose items are all on the menu
+        List<ComboRule> combos = new ArrayList<>();
+        List<MenuItem[]> comboItems = new ArrayList<>();
+        Map<MenuItem, List<Integer>> combosByItem = new HashMap<>();
+        for (ComboRule combo : comboRules) {
+            MenuItem[] items = new MenuItem[combo.getItemNames().size()];
+            boolean onMenu = true;
+            for (int i = 0; i < items.length; i++) {
+                items[i] = menu.findByName(combo.getItemNames().get(i));
+                onMenu &= items[i] != null;
+            }
+            if (!onMenu) {
+                continue;
+            }
+            for (MenuItem item : items) {
+                combosByItem.computeIfAbsent(item, k -> new ArrayList<>()).add(combos.size());
+            }
+            combos.add(combo);
+            comboItems.add(items);
+        }
+        Map<MenuItem, int[]> combosIndex = new HashMap<>();
+        combosByItem.forEach((item, indexes) -> combosIndex.put(item, indexes.stream().mapToInt(Integer::intValue).toArray()));
+
+        // Happy hours: the rules' on/off state only changes at these minutes
+        TreeSet<Integer> minutes = new TreeSet<>();
+        for (ItemDiscountRule rule : itemRules) {
+            if (rule.isTimed()) {
+                minutes.add(rule.getFromMinute());
+                minutes.add(rule.getUntilMinute());
+            }
+        }
+        int[] boundaries = minutes.stream().mapToInt(Integer::intValue).toArray();
+        boolean[][] activeBySegment = new boolean[Math.max(1, boundaries.length)][itemRules.size()];
+        for (int s = 0; s < activeBySegment.length; s++) {
+            int start = boundaries.length == 0 ? 0 : boundaries[s];
+            for (int r = 0; r < itemRules.size(); r++) {
+                activeBySegment[s][r] = itemRules.get(r).isActiveAt(start);
+            }
+        }
+
+        return new PricingPlan(menu.getVersion(), itemRules.toArray(new ItemDiscountRule[0]), itemRulesByItem,
+                combos.toArray(new ComboRule[0]), comboItems.toArray(new MenuItem[0][]), combosIndex,
+                coupons, delivery, boundaries, activeBySegment, zone);
+    }
+
+    public long getMenuVersion() { return menuVersion; }
+    public DeliveryFeeRule getDelivery() { return delivery; }
+    public int getRuleCount() { return itemRules.length + combos.length + coupons.size() + 1; }
+
+    public CartPricing newCart() {
+        return new CartPricing(this);
+    }
+
+    CouponRule coupon(String code) { return coupons.get(code.toUpperCase()); }
+    int[] itemRulesFor(MenuItem item) { return itemRulesByItem.getOrDefault(item, NONE); }
+    int[] combosFor(MenuItem item) { return combosByItem.getOrDefault(item, NONE); }
+    ItemDiscountRule itemRule(int index) { return itemRules[index]; }
+    boolean isActive(int segment, int itemRule) { return activeBySegment[segment][itemRule]; }
+    int comboCount() { return combos.length; }
+    ComboRule combo(int index) { return combos[index]; }
+    MenuItem[] comboItems(int index) { return comboItems[index]; }
+
+    // Index of the happy-hour segment at a wall-clock time, recomputed at most once a minute
+    int segmentAt(long millis) {
+        if (boundaries.length == 0) {
+            return 0;
+        }
+        Segment segment = cached;
+        if (segment != null && millis >= segment.fromMillis && millis < segment.untilMillis) {
+            return segment.index;
+        }
+        ZonedDateTime time = Instant.ofEpochMilli(millis).atZone(zone);
+        int i = Arrays.binarySearch(boundaries, time.getHour() * 60 + time.getMinute());
+        if (i < 0) {
+            i = -i - 2; // the boundary before this minute; before the first one we are still in the last segment
+        }
+        int index = i < 0 ? boundaries.length - 1 : i;
+        long minuteStart = millis - time.getSecond() * 1000L - time.getNano() / 1_000_000;
+        cached = new Segment(index, minuteStart, minuteStart + 60_000);
+        return index;
+    }
+}
+
+// Incremental pricing state of one cart. Like Order it is not thread-safe; callers hold the order's lock.
+// Happy-hour prices move to the current segment on every change to the cart and at checkout; reading
+// the discount or the applied promotions never changes anything.
+final class CartPricing {
+    private static final class Line {
+        int quantity;
+        long subtotal;
+        long discount;
+        int rule = -1; // item rule behind the discount
+    }
+
+    private final PricingPlan plan;
+    private final Map<MenuItem, Line> lines = new HashMap<>();
+    private int[] comboSets; // complete sets per combo, allocated when the cart first touches a combo
+    private long itemDiscount;
+    private long comboDiscount;
+    private CouponRule coupon;
+    private int segment;
+    private boolean locked;
+
+    CartPricing(PricingPlan plan) {
+        this.plan = plan;
+        this.segment = plan.segmentAt(System.currentTimeMillis());
+    }
+
+    public PricingPlan getPlan() { return plan; }
+    public CouponRule getCoupon() { return coupon; }
+
+    // Called by Order whenever a line changes; zero removes the line
+    void setQuantity(MenuItem item, int quantity) {
+        locked = false;
+        refreshSegment();
+        Line line = lines.get(item);
+        if (quantity <= 0) {
+            if (line != null) {
+                itemDiscount -= line.discount;
+                lines.remove(item);
+            }
+        } else {
+            if (line == null) {
+                line = new Line();
+                lines.put(item, line);
+            }
+            line.quantity = quantity;
+            line.subtotal = Money.times(item.getPrice(), quantity);
+            price(item, line);
+        }
+        for (int combo : plan.combosFor(item)) {
+            countSets(combo);
+        }
+    }
+
+    public void applyCoupon(String code) {
+        CouponRule found = plan.coupon(code);
+        if (found == null) {
+            throw new IllegalArgumentException("Unknown coupon " + code);
+        }
+        coupon = found;
+        locked = false;
+        refreshSegment();
+    }
+
+    public void removeCoupon() {
+        coupon = null;
+        locked = false;
+        refreshSegment();
+    }
+
+    // Pins happy-hour prices to the current segment until the cart changes again, so the total
+    // charged at checkout is the total shown on the receipt. Prices pinned by an earlier checkout
+    // are re-read first: a retry after a failed payment is charged at today's prices.
+    void lock() {
+        locked = false;
+        refreshSegment();
+        locked = true;
+    }
+
+    // Called when a checkout fails and the cart goes back to the customer
+    void unlock() {
+        locked = false;
+        refreshSegment();
+    }
+
+    public long discount(long subtotal) {
+        long discount = itemDiscount + comboDiscount;
+        if (coupon != null) {
+            discount += coupon.discountOn(subtotal - discount);
+        }
+        return Math.min(discount, subtotal);
+    }
+
+    public long deliveryFee(long itemsAfterDiscount, long distanceMeters) {
+        return plan.getDelivery().feeFor(itemsAfterDiscount, distanceMeters);
+    }
+
+    // One entry per promotion that took money off, item discounts first
+    public List<AppliedPromotion> applied(long subtotal) {
+        List<AppliedPromotion> applied = new ArrayList<>();
+        Map<Integer, Long> byRule = new TreeMap<>();
+        for (Line line : lines.values()) {
+            if (line.discount > 0) {
+                byRule.merge(line.rule, line.discount, Long::sum);
+            }
+        }
+        byRule.forEach((rule, amount) -> applied.add(new AppliedPromotion(plan.itemRule(rule).getName(), amount)));
+        if (comboSets != null) {
+            for (int c = 0; c < comboSets.length; c++) {
+                if (comboSets[c] > 0) {
+                    applied.add(new AppliedPromotion(plan.combo(c).getName(), comboSets[c] * plan.combo(c).getDiscount()));
+                }
+            }
+        }
+        if (coupon != null) {
+            long couponDiscount = coupon.discountOn(subtotal - itemDiscount - comboDiscount);
+            if (couponDiscount > 0) {
+                applied.add(new AppliedPromotion("Coupon " + coupon.getCode(), couponDiscount));
+            }
+        }
+        return applied;
+    }
+
+    private void refreshSegment() {
+        if (locked) {
+            return;
+        }
+        int now = plan.segmentAt(System.currentTimeMillis());
+        if (now != segment) {
+            segment = now;
+            lines.forEach(this::price);
+        }
+    }
+
+    // Best active item discount for the line
+    private void price(MenuItem item, Line line) {
+        int best = -1;
+        int bestBasisPoints = 0;
+        for (int rule : plan.itemRulesFor(item)) {
+            int basisPoints = plan.itemRule(rule).getBasisPoints();
+            if (basisPoints > bestBasisPoints && plan.isActive(segment, rule)) {
+                best = rule;
+                bestBasisPoints = basisPoints;
+            }
+        }
+        itemDiscount -= line.discount;
+        line.rule = best;
+        line.discount = line.subtotal * bestBasisPoints / 10_000;
+        itemDiscount += line.discount;
+    }
+
+    private void countSets(int combo) {
+        if (comboSets == null) {
+            comboSets = new int[plan.comboCount()];
+        }
+        int sets = Integer.MAX_VALUE;
+        for (MenuItem item : plan.comboItems(combo)) {
+            Line line = lines.get(item);
+            sets = Math.min(sets, line == null ? 0 : line.quantity);
+        }
+        comboDiscount += (sets - comboSets[combo]) * plan.combo(combo).getDiscount();
+        comboSets[combo] = sets;
+    }
+}
@@ -0,0 +1,164 @@
+// Size-bounded cache split into independently locked segments
+//
+// A key always maps to the same segment, picked from its hash. Each segment is an access-ordered
+// LinkedHashMap behind its own lock, so lookups on different segments never contend and a lookup
+// only has to move one entry to the most recently used end. When an insert takes a segment past
+// its share of the capacity, the least recently used entries are handed to an Evictor, which may
+// write them somewhere else before they are dropped.
+//
+// Loads and evictions run under the segment lock. That keeps a key's load from racing with the
+// write-back of the same key, at the price of holding the segment while the loader or evictor
+// works; hits never wait on either unless they land on the same segment.
+
+package foodordering;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+class ShardedLruCache<K, V> {
+    // Called under the segment lock with a least recently used entry; returning false keeps the
+    // entry, which then counts as recently used, e.g. while it is busy or could not be written
+    interface Evictor<K, V> {
+        boolean evict(K key, V value);
+    }
+
+    // Entries looked at per insert before the segment is left over capacity until the next one
+    static final int EVICTION_SCAN = 8;
+
+    private static final class Segment<K, V> {
+        final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+        final int capacity;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+        }
+    }
+
+    private final Segment<K, V>[] segments;
+    private final int mask;
+    private final Evictor<K, V> evictor;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    // capacity is shared evenly by the segments; their number is concurrency rounded up to a power of two
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ShardedLruCache(String name, int capacity, int concurrency, Evictor<K, V> evictor) {
+        if (capacity <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("Capacity and concurrency must be greater than 0");
+        }
+        int count = Integer.highestOneBit(Math.min(concurrency, 1 << 16) * 2 - 1);
+        int perSegment = (int) Math.max(1, ((long) capacity + count - 1) / count);
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+        mask = count - 1;
+        this.evictor = evictor;
+        hits = Metrics.DEFAULT.counter(Metrics.key("cache_hits_total", "cache", name));
+        misses = Metrics.DEFAULT.counter(Metrics.key("cache_misses_total", "cache", name));
+        evictions = Metrics.DEFAULT.counter(Metrics.key("cache_evictions_total", "cache", name));
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.map.get(key);
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    // On a miss, loader runs under the segment lock, so concurrent callers for the same key load it
+    // once; a null result is not cached
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            V value = segment.map.get(key);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            misses.increment();
+            value = loader.apply(key);
+            if (value != null) {
+                segment.map.put(key, value);
+                evictIfFull(segment);
+            }
+            return value;
+        }
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.map.put(key, value);
+            evictIfFull(segment);
+        }
+    }
+
+    public V remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.map.remove(key);
+        }
+    }
+
+    // Visits every entry, one segment at a time under that segment's lock
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                // Iterating an access-ordered map must not go through get(), which reorders it
+                for (Map.Entry<K, V> entry : segment.map.entrySet()) {
+                    action.accept(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+    public long getEvictions() { return evictions.get(); }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & mask];
+    }
+
+    // The newest entry is never a candidate, so the one just inserted stays
+    private void evictIfFull(Segment<K, V> segment) {
+        int excess = segment.map.size() - segment.capacity;
+        if (excess <= 0) return;
+        int scan = Math.min(EVICTION_SCAN, segment.map.size() - 1);
+        List<K> kept = null;
+        Iterator<Map.Entry<K, V>> eldest = segment.map.entrySet().iterator();
+        for (int i = 0; i < scan && excess > 0; i++) {
+            Map.Entry<K, V> entry = eldest.next();
+            if (evictor.evict(entry.getKey(), entry.getValue())) {
+                eldest.remove();
+                evictions.increment();
+                excess--;
+            } else {
+                if (kept == null) kept = new ArrayList<>();
+                kept.add(entry.getKey());
+            }
+        }
+        if (kept != null) {
+            for (K key : kept) {
+                segment.map.get(key); // to the most recently used end
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package foodordering;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+    @Test
+    void listenersHearTheBreakerOpenAndCloseAgain() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker("TEST", 4, 4, 0.5, 50, 1);
+        List<CircuitState> changes = new CopyOnWriteArrayList<>();
+        breaker.addListener((name, state) -> {
+            assertEquals("TEST", name);
+            changes.add(state);
+        });
+        Counter opened = Metrics.DEFAULT.counter(Metrics.key("payment_breaker_opened_total", "method", "TEST"));
+        long openedBefore = opened.get();
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(false);
+        }
+        assertEquals(List.of(CircuitState.OPEN), changes);
+        assertFalse(breaker.tryAcquire());
+        assertEquals(openedBefore + 1, opened.get());
+
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        breaker.record(true);
+        assertEquals(List.of(CircuitState.OPEN, CircuitState.CLOSED), changes);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+    }
+}
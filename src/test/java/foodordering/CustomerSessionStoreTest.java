@@ -0,0 +1,34 @@
+package foodordering;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerSessionStoreTest {
+    // The sessions directory is swapped for a plain file, so sessions can be neither read nor written back
+    @Test
+    void sessionFileErrorsAreReportedNotPrinted(@TempDir Path directory) throws IOException {
+        FileSessionStore files = FileSessionStore.open(directory);
+        Path sessions = directory.resolve("sessions");
+        Files.delete(sessions);
+        Files.createFile(sessions);
+        CustomerSessionStore store = new CustomerSessionStore(new RestaurantRegistry(), new WalletStore(0), files,
+                CustomerSessionStore.DEFAULT_CAPACITY, cart -> false);
+        List<SessionFailure> failures = new CopyOnWriteArrayList<>();
+        store.onFailure((failure, error) -> failures.add(failure));
+        store.signIn("Asha", "9800000001", "Lalitpur");
+        assertEquals(List.of(SessionFailure.LOAD), failures);
+
+        store.flush();
+        assertEquals(List.of(SessionFailure.LOAD, SessionFailure.SAVE), failures);
+        assertEquals(1, store.size(), "the session stays in memory");
+        assertNull(store.getCart(42), "a failed cart lookup finds nothing");
+    }
+}
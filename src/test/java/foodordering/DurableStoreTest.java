@@ -0,0 +1,181 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DurableStoreTest {
+    private static final String PHONE = "9800000001";
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("durable-store-test");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static OrderRecord order(long orderId, long epochMillis) {
+        return new OrderRecord(orderId, PHONE, "Asha", epochMillis, PaymentMethod.WALLET, 17_000,
+                new String[] {"Veg Momo"}, new int[] {1}, new long[] {12_000});
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Long> segments = WriteAheadLog.listSegments(directory);
+        return WriteAheadLog.segmentPath(directory, segments.get(segments.size() - 1));
+    }
+
+    // The store that "crashed" is never closed or checkpointed; whatever it acknowledged must be
+    // recovered from the log alone
+    @Test
+    void acknowledgedWritesSurviveACrash() throws IOException {
+        DurableStore crashed = DurableStore.open(directory);
+        crashed.walletTransaction(PHONE, WalletTransactionType.INITIAL, 50_000, 50_000);
+        crashed.walletTransaction(PHONE, WalletTransactionType.PAYMENT, 17_000, 33_000);
+        crashed.orderConfirmed(order(42, System.currentTimeMillis()));
+        crashed.walletTransaction(PHONE, WalletTransactionType.REFUND, 5_000, 38_000);
+
+        try (DurableStore recovered = DurableStore.open(directory)) {
+            PersistedState state = recovered.recoveredState();
+            assertEquals(38_000L, state.walletBalances.get(PHONE));
+            assertEquals(1, state.orders.size());
+            assertEquals(42, state.lastOrderId);
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    void aTornTailIsTruncatedAndTheRestReplayed() throws IOException {
+        try (DurableStore store = DurableStore.open(directory)) {
+            store.walletTransaction(PHONE, WalletTransactionType.INITIAL, 50_000, 50_000);
+            store.orderConfirmed(order(7, System.currentTimeMillis()));
+        }
+        Path segment = lastSegment();
+        long intact = Files.size(segment);
+        try (FileChannel out = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // a frame header promising more bytes than were written before the crash
+            out.write(ByteBuffer.allocate(12).putInt(100).putInt(0).putInt(0xDEAD).flip());
+        }
+
+        try (DurableStore recovered = DurableStore.open(directory)) {
+            assertEquals(50_000L, recovered.recoveredState().walletBalances.get(PHONE));
+            assertEquals(1, recovered.recoveredState().orders.size());
+        }
+        assertEquals(intact, Files.size(segment));
+    }
+
+    @Test
+    void aCheckpointPlusTheLogTailRestoresEverything() throws IOException {
+        try (DurableStore store = DurableStore.open(directory)) {
+            store.walletTransaction(PHONE, WalletTransactionType.INITIAL, 50_000, 50_000);
+            store.orderConfirmed(order(1, System.currentTimeMillis()));
+            store.checkpoint();
+            store.walletTransaction(PHONE, WalletTransactionType.ADDED, 10_000, 60_000);
+            store.orderConfirmed(order(2, System.currentTimeMillis()));
+        }
+
+        try (DurableStore recovered = DurableStore.open(directory)) {
+            PersistedState state = recovered.recoveredState();
+            assertEquals(60_000L, state.walletBalances.get(PHONE));
+            assertEquals(2, state.orders.size());
+            assertEquals(2, state.lastOrderId);
+        }
+    }
+
+    @Test
+    void aCheckpointDropsOrdersPastRetentionButKeepsTheirIds() throws IOException {
+        long now = System.currentTimeMillis();
+        try (DurableStore store = DurableStore.open(directory)) {
+            store.orderConfirmed(order(90, now - PersistedState.ORDER_RETENTION_MILLIS - 60_000));
+            store.orderConfirmed(order(91, now));
+            store.checkpoint();
+        }
+
+        try (DurableStore recovered = DurableStore.open(directory)) {
+            PersistedState state = recovered.recoveredState();
+            assertEquals(1, state.orders.size());
+            assertEquals(91, state.orders.get(0).orderId);
+            assertEquals(91, state.lastOrderId);
+        }
+    }
+
+    // A balance change the log refuses is undone, so the wallet never holds money the log does not
+    @Test
+    void aWalletChangeThatCannotBeLoggedIsUndone() throws IOException {
+        DurableStore store = DurableStore.open(directory);
+        WalletStore wallets = new WalletStore(50_000);
+        wallets.addListener(store::walletTransaction);
+        Wallet wallet = wallets.walletFor(PHONE);
+        int history = wallet.getTransactionHistory().size();
+        store.close();
+
+        assertThrows(UncheckedIOException.class, () -> wallet.deductBalance(17_000));
+        assertThrows(UncheckedIOException.class, () -> wallet.refund(5_000));
+        assertEquals(50_000, wallet.getBalance());
+        assertEquals(history, wallet.getTransactionHistory().size());
+    }
+
+    @Test
+    void checkpointsFinishWhileWritersKeepTheLogBusy() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(5);
+        AtomicBoolean running = new AtomicBoolean(true);
+        DurableStore store = DurableStore.open(directory);
+        long total = 0;
+        try {
+            store.walletTransaction(PHONE, WalletTransactionType.INITIAL, 0, 0);
+            List<Future<Integer>> written = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                written.add(threads.submit(() -> {
+                    int count = 0;
+                    while (running.get()) {
+                        store.walletTransaction(PHONE, WalletTransactionType.ADDED, 1, 0);
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+            Future<?> checkpoints = threads.submit(() -> {
+                for (int i = 0; i < 5; i++) {
+                    store.checkpoint();
+                }
+                return null;
+            });
+            checkpoints.get(10, TimeUnit.SECONDS);
+            running.set(false);
+            for (Future<Integer> count : written) {
+                total += count.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            running.set(false);
+            threads.shutdownNow();
+            store.close();
+        }
+
+        try (DurableStore recovered = DurableStore.open(directory)) {
+            assertEquals(total, recovered.recoveredState().walletBalances.get(PHONE));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package foodordering;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdGeneratorTest {
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 100_000;
+
+    @Test
+    void idsFromManyThreadsAreUnique() throws Exception {
+        IdGenerator generator = new IdGenerator(7);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> batches = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            batches.add(pool.submit(() -> {
+                start.await();
+                long[] ids = new long[IDS_PER_THREAD];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = generator.nextId();
+                }
+                return ids;
+            }));
+        }
+        start.countDown();
+        Set<Long> seen = new HashSet<>(THREADS * IDS_PER_THREAD * 2);
+        for (Future<long[]> batch : batches) {
+            for (long id : batch.get(30, TimeUnit.SECONDS)) {
+                assertTrue(seen.add(id), "duplicate id " + IdGenerator.format(id));
+                assertEquals(7, IdGenerator.nodeOf(id));
+            }
+        }
+        pool.shutdown();
+    }
+
+    // More ids than one millisecond's sequence holds: the sequence carries into the timestamp
+    @Test
+    void idsIncreaseWhenTheSequenceOverflows() {
+        IdGenerator generator = new IdGenerator(0);
+        long previous = generator.nextId();
+        for (int i = 0; i < 10 * (IdGenerator.SEQUENCE_MASK + 1); i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idsSortAfterOneIssuedBeforeARestart() {
+        long future = (System.currentTimeMillis() - IdGenerator.EPOCH + 60_000) << (IdGenerator.NODE_BITS + IdGenerator.SEQUENCE_BITS);
+        IdGenerator generator = new IdGenerator(0);
+        generator.advancePast(future);
+        assertTrue(generator.nextId() > future);
+    }
+
+    @Test
+    void formatAndParseRoundTrip() {
+        long id = new IdGenerator(3).nextId();
+        assertEquals(IdGenerator.format(id), IdGenerator.appendTo(new StringBuilder(), id).toString());
+        assertEquals(id, IdGenerator.parse(IdGenerator.format(id)));
+    }
+}
@@ -0,0 +1,134 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdempotentCheckoutTest {
+    private static final String PHONE = "9800000001";
+    private static final int THREADS = 16;
+
+    private PrintStream console;
+    private Restaurant restaurant;
+    private MenuItem item;
+    private WalletStore wallets;
+    private PaymentProcessor payments;
+    private OrderPipeline pipeline;
+    private OrderingService service;
+
+    @BeforeEach
+    void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        RestaurantRegistry restaurants = new RestaurantRegistry();
+        restaurant = new Restaurant("Test Kitchen");
+        item = new MenuItem("Veg Momo", 120, "Appetizers");
+        restaurant.addMenuItem(item);
+        restaurants.register(restaurant);
+        wallets = new WalletStore(Money.ofRupees(500));
+        payments = new PaymentProcessor(2, 100, 5_000, 0);
+        pipeline = new OrderPipeline(new OrderEventBus(), 1, Duration.ZERO, 1, Duration.ZERO, 64, 8);
+        pipeline.start();
+        service = new OrderingService(restaurants, wallets, payments, null, pipeline, new Ledger());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        pipeline.stop();
+        payments.shutdown();
+        System.setOut(console);
+    }
+
+    private Order cartWithOneMomo() {
+        Order order = service.openCart(restaurant.getId(), "Asha", PHONE, "Lalitpur");
+        service.addToCart(order.getOrderId(), item.getId(), 1);
+        return order;
+    }
+
+    @Test
+    void concurrentRepeatsOfAKeyPayOnce() throws Exception {
+        long orderId = cartWithOneMomo().getOrderId();
+        long before = wallets.walletFor(PHONE).getBalance();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<OrderingService.Checkout>> attempts = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            attempts.add(pool.submit(() -> {
+                start.await();
+                return service.checkout(orderId, PaymentMethod.WALLET, Map.of(), "key-1");
+            }));
+        }
+        start.countDown();
+        Set<OrderingService.Checkout> checkouts = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<OrderingService.Checkout> attempt : attempts) {
+            OrderingService.Checkout checkout = attempt.get(10, TimeUnit.SECONDS);
+            checkouts.add(checkout);
+            assertTrue(checkout.getResult().get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(1, checkouts.size(), "every repeat gets the first checkout back");
+        long charged = service.getOrder(orderId).getPayment().getAmount();
+        assertEquals(before - charged, wallets.walletFor(PHONE).getBalance(), "charged once");
+    }
+
+    @Test
+    void aRepeatAfterTheCartClosedGetsTheOriginalResult() throws Exception {
+        long orderId = cartWithOneMomo().getOrderId();
+        OrderingService.Checkout first = service.checkout(orderId, PaymentMethod.WALLET, Map.of(), "key-2");
+        assertTrue(first.getResult().get(10, TimeUnit.SECONDS));
+        assertSame(first, service.checkout(orderId, PaymentMethod.WALLET, Map.of(), "key-2"));
+    }
+
+    @Test
+    void aKeyCannotBeReusedForAnotherOrder() throws Exception {
+        long orderId = cartWithOneMomo().getOrderId();
+        assertTrue(service.checkout(orderId, PaymentMethod.WALLET, Map.of(), "key-3").getResult().get(10, TimeUnit.SECONDS));
+        long other = cartWithOneMomo().getOrderId();
+        assertThrows(IllegalArgumentException.class,
+                () -> service.checkout(other, PaymentMethod.WALLET, Map.of(), "key-3"));
+    }
+
+    // Repeats racing a rejected checkout either are rejected themselves or get the first request's
+    // checkout back, failed with the same error; none of them waits forever
+    @Test
+    void repeatsOfARejectedCheckoutAreRejectedToo() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < 20; round++) {
+                long orderId = service.openCart(restaurant.getId(), "Asha", PHONE, "Lalitpur").getOrderId();
+                String key = "empty-" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<OrderingService.Checkout>> attempts = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    attempts.add(pool.submit(() -> {
+                        start.await();
+                        return service.checkout(orderId, PaymentMethod.WALLET, Map.of(), key);
+                    }));
+                }
+                start.countDown();
+                for (Future<OrderingService.Checkout> attempt : attempts) {
+                    try {
+                        OrderingService.Checkout checkout = attempt.get(10, TimeUnit.SECONDS);
+                        ExecutionException failed = assertThrows(ExecutionException.class,
+                                () -> checkout.getResult().get(10, TimeUnit.SECONDS));
+                        assertInstanceOf(IllegalStateException.class, failed.getCause());
+                    } catch (ExecutionException rejected) {
+                        assertInstanceOf(IllegalStateException.class, rejected.getCause());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
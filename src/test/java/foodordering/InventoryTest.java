@@ -0,0 +1,38 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InventoryTest {
+    private final Inventory inventory = new Inventory(Duration.ofMillis(80));
+
+    @AfterEach
+    void tearDown() {
+        inventory.shutdown();
+    }
+
+    @Test
+    void anExpiredHoldIsReportedAndItsUnitsGoBackOnSale() throws Exception {
+        Restaurant restaurant = new Restaurant("Test Kitchen");
+        MenuItem item = new MenuItem("Veg Momo", 120, "Appetizers");
+        restaurant.addMenuItem(item);
+        inventory.setStock(item, 3);
+        CompletableFuture<Long> expired = new CompletableFuture<>();
+        inventory.onHoldExpired(expired::complete);
+
+        Order order = new Order(new Customer("Asha", "9800000001", "Lalitpur", new Wallet(0)), restaurant);
+        order.addItem(item, 2);
+        inventory.reserve(order);
+        assertEquals(1, inventory.getAvailable(item));
+
+        assertEquals(order.getOrderId(), expired.get(5, TimeUnit.SECONDS));
+        assertEquals(3, inventory.getAvailable(item));
+        assertEquals(0, inventory.getHeld());
+    }
+}
@@ -0,0 +1,56 @@
+package foodordering;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Facets taken from posting lists and bitsets must agree with counting every match; a price range
+// that excludes nothing forces the counting path
+class MenuSearchIndexTest {
+    private static final String[][] MENU = {
+            {"Chicken Momo", "Appetizers"}, {"Veg Momo", "Appetizers"},
+            {"Chicken Chowmein", "Main Course"}, {"Veg Chowmein", "Main Course"},
+            {"Chicken Pizza", "Pizza"}, {"Margherita Pizza", "Pizza"}, {"Coke", "Beverages"},
+    };
+    private static final long EVERY_PRICE = Long.MAX_VALUE - 1;
+
+    private static MenuSearchIndex index;
+
+    @BeforeAll
+    static void build() {
+        index = new MenuSearchIndex();
+        for (int i = 0; i < 20_000; i++) {
+            String[] item = MENU[i % MENU.length];
+            index.add(new MenuItem(item[0] + " " + (i / MENU.length), 100 + i % 300, item[1]));
+        }
+    }
+
+    private static void assertSameAsCounting(String text, String category) {
+        SearchResult fast = index.search(text, category, 0, Long.MAX_VALUE, 20);
+        SearchResult counted = index.search(text, category, 0, EVERY_PRICE, 20);
+        assertEquals(counted.getTotalHits(), fast.getTotalHits());
+        assertEquals(counted.getCategoryCounts(), fast.getCategoryCounts());
+        assertEquals(counted.getItems(), fast.getItems());
+    }
+
+    @Test
+    void oneDenseWord() {
+        assertSameAsCounting("chicken", null);
+        assertSameAsCounting("chiken", "Pizza");
+    }
+
+    @Test
+    void denseWordsIntersected() {
+        assertSameAsCounting("chick piz", null);
+        assertSameAsCounting("chicken momo", "Appetizers");
+        assertSameAsCounting("chicken momo", "Pizza");
+        assertEquals(2_857, index.search("chicken pizza", 20).getTotalHits()); // items 4, 11, 18, ... 19,996
+    }
+
+    @Test
+    void sparseAndEmptyQueries() {
+        assertSameAsCounting("veg 42", null);
+        assertSameAsCounting("", "Beverages");
+    }
+}
@@ -0,0 +1,46 @@
+package foodordering;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    @Test
+    void labelValuesAreEscaped() {
+        assertEquals("stock_available{item=\"Chef's \\\"Special\\\" \\\\ Combo\\nLarge\"}",
+                Metrics.key("stock_available", "item", "Chef's \"Special\" \\ Combo\nLarge"));
+    }
+
+    @Test
+    void escapedLabelsRenderOnOneLineEach() {
+        Metrics metrics = new Metrics();
+        metrics.counter(Metrics.key("test_total", "item", "a\"b\nc")).increment();
+        metrics.histogram(Metrics.key("test_seconds", "item", "x\\y")).record(1_000_000);
+
+        String text = metrics.render();
+        assertTrue(text.contains("test_total{item=\"a\\\"b\\nc\"} 1\n"), text);
+        assertTrue(text.contains("test_seconds{item=\"x\\\\y\",quantile=\"0.5\"} "), text);
+        assertTrue(text.contains("test_seconds_count{item=\"x\\\\y\"} 1\n"), text);
+        for (String line : text.split("\n")) {
+            assertTrue(line.startsWith("# TYPE ") || line.startsWith("test_"), line);
+        }
+    }
+
+    // The name is taken by the first registration, so the second fails and its caller is told
+    @Test
+    void aFailedJmxRegistrationIsThrownToTheCaller() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("foodorder:type=Metrics");
+        new Metrics().registerMBean();
+        try {
+            assertThrows(JMException.class, () -> new Metrics().registerMBean());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
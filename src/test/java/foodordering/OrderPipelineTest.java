@@ -0,0 +1,93 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderPipelineTest {
+    private PrintStream console;
+    private OrderEventBus events;
+    private OrderPipeline pipeline;
+    private Restaurant restaurant;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        events = new OrderEventBus();
+        restaurant = new Restaurant("Test Kitchen");
+        restaurant.addMenuItem(new MenuItem("Veg Momo", 120, "Appetizers"));
+        customer = new Customer("Asha", "9800000001", "Lalitpur", new Wallet(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
+        System.setOut(console);
+    }
+
+    private Order confirm() {
+        Order order = new Order(customer, restaurant);
+        events.transition(order, OrderStatus.CONFIRMED);
+        return order;
+    }
+
+    @Test
+    void confirmingNeverBlocksOnAFullKitchen() {
+        pipeline = new OrderPipeline(events, 1, Duration.ofHours(1), 1, Duration.ofHours(1), 4, 1);
+        pipeline.start();
+        long start = System.nanoTime();
+        Order first = confirm();
+        for (int i = 0; i < 20; i++) {
+            confirm();
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(OrderStatus.PREPARING, first.getStatus());
+        assertEquals(20, pipeline.getKitchen().getDepth());
+        assertFalse(pipeline.isAcceptingOrders());
+    }
+
+    @Test
+    void cooksAndRidersAreNotThreads() throws InterruptedException {
+        pipeline = new OrderPipeline(events, 2, Duration.ofMillis(50), 2, Duration.ofMillis(50), 4, 4);
+        CountDownLatch delivered = new CountDownLatch(16);
+        events.subscribe(OrderStatus.DELIVERED, event -> delivered.countDown());
+        pipeline.start();
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            orders.add(confirm());
+        }
+        // Two cooks and two riders take batches of 4, so each stage runs two rounds
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        for (Order order : orders) {
+            assertEquals(OrderStatus.DELIVERED, order.getStatus());
+        }
+        assertEquals(0, pipeline.getKitchen().getDepth());
+        assertTrue(pipeline.isAcceptingOrders());
+    }
+
+    @Test
+    void aCancelledOrderIsNotCooked() throws InterruptedException {
+        pipeline = new OrderPipeline(events, 1, Duration.ofMillis(200), 1, Duration.ZERO, 8, 1);
+        CountDownLatch delivered = new CountDownLatch(1);
+        events.subscribe(OrderStatus.DELIVERED, event -> delivered.countDown());
+        pipeline.start();
+        Order cooking = confirm();
+        Order waiting = confirm();
+        pipeline.cancel(waiting);
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(OrderStatus.DELIVERED, cooking.getStatus());
+        assertEquals(OrderStatus.CANCELLED, waiting.getStatus());
+    }
+}
@@ -0,0 +1,138 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderingServiceTest {
+    private static final String PHONE = "9800000001";
+
+    private PrintStream console;
+    private Restaurant restaurant;
+    private MenuItem item;
+    private WalletStore wallets;
+    private PaymentProcessor payments;
+    private OrderPipeline pipeline;
+    private OrderingService service;
+
+    @BeforeEach
+    void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        RestaurantRegistry restaurants = new RestaurantRegistry();
+        restaurant = new Restaurant("Test Kitchen");
+        item = new MenuItem("Veg Momo", 120, "Appetizers");
+        restaurant.addMenuItem(item);
+        restaurants.register(restaurant);
+        wallets = new WalletStore(Money.ofRupees(500));
+        payments = new PaymentProcessor(2, 100, 5_000, 0);
+        pipeline = new OrderPipeline(new OrderEventBus(), 1, Duration.ZERO, 1, Duration.ZERO, 64, 8);
+        pipeline.start();
+        service = new OrderingService(restaurants, wallets, payments, null, pipeline, new Ledger());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+        pipeline.stop();
+        payments.shutdown();
+        System.setOut(console);
+    }
+
+    @Test
+    void lookingUpAMissingWalletDoesNotOpenOne() {
+        assertThrows(NoSuchElementException.class, () -> service.getWallet(PHONE));
+        assertFalse(wallets.contains(PHONE));
+        assertEquals(0, wallets.size());
+    }
+
+    @Test
+    void aPaidOrderIsConfirmedOffThePaymentThreads() throws Exception {
+        Set<String> confirmingThreads = ConcurrentHashMap.newKeySet();
+        pipeline.getEvents().subscribe(OrderStatus.CONFIRMED,
+                event -> confirmingThreads.add(Thread.currentThread().getName()));
+        Order order = service.openCart(restaurant.getId(), "Asha", PHONE, "Lalitpur");
+        service.addToCart(order.getOrderId(), item.getId(), 1);
+
+        assertTrue(service.checkout(order.getOrderId(), PaymentMethod.WALLET, Map.of())
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(Set.of("checkout-confirm"), confirmingThreads);
+        assertTrue(service.getWallet(PHONE).getBalance() < Money.ofRupees(500));
+    }
+
+    @Test
+    void itemsSharingANameAreSeparateLines() {
+        MenuItem special = new MenuItem("Veg Momo", 150, "Specials");
+        restaurant.addMenuItem(special);
+        Order order = service.openCart(restaurant.getId(), "Asha", PHONE, "Lalitpur");
+        service.addToCart(order.getOrderId(), item.getId(), 1);
+        service.addToCart(order.getOrderId(), special.getId(), 2);
+
+        assertEquals(2, order.getItemCount());
+        assertEquals(1, order.getQuantity(item));
+        assertEquals(2, order.getQuantity(special));
+        assertEquals(Money.ofRupees(420), order.calculateSubtotal());
+    }
+
+    @Test
+    void aRestaurantHoldsItsOrdersUntilTheyAreDelivered() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(1);
+        pipeline.getEvents().subscribe(OrderStatus.DELIVERED, event -> delivered.countDown());
+        Order order = service.openCart(restaurant.getId(), "Asha", PHONE, "Lalitpur");
+        service.addToCart(order.getOrderId(), item.getId(), 1);
+        // The service's own pipeline is stopped, and a second one on the same events is started
+        // only once the order has been routed
+        pipeline.stop();
+        pipeline = new OrderPipeline(pipeline.getEvents(), 1, Duration.ZERO, 1, Duration.ZERO, 64, 8);
+
+        assertTrue(service.checkout(order.getOrderId(), PaymentMethod.WALLET, Map.of()).get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(order), List.copyOf(restaurant.getIncomingOrders()));
+
+        pipeline.start();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(0, restaurant.getIncomingCount());
+        assertEquals(1, restaurant.getOrdersReceived());
+    }
+
+    // The store is closed before checkout, so the paid order cannot be saved
+    @Test
+    void aPaidOrderThatCannotBeSavedIsRefundedAndCancelled(@TempDir Path directory) throws Exception {
+        DurableStore store = DurableStore.open(directory);
+        store.close();
+        RestaurantRegistry restaurants = new RestaurantRegistry();
+        restaurants.register(restaurant);
+        OrderingService unsaved = new OrderingService(restaurants, wallets, payments, store, pipeline, new Ledger());
+        try {
+            Order order = unsaved.openCart(restaurant.getId(), "Asha", PHONE, "Lalitpur");
+            unsaved.addToCart(order.getOrderId(), item.getId(), 1);
+            long before = wallets.walletFor(PHONE).getBalance();
+
+            ExecutionException failed = assertThrows(ExecutionException.class,
+                    () -> unsaved.checkout(order.getOrderId(), PaymentMethod.WALLET, Map.of()).get(5, TimeUnit.SECONDS));
+            assertInstanceOf(UncheckedIOException.class, failed.getCause());
+            assertEquals(OrderStatus.CANCELLED, order.getStatus());
+            assertEquals(PaymentStatus.REFUNDED, order.getPayment().getStatus());
+            assertEquals(before, wallets.walletFor(PHONE).getBalance());
+            assertEquals(0, restaurant.getIncomingCount());
+        } finally {
+            unsaved.shutdown();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Thousands of payments submitted at once complete without a thread per payment, and card and
+// UPI payments beyond the gateway's concurrency limit wait for it rather than being failed
+class PaymentLoadTest {
+    private static final int POOL = 4;
+    private static final int PAYMENTS = 5_000;
+    // Card and UPI are declined up to 10% of the time per attempt; with two retries about one in a
+    // thousand fails for good, so this leaves ample room while still catching shed payments
+    private static final double MAX_GATEWAY_FAILURE_RATE = 0.01;
+
+    private PrintStream console;
+    private SettlementEngine settlement;
+    private PaymentProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        settlement = new SettlementEngine(new StubPaymentGateway(Duration.ofMillis(20), Duration.ZERO), 64, Duration.ofMillis(5));
+        processor = new PaymentProcessor(POOL, 512, 10_000, 2, settlement);
+    }
+
+    @AfterEach
+    void tearDown() {
+        processor.shutdown();
+        settlement.shutdown();
+        System.setOut(console);
+    }
+
+    @Test
+    void everyPaymentCompletesOnABoundedPool() throws Exception {
+        Wallet wallet = new Wallet(Long.MAX_VALUE / 4);
+        Set<String> gatewayThreads = ConcurrentHashMap.newKeySet();
+        processor.onAttempt((method, status) -> {
+            if (method == PaymentMethod.CARD || method == PaymentMethod.UPI) {
+                gatewayThreads.add(Thread.currentThread().getName());
+            }
+        });
+        List<CompletableFuture<PaymentStatus>> results = new ArrayList<>(PAYMENTS);
+        List<Payment> payments = new ArrayList<>(PAYMENTS);
+        for (int i = 0; i < PAYMENTS; i++) {
+            Payment payment;
+            switch (i % 4) {
+                case 0: payment = new WalletPayment(100, wallet); break;
+                case 1: payment = new CardPayment(100, "4111111111111111", "Load Test"); break;
+                case 2: payment = new UPIPayment(100, "load@upi"); break;
+                default: payment = new CashOnDeliveryPayment(100); break;
+            }
+            payments.add(payment);
+            results.add(processor.submit(payment));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+
+        int gatewayPayments = 0;
+        int gatewayFailed = 0;
+        for (int i = 0; i < PAYMENTS; i++) {
+            PaymentStatus status = results.get(i).get();
+            assertEquals(status, payments.get(i).getStatus());
+            if (payments.get(i) instanceof GatewayPayment) {
+                assertNotEquals(PaymentStatus.OVERLOADED, status, "no payment should be shed within its deadline");
+                gatewayPayments++;
+                if (status != PaymentStatus.SUCCESS) gatewayFailed++;
+            } else {
+                assertEquals(PaymentStatus.SUCCESS, status);
+            }
+        }
+        assertTrue(gatewayFailed <= gatewayPayments * MAX_GATEWAY_FAILURE_RATE,
+                gatewayFailed + " of " + gatewayPayments + " card and UPI payments failed");
+        // Gateway answers are delivered on the settlement engine's completion pool
+        assertEquals(Set.of("settlement-completion"), gatewayThreads);
+        assertTrue(threadsNamed("settlement-completion") <= Math.max(2, Runtime.getRuntime().availableProcessors()));
+        assertTrue(threadsNamed("payment-gateway") <= POOL, "gateway threads: " + threadsNamed("payment-gateway"));
+    }
+
+    private static long threadsNamed(String name) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals(name))
+                .count();
+    }
+}
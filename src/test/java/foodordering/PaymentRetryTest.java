@@ -0,0 +1,120 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentRetryTest {
+    private PrintStream console;
+    private SettlementEngine settlement;
+    private PaymentProcessor processor;
+
+    // Answers after delay; decides with the given approvals in turn, then approves
+    private static final class ScriptedGateway implements PaymentGateway {
+        final AtomicInteger charges = new AtomicInteger();
+        final Duration delay;
+        final boolean[] script;
+
+        ScriptedGateway(Duration delay, boolean... script) {
+            this.delay = delay;
+            this.script = script;
+        }
+
+        @Override
+        public CompletableFuture<boolean[]> settle(List<GatewayPayment> batch) {
+            int call = charges.getAndAdd(batch.size());
+            Executor reply = CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS);
+            return CompletableFuture.supplyAsync(() -> {
+                boolean[] approvals = new boolean[batch.size()];
+                Arrays.fill(approvals, call >= script.length || script[call]);
+                return approvals;
+            }, reply);
+        }
+    }
+
+    @BeforeEach
+    void silence() {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (processor != null) processor.shutdown();
+        if (settlement != null) settlement.shutdown();
+        System.setOut(console);
+    }
+
+    private void start(ScriptedGateway gateway, long timeoutMillis, int retries) {
+        settlement = new SettlementEngine(gateway, 1, Duration.ofMillis(1));
+        processor = new PaymentProcessor(2, 16, timeoutMillis, retries, settlement);
+    }
+
+    // The approval arrives after the payment has been reported FAILED: it must not flip it back
+    @Test
+    void aLateApprovalDoesNotChangeATimedOutPayment() throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway(Duration.ofMillis(300));
+        start(gateway, 100, 2);
+        CardPayment payment = new CardPayment(10_000, "4111111111111111", "Asha");
+        assertEquals(PaymentStatus.FAILED, processor.submit(payment).get(5, TimeUnit.SECONDS));
+        Thread.sleep(500);
+        assertEquals(PaymentStatus.FAILED, payment.getStatus());
+        assertEquals(1, gateway.charges.get(), "retries must not charge again");
+    }
+
+    @Test
+    void aDeclinedPaymentIsRetriedWithANewCharge() throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway(Duration.ofMillis(5), false);
+        start(gateway, 10_000, 2);
+        UPIPayment payment = new UPIPayment(10_000, "asha@upi");
+        assertEquals(PaymentStatus.SUCCESS, processor.submit(payment).get(10, TimeUnit.SECONDS));
+        assertEquals(2, gateway.charges.get());
+    }
+
+    @Test
+    void aDecisionForAClosedAttemptIsIgnored() {
+        CardPayment payment = new CardPayment(10_000, "4111111111111111", "Asha");
+        int first = payment.beginAttempt();
+        assertEquals(PaymentStatus.FAILED, payment.closeAttempt(first));
+        int second = payment.beginAttempt();
+        assertEquals(PaymentStatus.PENDING, payment.applySettlement(first, true));
+        assertEquals(PaymentStatus.SUCCESS, payment.applySettlement(second, true));
+        assertEquals(PaymentStatus.SUCCESS, payment.applySettlement(second, false));
+    }
+
+    // With every gateway permit taken, a payment waits for one instead of failing, and is shed as
+    // OVERLOADED only if none frees up before its deadline
+    @Test
+    void aPaymentOverTheGatewayLimitWaitsForAPermit() throws Exception {
+        start(new ScriptedGateway(Duration.ofMillis(5)), 300, 0);
+        AdaptiveConcurrencyLimit limit = processor.getLimit(PaymentMethod.CARD);
+        int held = 0;
+        while (limit.tryAcquire()) {
+            held++;
+        }
+
+        CardPayment shed = new CardPayment(10_000, "4111111111111111", "Asha");
+        assertEquals(PaymentStatus.OVERLOADED, processor.submit(shed).get(5, TimeUnit.SECONDS));
+
+        CardPayment waiting = new CardPayment(10_000, "4111111111111111", "Asha");
+        CompletableFuture<PaymentStatus> result = processor.submit(waiting);
+        Thread.sleep(100);
+        assertFalse(result.isDone());
+        limit.cancel();
+        held--;
+        assertEquals(PaymentStatus.SUCCESS, result.get(5, TimeUnit.SECONDS));
+        for (; held > 0; held--) {
+            limit.cancel();
+        }
+    }
+}
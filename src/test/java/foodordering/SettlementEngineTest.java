@@ -0,0 +1,53 @@
+package foodordering;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SettlementEngineTest {
+    private final SettlementEngine settlement =
+            new SettlementEngine(new StubPaymentGateway(Duration.ofMillis(5), Duration.ZERO), 4, Duration.ofSeconds(10));
+
+    @AfterEach
+    void tearDown() {
+        settlement.shutdown();
+    }
+
+    @Test
+    void aFullBatchIsSentWithoutWaiting() throws Exception {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(settlement.submit(new UPIPayment(10_000, "asha@upi")));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.SECONDS);
+        assertEquals(1, settlement.getBatches());
+        assertEquals(4, settlement.getSettled());
+    }
+
+    // The first payment's follow-up work blocks; the rest of its batch completes regardless
+    @Test
+    void aSlowContinuationDoesNotHoldUpTheBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<?>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<Boolean> result = settlement.submit(new CardPayment(10_000, "4111111111111111", "Asha"));
+            results.add(i == 0 ? result.thenRun(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }) : result);
+        }
+        CompletableFuture.allOf(results.subList(1, 4).toArray(new CompletableFuture<?>[0])).get(2, TimeUnit.SECONDS);
+        assertFalse(results.get(0).isDone());
+        release.countDown();
+        results.get(0).get(2, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,107 @@
+package foodordering;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalletStressTest {
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 250_000;
+    private static final int WALLETS = 4;
+
+    // More debits are attempted than the balance covers; exactly the balance is spent and it never goes negative
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        long balance = 1_000_000;
+        Wallet wallet = new Wallet(balance, 16);
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong negative = new AtomicLong();
+        runConcurrently(() -> {
+            long mine = 0;
+            for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                if (wallet.deductBalance(1)) {
+                    mine++;
+                }
+                if (wallet.getBalance() < 0) {
+                    negative.incrementAndGet();
+                }
+            }
+            succeeded.addAndGet(mine);
+        });
+        assertEquals(0, negative.get());
+        assertEquals(balance, succeeded.get());
+        assertEquals(0, wallet.getBalance());
+        assertEquals(balance + 1, wallet.getTransactionHistory().totalAppended());
+    }
+
+    // Millions of mixed addBalance/deductBalance calls on a few shared wallets: every paisa added or
+    // taken is accounted for, and each successful call is journalled exactly once
+    @Test
+    void mixedCreditsAndDebitsNeitherCreateNorLoseMoney() throws Exception {
+        long start = 1_000;
+        WalletStore store = new WalletStore(start);
+        Wallet[] wallets = new Wallet[WALLETS];
+        for (int w = 0; w < WALLETS; w++) {
+            wallets[w] = store.walletFor("98000000" + w);
+        }
+        AtomicLong added = new AtomicLong();
+        AtomicLong deducted = new AtomicLong();
+        AtomicLong calls = new AtomicLong();
+        runConcurrently(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long mineAdded = 0;
+            long mineDeducted = 0;
+            long mineCalls = 0;
+            for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                Wallet wallet = wallets[random.nextInt(WALLETS)];
+                long amount = 1 + random.nextInt(50);
+                // Slightly more debits than credits, so the wallets keep running dry and debits fail
+                if (random.nextInt(100) < 45) {
+                    wallet.addBalance(amount);
+                    mineAdded += amount;
+                    mineCalls++;
+                } else if (wallet.deductBalance(amount)) {
+                    mineDeducted += amount;
+                    mineCalls++;
+                }
+            }
+            added.addAndGet(mineAdded);
+            deducted.addAndGet(mineDeducted);
+            calls.addAndGet(mineCalls);
+        });
+        long total = 0;
+        long journalled = 0;
+        for (Wallet wallet : wallets) {
+            assertTrue(wallet.getBalance() >= 0);
+            total += wallet.getBalance();
+            journalled += wallet.getTransactionHistory().totalAppended() - 1;
+        }
+        assertEquals(WALLETS * start + added.get() - deducted.get(), total);
+        assertEquals(calls.get(), journalled);
+        assertTrue(deducted.get() > 0);
+        assertEquals(WALLETS, store.size());
+    }
+
+    private static void runConcurrently(Runnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> running = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            running.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : running) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+}